@@ -0,0 +1,177 @@
+package org.mvavrill.miningDiv.mining.util;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The word kernels (see WordKernels) using the vector API (jdk.incubator.vector), compiled only with the vector profile (see the README).
+ * The words are processed by vectors of the preferred size of the CPU, and the last words with the scalar loops.
+ * The population count of the lanes uses VectorOperators.BIT_COUNT when the JDK has it (from JDK 19), and a bit-parallel count otherwise.
+ * @author Mathieu Vavrille
+ */
+public class VectorWordKernels extends ScalarWordKernels {
+  private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+  private static final VectorOperators.Unary BIT_COUNT = bitCountOperator();
+
+  public VectorWordKernels() {
+    if (SPECIES.length() < 2)
+      throw new UnsupportedOperationException("No vector of several longs on this CPU");
+  }
+
+  private static VectorOperators.Unary bitCountOperator() {
+    try {
+      return (VectorOperators.Unary) VectorOperators.class.getField("BIT_COUNT").get(null);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  /** The number of bits of every lane */
+  private static LongVector bitCount(LongVector x) {
+    if (BIT_COUNT != null)
+      return x.lanewise(BIT_COUNT);
+    x = x.sub(x.lanewise(VectorOperators.LSHR, 1).and(0x5555555555555555L));
+    x = x.and(0x3333333333333333L).add(x.lanewise(VectorOperators.LSHR, 2).and(0x3333333333333333L));
+    x = x.add(x.lanewise(VectorOperators.LSHR, 4)).and(0x0f0f0f0f0f0f0f0fL);
+    x = x.add(x.lanewise(VectorOperators.LSHR, 8));
+    x = x.add(x.lanewise(VectorOperators.LSHR, 16));
+    x = x.add(x.lanewise(VectorOperators.LSHR, 32));
+    return x.and(0x7fL);
+  }
+
+  @Override
+  public int count(final long[] a, final int length) {
+    final int bound = SPECIES.loopBound(length);
+    LongVector sums = LongVector.zero(SPECIES);
+    int w = 0;
+    for (; w < bound; w += SPECIES.length())
+      sums = sums.add(bitCount(LongVector.fromArray(SPECIES, a, w)));
+    int res = (int) sums.reduceLanes(VectorOperators.ADD);
+    for (; w < length; w++)
+      res += Long.bitCount(a[w]);
+    return res;
+  }
+
+  @Override
+  public int andCount(final long[] a, final long[] b, final int length) {
+    final int bound = SPECIES.loopBound(length);
+    LongVector sums = LongVector.zero(SPECIES);
+    int w = 0;
+    for (; w < bound; w += SPECIES.length())
+      sums = sums.add(bitCount(LongVector.fromArray(SPECIES, a, w).and(LongVector.fromArray(SPECIES, b, w))));
+    int res = (int) sums.reduceLanes(VectorOperators.ADD);
+    for (; w < length; w++)
+      res += Long.bitCount(a[w] & b[w]);
+    return res;
+  }
+
+  @Override
+  public int andCount(final long[] a, final long[] b, final long[] c, final int length) {
+    final int bound = SPECIES.loopBound(length);
+    LongVector sums = LongVector.zero(SPECIES);
+    int w = 0;
+    for (; w < bound; w += SPECIES.length())
+      sums = sums.add(bitCount(LongVector.fromArray(SPECIES, a, w).and(LongVector.fromArray(SPECIES, b, w)).and(LongVector.fromArray(SPECIES, c, w))));
+    int res = (int) sums.reduceLanes(VectorOperators.ADD);
+    for (; w < length; w++)
+      res += Long.bitCount(a[w] & b[w] & c[w]);
+    return res;
+  }
+
+  @Override
+  public int andCount(final long[] a, final long[] b, final int bFrom, final int length) {
+    final int bound = SPECIES.loopBound(length);
+    LongVector sums = LongVector.zero(SPECIES);
+    int w = 0;
+    for (; w < bound; w += SPECIES.length())
+      sums = sums.add(bitCount(LongVector.fromArray(SPECIES, a, w).and(LongVector.fromArray(SPECIES, b, bFrom + w))));
+    int res = (int) sums.reduceLanes(VectorOperators.ADD);
+    for (; w < length; w++)
+      res += Long.bitCount(a[w] & b[bFrom + w]);
+    return res;
+  }
+
+  @Override
+  public void and(final long[] a, final long[] b, final int bFrom, final long[] dst, final int length) {
+    final int bound = SPECIES.loopBound(length);
+    int w = 0;
+    for (; w < bound; w += SPECIES.length())
+      LongVector.fromArray(SPECIES, a, w).and(LongVector.fromArray(SPECIES, b, bFrom + w)).intoArray(dst, w);
+    for (; w < length; w++)
+      dst[w] = a[w] & b[bFrom + w];
+  }
+
+  @Override
+  public boolean isSubset(final long[] a, final long[] b, final int bFrom, final int length) {
+    final int bound = SPECIES.loopBound(length);
+    int w = 0;
+    for (; w < bound; w += SPECIES.length()) {
+      VectorMask<Long> notIncluded = LongVector.fromArray(SPECIES, a, w).lanewise(VectorOperators.AND_NOT, LongVector.fromArray(SPECIES, b, bFrom + w)).compare(VectorOperators.NE, 0L);
+      if (notIncluded.anyTrue())
+        return false;
+    }
+    for (; w < length; w++)
+      if ((a[w] & ~b[bFrom + w]) != 0)
+        return false;
+    return true;
+  }
+
+  @Override
+  public void countAll(final long[] a, final long[] b, final int length, final int[] counts) {
+    final int bound = SPECIES.loopBound(length);
+    LongVector sumsA = LongVector.zero(SPECIES);
+    LongVector sumsB = LongVector.zero(SPECIES);
+    LongVector sumsAB = LongVector.zero(SPECIES);
+    int w = 0;
+    for (; w < bound; w += SPECIES.length()) {
+      final LongVector va = LongVector.fromArray(SPECIES, a, w);
+      final LongVector vb = LongVector.fromArray(SPECIES, b, w);
+      sumsA = sumsA.add(bitCount(va));
+      sumsB = sumsB.add(bitCount(vb));
+      sumsAB = sumsAB.add(bitCount(va.and(vb)));
+    }
+    int countA = (int) sumsA.reduceLanes(VectorOperators.ADD);
+    int countB = (int) sumsB.reduceLanes(VectorOperators.ADD);
+    int countAB = (int) sumsAB.reduceLanes(VectorOperators.ADD);
+    for (; w < length; w++) {
+      countA += Long.bitCount(a[w]);
+      countB += Long.bitCount(b[w]);
+      countAB += Long.bitCount(a[w] & b[w]);
+    }
+    counts[0] = countA;
+    counts[1] = countB;
+    counts[2] = countAB;
+  }
+
+  @Override
+  public void and(final long[] a, final long[] b, final long[] dst, final int length) {
+    final int bound = SPECIES.loopBound(length);
+    int w = 0;
+    for (; w < bound; w += SPECIES.length())
+      LongVector.fromArray(SPECIES, a, w).and(LongVector.fromArray(SPECIES, b, w)).intoArray(dst, w);
+    for (; w < length; w++)
+      dst[w] = a[w] & b[w];
+  }
+
+  @Override
+  public boolean isSubset(final long[] a, final long[] b, final int length) {
+    final int bound = SPECIES.loopBound(length);
+    int w = 0;
+    for (; w < bound; w += SPECIES.length()) {
+      VectorMask<Long> notIncluded = LongVector.fromArray(SPECIES, a, w).lanewise(VectorOperators.AND_NOT, LongVector.fromArray(SPECIES, b, w)).compare(VectorOperators.NE, 0L);
+      if (notIncluded.anyTrue())
+        return false;
+    }
+    for (; w < length; w++)
+      if ((a[w] & ~b[w]) != 0)
+        return false;
+    return true;
+  }
+
+  @Override
+  public String getName() {
+    return "vector (" + SPECIES.length() + " longs" + (BIT_COUNT == null ? ", bit-parallel count" : "") + ")";
+  }
+}
@@ -2,7 +2,12 @@ package org.mvavrill.miningDiv;
 
 import org.mvavrill.miningDiv.models.PatternMining;
 import org.mvavrill.miningDiv.mining.util.DataSet;
+import org.mvavrill.miningDiv.mining.util.DataSetOptions;
+import org.mvavrill.miningDiv.mining.util.WindowUpdate;
+import org.mvavrill.miningDiv.mining.util.WordKernels;
 import org.mvavrill.miningDiv.mining.structures.History;
+import org.mvavrill.miningDiv.mining.structures.ItemSet;
+import org.mvavrill.miningDiv.mining.structures.covers.CoverCache;
 
 import picocli.CommandLine;
 import picocli.CommandLine.ArgGroup;
@@ -11,6 +16,7 @@ import picocli.CommandLine.Option;
 
 import java.io.IOException;
 import java.io.FileWriter;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.Callable;
 
@@ -58,6 +64,51 @@ public class MiningDiv implements Callable<Integer> {
   @Option(names = {"-random_seed", "-r"}, description = "Random seed to use to initialize the random number generator. Default is 97")
   private Long seed = 97L;
 
+  @Option(names = {"-cache"}, description = "If set, the dataset is loaded from a binary cache stored next to it (the dataset path followed by .bin). The cache is created, or rebuilt if it is older than the dataset, when needed. Unless the transactions are merged or reordered, the covers of the items are then read from the memory-mapped cache, off the heap (see -offHeap), so that the runs on the same dataset share them.")
+  private boolean useCache;
+
+  @Option(names = {"-pruneItems"}, description = "If set, the items that are less frequent than the threshold are removed from the dataset when loading it, and the other items are renumbered. The output file still contains the items of the dataset file.")
+  private boolean pruneItems;
+
+  @Option(names = {"-sortItems"}, description = "If set with -pruneItems, the remaining items are renumbered by increasing support.")
+  private boolean sortItems;
+
+  @Option(names = {"-collapseTransactions"}, description = "If set, the identical transactions of the dataset (after the removal of the items if -pruneItems is set) are merged into a single weighted transaction. It does not change the results, but makes the covers smaller.")
+  private boolean collapseTransactions;
+
+  @Option(names = {"-reorderTransactions"}, description = "If set, the transactions are renumbered when loading the dataset, so that the covers of the frequent items are made of consecutive transactions. It does not change the itemsets found, but makes the covers faster to intersect and to compress.")
+  private boolean reorderTransactions;
+
+  @Option(names = {"-coversMode"}, description = "The computation of the covers of the itemsets: 0 intersects the covers of the items, 1 memoizes the last covers in a queue, 2 memoizes all the covers, 3 intersects the covers of the items stored in containers (faster intersections of sparse items, but more memory), and 4 memoizes the covers in a trie of itemsets, starting from the largest memoized subset. Default is 1")
+  private int coversMode = 1;
+
+  @Option(names = {"-coversCacheSize"}, description = "The memory (in MB) of the cache of the covers when they are memoized (-coversMode 2 and 4). The least recently used covers are evicted when the cache is full. Default is 256")
+  private long coversCacheSize = CoverCache.DEFAULT_BUDGET >>> 20;
+
+  @Option(names = {"-offHeap"}, description = "If set, the covers of the items are stored off the heap, in direct buffers, so that they are not scanned by the garbage collector and do not count in the heap size (see -XX:MaxDirectMemorySize). The operations on the covers of the items are then done with plain loops.")
+  private boolean offHeap;
+
+  @Option(names = {"-coverStructure"}, description = "The structure of the cover of the current itemset during the search. Can be 'sparse' (default) that only goes through the non-zero words of the cover, 'bitset' that goes through all its words, 'stack' that copies all its words once per node instead of saving the modified words one by one, or 'diffset' that stores the differences between the covers of successive itemsets, which is faster on dense datasets.")
+  private String coverStructure = "sparse";
+
+  @Option(names = {"-lshBands"}, description = "If set, closedDiv uses a locality sensitive hashing index of the covers of the itemsets found, with this number of bands: the nodes that are not leaves are only checked against the itemsets whose cover is similar, the leaves being still checked against all of them. The itemsets are still diverse, but may differ. Disabled by default")
+  private int lshBands = 0;
+
+  @Option(names = {"-lshRows"}, description = "The number of MinHash values of every band of the index of -lshBands. The more rows, the fewer itemsets are checked. Default is 2")
+  private int lshRows = 2;
+
+  @Option(names = {"-lshBits"}, description = "The number of bits kept for every MinHash value of the index of -lshBands. Default is 8")
+  private int lshBits = 8;
+
+  @Option(names = {"-window"}, description = "If set, runs closedDiv on a sliding window of this number of transactions. The dataset is the first window, and the transactions of the -stream file are then appended by steps of -windowStep transactions, the oldest ones expiring. After every step, the search restarts from the itemsets that are still valid, and one output file is written per window (the output file name followed by -window<k>).")
+  private Integer window = null;
+
+  @Option(names = {"-stream"}, description = "The transactions (in the FIMI format) appended to the sliding window, see -window.")
+  private String streamName;
+
+  @Option(names = {"-windowStep"}, description = "The number of transactions appended at every step of the sliding window. Default is 1000")
+  private Integer windowStep = null; // 1000 if not set, see runSlidingWindow
+
   @Option(names = {"-verbose", "-v"}, description = "If set, will print stuff to stdout.")
   private boolean verbose;
   
@@ -74,9 +125,17 @@ public class MiningDiv implements Callable<Integer> {
         +(strategy.runPostHoc != null ? "-postHoc("+strategy.runPostHoc.postHocStrategy+","+strategy.runPostHoc.postHocFactor+")":"")
         +".out";
     checkParameters();
-    final DataSet dataset = new DataSet(datasetName, 1);
-    final int minFreq = (int) Math.ceil(threshold*dataset.getTransactionsSize()/100);
+    if (window != null) {
+      runSlidingWindow();
+      return 0;
+    }
+    final DataSet dataset = new DataSet(datasetName, datasetOptions().setPruning(pruneItems ? threshold : -1., sortItems).setCollapseDuplicates(collapseTransactions).setReorderTransactions(reorderTransactions));
+    if (verbose)
+      System.out.println("Word kernels: " + WordKernels.get().getName());
+    final int minFreq = dataset.minFreqOf(threshold);
     runApproach(dataset, minFreq, random);
+    if (verbose && dataset.getCovers().getStatistics() != null)
+      System.out.println("Covers cache: " + dataset.getCovers().getStatistics());
     return 0;
   }
 
@@ -87,27 +146,30 @@ public class MiningDiv implements Callable<Integer> {
     if (strategy.jMax >= 0.) {
       if (verbose)
         System.out.println("Running closedDiv with jMax="+strategy.jMax);
-      history = PatternMining.baseDiversity(dataset, minFreq, strategy.jMax, false).findAllSolutionsTimeLimit(timeLimitNano);
+      final PatternMining closedDiv = PatternMining.baseDiversity(dataset, minFreq, strategy.jMax, false).setCoverStructure(coverStructure).setHistoryLSH(lshBands, lshRows, lshBits);
+      history = closedDiv.findAllSolutionsTimeLimit(timeLimitNano);
+      if (verbose && closedDiv.getHistoryLSH() != null)
+        System.out.println("History LSH: " + closedDiv.getHistoryLSH().getStatistics());
     }
     else if (strategy.runRandomSearch) {
       if (verbose)
         System.out.println("Running randomSearch");
-      history = PatternMining.randomSearch(dataset, minFreq, random).findAllSolutions(nbItemsets, timeLimitNano);
+      history = PatternMining.randomSearch(dataset, minFreq, random).setCoverStructure(coverStructure).findAllSolutions(nbItemsets, timeLimitNano);
     }
     else if (strategy.transactionOriented) {
       if (verbose)
         System.out.println("Running transactionOriented");
-      history = PatternMining.transactionOrientedSearch(dataset, minFreq).findAllSolutions(nbItemsets, timeLimitNano);
+      history = PatternMining.transactionOrientedSearch(dataset, minFreq).setCoverStructure(coverStructure).findAllSolutions(nbItemsets, timeLimitNano);
     }
     else if (strategy.runOrientedDet != null) {
       if (verbose)
         System.out.println("Running orientedDet " + strategy.runOrientedDet);
-      history = PatternMining.orientedDeterministicSearch(dataset, minFreq, strategy.runOrientedDet.equals("Exact")).findAllSolutions(nbItemsets, timeLimitNano);
+      history = PatternMining.orientedDeterministicSearch(dataset, minFreq, strategy.runOrientedDet.equals("Exact")).setCoverStructure(coverStructure).findAllSolutions(nbItemsets, timeLimitNano);
     }
     else if (strategy.runOrientedRandom != null) {
       if (verbose)
         System.out.println("Running orientedRandom " + strategy.runOrientedDet);
-      history = PatternMining.orientedRandomSearch(dataset, minFreq, strategy.runOrientedRandom.equals("Exact"), random).findAllSolutions(nbItemsets, timeLimitNano);
+      history = PatternMining.orientedRandomSearch(dataset, minFreq, strategy.runOrientedRandom.equals("Exact"), random).setCoverStructure(coverStructure).findAllSolutions(nbItemsets, timeLimitNano);
     }
     else {
       if (verbose)
@@ -116,16 +178,16 @@ public class MiningDiv implements Callable<Integer> {
       History bigHistory;
       switch (strategy.runPostHoc.postHocStrategy) {
       case "all":
-        bigHistory = PatternMining.baseModel(dataset, minFreq).findAllSolutions(bigNbItemsets, timeLimitNano);
+        bigHistory = PatternMining.baseModel(dataset, minFreq).setCoverStructure(coverStructure).findAllSolutions(bigNbItemsets, timeLimitNano);
         break;
       case "random":
-        bigHistory = PatternMining.randomSearch(dataset, minFreq, random).findAllSolutions(bigNbItemsets, timeLimitNano);
+        bigHistory = PatternMining.randomSearch(dataset, minFreq, random).setCoverStructure(coverStructure).findAllSolutions(bigNbItemsets, timeLimitNano);
         break;
       case "orientedDet":
-        bigHistory = PatternMining.orientedDeterministicSearch(dataset, minFreq, true).findAllSolutions(bigNbItemsets, timeLimitNano);
+        bigHistory = PatternMining.orientedDeterministicSearch(dataset, minFreq, true).setCoverStructure(coverStructure).findAllSolutions(bigNbItemsets, timeLimitNano);
         break;
       case "orientedRandom":
-        bigHistory = PatternMining.orientedRandomSearch(dataset, minFreq, true, random).findAllSolutions(bigNbItemsets, timeLimitNano);
+        bigHistory = PatternMining.orientedRandomSearch(dataset, minFreq, true, random).setCoverStructure(coverStructure).findAllSolutions(bigNbItemsets, timeLimitNano);
         break;
       default:
         throw new IllegalArgumentException("The postHoc strategy is not allowed. This should be caught on the checkParameters() function");
@@ -150,6 +212,57 @@ public class MiningDiv implements Callable<Integer> {
     }
   }
 
+  /** The options of the loading of the dataset given on the command line, common to the plain and sliding window runs */
+  private DataSetOptions datasetOptions() {
+    return new DataSetOptions().setCoversMode(coversMode).setUseCache(useCache).setOffHeap(offHeap).setCoversCacheBudget(coversCacheSize << 20);
+  }
+
+  /**
+   * Runs closedDiv on the successive windows of the stream, and prints for every window the time to update the dataset, to refresh the covers of the itemsets, and to mine again.
+   * The times are also written in the output files, after the number of itemsets: mining time, update time, and refresh time.
+   */
+  private void runSlidingWindow() throws IOException {
+    final long timeLimitNano = timeLimit*1000000000L;
+    final DataSet dataset = new DataSet(datasetName, datasetOptions().setWindowSize(window));
+    final List<ItemSet> stream = new DataSet(streamName).getHorizontalBase();
+    final int step = windowStep == null ? 1000 : windowStep;
+    long startTime = System.nanoTime();
+    History history = PatternMining.baseDiversity(dataset, dataset.minFreqOf(threshold), strategy.jMax, false).setCoverStructure(coverStructure).findAllSolutionsTimeLimit(timeLimitNano);
+    long miningTime = System.nanoTime() - startTime;
+    saveWindow(history, 0, timeLimitNano, miningTime, 0, 0);
+    System.out.println("window 0: " + dataset.getNbTransactions() + " transactions, mining " + miningTime/1000000 + "ms, " + (history == null ? "timeout" : history.size() + " itemsets"));
+    for (int k = 1, start = 0; start < stream.size(); k++, start += step) {
+      final WindowUpdate update = dataset.slide(stream.subList(start, Math.min(stream.size(), start + step)));
+      final int minFreq = dataset.minFreqOf(threshold);
+      final long refreshStart = System.nanoTime();
+      History stillValid = null;
+      if (history != null) {
+        history.refreshCovers(update);
+        stillValid = history.extractStillValid(minFreq, strategy.jMax);
+      }
+      final long refreshTime = System.nanoTime() - refreshStart;
+      startTime = System.nanoTime();
+      history = PatternMining.baseDiversity(dataset, minFreq, strategy.jMax, false).setCoverStructure(coverStructure).setInitialHistory(stillValid).findAllSolutionsTimeLimit(timeLimitNano);
+      miningTime = System.nanoTime() - startTime;
+      saveWindow(history, k, timeLimitNano, miningTime, update.getUpdateTime(), refreshTime);
+      System.out.println("window " + k + ": " + update + ", update " + update.getUpdateTime()/1000000 + "ms, refresh " + refreshTime/1000000 + "ms, "
+                         + (stillValid == null ? 0 : stillValid.size()) + " itemsets still valid, mining " + miningTime/1000000 + "ms, "
+                         + (history == null ? "timeout" : history.size() + " itemsets"));
+    }
+  }
+
+  private void saveWindow(final History history, final int k, final long timeLimitNano, final long... times) throws IOException {
+    final String fileName = outItemsetsFile.substring(0, outItemsetsFile.length() - 4) + "-window" + k + ".out";
+    if (history != null) {
+      history.saveToFile(fileName, times);
+    }
+    else {
+      FileWriter myWriter = new FileWriter(fileName);
+      myWriter.write("0 " + timeLimitNano + "\n");
+      myWriter.close();
+    }
+  }
+
   private void checkParameters() {
     if ((strategy.jMax>=0.) == (nbItemsets!=0))
       throw new IllegalArgumentException("Either you specified a number of itemsets and tried to solve with ClosedDiv, or you tried to solve with an other approach without specifying a number of itemsets. Both are illegal.");
@@ -164,6 +277,22 @@ public class MiningDiv implements Callable<Integer> {
       throw new IllegalArgumentException("The orientedDet strategy should be 'Exact' or 'UB'");
     if (strategy.runOrientedRandom != null && !strategy.runOrientedRandom.equals("Exact") && !strategy.runOrientedRandom.equals("UB"))
       throw new IllegalArgumentException("The orientedRandom strategy should be 'Exact' or 'UB'");
+    if (coversCacheSize < 0)
+      throw new IllegalArgumentException("The size of the cache of the covers cannot be negative.");
+    if (window == null && (streamName != null || windowStep != null))
+      throw new IllegalArgumentException("The -stream and -windowStep options need a sliding window, see -window.");
+    if (window != null) {
+      if (window <= 0)
+        throw new IllegalArgumentException("The window size must be positive.");
+      if (strategy.jMax < 0. || streamName == null)
+        throw new IllegalArgumentException("The sliding window only runs closedDiv, and needs a -stream file.");
+      if (pruneItems || collapseTransactions || reorderTransactions)
+        throw new IllegalArgumentException("The sliding window cannot remove the items, merge or reorder the transactions, since the frequencies change with the window.");
+      if (windowStep != null && windowStep <= 0)
+        throw new IllegalArgumentException("The window step must be positive.");
+      if (!outItemsetsFile.endsWith(".out"))
+        throw new IllegalArgumentException("With a sliding window, the output file must end with .out");
+    }
   }
 
   public static void main(String... args) {
@@ -1,6 +1,7 @@
 package org.mvavrill.miningDiv.mining.models;
 
 import org.mvavrill.miningDiv.mining.structures.TransactionSet;
+import org.mvavrill.miningDiv.mining.util.IFreeItems;
 
 import java.util.BitSet;
 
@@ -8,8 +9,10 @@ import java.util.BitSet;
  * For every free item, the propagators compute the cover of the current itemset with the item.
  * These covers can now be accessed using this interface.
  * It assumes that the propagator are executed before calling `getFreeItemsCover`, otherwise it is not the right cover
+ * The free items themselves are maintained by the propagators (see IFreeItems), so that the strategies do not go through all the variables.
  */
 public interface FreeItemsExtensions {
   public TransactionSet getFreeItemsCover(final int item);
   public BitSet getCurrentCover();
+  public IFreeItems getFreeItems();
 }
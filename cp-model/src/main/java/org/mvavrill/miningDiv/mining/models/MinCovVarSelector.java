@@ -1,6 +1,9 @@
 
 package org.mvavrill.miningDiv.mining.models;
 
+import org.mvavrill.miningDiv.mining.util.IFreeItems;
+import org.mvavrill.miningDiv.mining.util.TransactionWeights;
+
 import org.chocosolver.solver.Model;
 import org.chocosolver.solver.variables.Variable;
 import org.chocosolver.solver.search.strategy.selectors.variables.VariableSelector;
@@ -16,22 +19,29 @@ import java.util.Random;
 public class MinCovVarSelector<V extends Variable> implements VariableSelector<V> {
 
   private final FreeItemsExtensions itemsExtensions;
+  private final TransactionWeights weights;
 
   public MinCovVarSelector(final FreeItemsExtensions itemsExtensions) {
-    this.itemsExtensions = itemsExtensions;;
+    this(itemsExtensions, TransactionWeights.UNIT);
+  }
+
+  /** The weights are used to compute the cardinality of the covers (see DataSet.getWeights()) */
+  public MinCovVarSelector(final FreeItemsExtensions itemsExtensions, final TransactionWeights weights) {
+    this.itemsExtensions = itemsExtensions;
+    this.weights = weights;
   }
 
   @Override
   public V getVariable(V[] variables) {
+    final IFreeItems freeItems = itemsExtensions.getFreeItems();
     int bestVarId = -1;
     int minCov = Integer.MAX_VALUE;
-    for (int i = 0; i < variables.length; i++) {
-      if (!variables[i].isInstantiated()) {
-        int card = itemsExtensions.getFreeItemsCover(i).getTransactions().cardinality();
-        if (card < minCov) {
-          minCov = card;
-          bestVarId = i;
-        }
+    for (int j = 0; j < freeItems.getNbFree(); j++) {
+      final int i = freeItems.getFree(j);
+      int card = itemsExtensions.getFreeItemsCover(i).cardinality(weights);
+      if (card < minCov || (card == minCov && i < bestVarId)) { // The free items are not ordered, the ties go to the first item
+        minCov = card;
+        bestVarId = i;
       }
     }
     if (bestVarId == -1)
@@ -7,8 +7,8 @@ import org.chocosolver.solver.variables.BoolVar;
 import org.chocosolver.util.ESat;
 
 import org.mvavrill.miningDiv.mining.util.DataSet;
+import org.mvavrill.miningDiv.mining.util.IFreeItems;
 import org.mvavrill.miningDiv.mining.structures.*;
-import org.mvavrill.miningDiv.mining.util.Jaccard;
 
 import java.util.BitSet;
 
@@ -24,8 +24,10 @@ public class MultipleJaccardPropagator extends Propagator<BoolVar> {
 	
   private final DataSet dataset;
   private final History history;
+  private final HistoryCovers historyCovers;
   
   private final boolean checkExactJaccard;
+  private final IFreeItems freeItems; // The free, filtered and current items, updated at every propagation
   
   // Data maintained after propagation
   public BitSet itemset; // Current itemset
@@ -45,37 +47,32 @@ public class MultipleJaccardPropagator extends Propagator<BoolVar> {
     this.minFreq = minFreq;
     this.dataset = dataset;
     this.history = history;
+    this.historyCovers = new HistoryCovers(history, dataset.getWeights());
     this.jMax = jMax;
     this.checkExactJaccard = checkExactJaccard;
+    this.freeItems = new IFreeItems(model, vars.length);
   }
 		
   @Override
   public void propagate(int evtmask) throws ContradictionException {
     // Compute free/filtered/current itemsets
-    BitSet free_items = new BitSet();
-    BitSet filtered_items = new BitSet();
+    freeItems.update(vars);
     itemset = new BitSet();
-    for (int item = 0; item < dataset.getNbrVar(); item++) {
-      if (vars[item].isInstantiatedTo(0)) {
-        filtered_items.set(item);
-      } else if (vars[item].isInstantiatedTo(1)) {
-        itemset.set(item);
-      } else
-        free_items.set(item);
-    }
+    for (int k = 0; k < freeItems.getItemsetSize(); k++)
+      itemset.set(freeItems.getItemsetItem(k));
     
     cover = dataset.getCovers().getCoverOf(new ItemSet(itemset));
     if (!isLBSatisfied(cover))
       this.fails();
     
-    for (int item=free_items.nextSetBit(0); item!=-1; item=free_items.nextSetBit(item+1)) { // Forward checking
+    for (int k = freeItems.getNbFree() - 1; k >= 0; k--) { // Forward checking, backward since an item leaves the free items by being swapped with the last one
+      final int item = freeItems.getFree(k);
       if (!isLBSatisfied(dataset.getCovers().intersectCover(cover, item))) { 
         vars[item].removeValue(1, this);
-        filtered_items.set(item);
-        free_items.clear(item);
+        freeItems.instantiate(item, 0);
       }
     }
-    if (free_items.isEmpty() && checkExactJaccard && !isExactSatisfied(cover))
+    if (freeItems.getNbFree() == 0 && checkExactJaccard && !isExactSatisfied(cover))
       this.fails();
   }
 
@@ -83,15 +80,11 @@ public class MultipleJaccardPropagator extends Propagator<BoolVar> {
   @Override
   public ESat isEntailed() {
     // Compute free/filtered/current itemsets
-    boolean allInstantiated = true;
-    itemset = new BitSet();
-    for (int item = 0; item < dataset.getNbrVar() && allInstantiated; item++) {
-      if (vars[item].isInstantiatedTo(1)) {
-        itemset.set(item);
-      } else if (!vars[item].isInstantiatedTo(0))
-        allInstantiated = false;
-    }
-    if (allInstantiated) {
+    freeItems.update(vars);
+    if (freeItems.getNbFree() == 0) {
+      itemset = new BitSet();
+      for (int k = 0; k < freeItems.getItemsetSize(); k++)
+        itemset.set(freeItems.getItemsetItem(k));
       cover = dataset.getCovers().getCoverOf(new ItemSet(itemset));
       if (checkExactJaccard && isExactSatisfied(cover) || !checkExactJaccard && isLBSatisfied(cover))
           return ESat.TRUE;
@@ -103,20 +96,10 @@ public class MultipleJaccardPropagator extends Propagator<BoolVar> {
   }
 
   private boolean isLBSatisfied(final TransactionSet covX) {
-    for(int i = 0; i < history.size(); i++) {			
-      double lb = Jaccard.lb(covX, history.get(i).getCover(), minFreq);
-      if((lb > jMax) || ((lb == jMax) && (lb == 0.0)))
-        return false;
-    }
-    return true;
+    return historyCovers.findLBViolation(covX, minFreq, jMax, 0) == -1;
   }
 
   private boolean isExactSatisfied(final TransactionSet covX) {
-    for(int i = 0; i < history.size(); i++) {			
-      double lb = Jaccard.exact(covX, history.get(i).getCover());
-      if((lb > jMax) || ((lb == jMax) && (lb == 0.0)))
-        return false;
-    }
-    return true;
+    return historyCovers.findExactViolation(covX, jMax, 0) == -1;
   }
 }
@@ -3,7 +3,7 @@ package org.mvavrill.miningDiv.mining.models;
 
 import org.mvavrill.miningDiv.mining.structures.*;
 import org.mvavrill.miningDiv.mining.util.DataSet;
-import org.mvavrill.miningDiv.mining.util.Jaccard;
+import org.mvavrill.miningDiv.mining.util.IFreeItems;
 
 import org.chocosolver.solver.Model;
 import org.chocosolver.solver.variables.BoolVar;
@@ -26,7 +26,7 @@ public class OrientedSearchStrategy extends AbstractStrategy<IntVar> {
 
   private final int threshold;
   private final History history;
-  private final DataSet dataset;
+  private final HistoryCovers historyCovers;
   private final boolean useExact;
   private final Random random; // If random== null, then a deterministic decision is done. Otherwise, a random oriented decision is done
   private final FreeItemsExtensions itemsExtensions;
@@ -42,7 +42,7 @@ public class OrientedSearchStrategy extends AbstractStrategy<IntVar> {
    * @param vars the variables of the strategy (the items)
    * @param threshold the minimum size of the cover (used for Jaccard upper bound)
    * @param the history of solutions
-   * @param the dataset (to compute the covers)
+   * @param the dataset (for the weights of the transactions)
    * @param useExact a boolean to set to true if the exact Jaccard should be used in the computation. Otherwise it will be the upper bound.
    * @param random a random number generator. If set, the search will be randomly weighted by the jaccard, otherwise (if set to null), the search will pick the best item at each step
    */
@@ -50,7 +50,7 @@ public class OrientedSearchStrategy extends AbstractStrategy<IntVar> {
     super(vars);
     this.threshold = threshold;
     this.history = history;
-    this.dataset = dataset;
+    this.historyCovers = new HistoryCovers(history, dataset.getWeights());
     this.useExact = useExact;
     this.itemsExtensions = itemsExtensions;
     this.random = random;
@@ -64,12 +64,10 @@ public class OrientedSearchStrategy extends AbstractStrategy<IntVar> {
   }
 
   private BitSet getFreeItems() {
+    final IFreeItems free = itemsExtensions.getFreeItems();
     BitSet freeItems = new BitSet();
-    for (int item = 0; item < dataset.getNbrVar(); item++) {
-      if (vars[item].getDomainSize() == 2) {
-        freeItems.set(item);
-      }
-    }
+    for (int j = 0; j < free.getNbFree(); j++)
+      freeItems.set(free.getFree(j));
     return freeItems;
   }
 
@@ -105,11 +103,8 @@ public class OrientedSearchStrategy extends AbstractStrategy<IntVar> {
   }
 
   private void updateInitialBounds() {
-    for (int i = processedHistorySize; i < history.size(); i++) {
-      for (int v = 0; v < initialDecisionWeights.length; v++) {
-        initialDecisionWeights[v] = Math.max(initialDecisionWeights[v], getBound(initialFreeItemsExtensions[v], history.get(i).getCover()));
-      }
-    }
+    for (int v = 0; v < initialDecisionWeights.length; v++)
+      initialDecisionWeights[v] = Math.max(initialDecisionWeights[v], historyCovers.maxBound(initialFreeItemsExtensions[v], useExact, threshold, processedHistorySize));
     processedHistorySize = history.size();
   }
 
@@ -171,13 +166,6 @@ public class OrientedSearchStrategy extends AbstractStrategy<IntVar> {
   }
 
   private double getMaxBound(final TransactionSet cover) {
-    double maxBound = 0.;
-    for (ItemsetCover ic : history.getAllItemsets())
-      maxBound = Math.max(maxBound,getBound(cover, ic.getCover()));
-    return maxBound;
-  }
-
-  private double getBound(final TransactionSet cover, final TransactionSet h) {
-    return useExact ? Jaccard.exact(cover, h) : Jaccard.ub(cover, h, threshold);
+    return historyCovers.maxBound(cover, useExact, threshold, 0);
   }
 }
@@ -3,7 +3,9 @@ package org.mvavrill.miningDiv.mining.models;
 
 import org.mvavrill.miningDiv.mining.structures.*;
 import org.mvavrill.miningDiv.mining.util.DataSet;
+import org.mvavrill.miningDiv.mining.util.IFreeItems;
 import org.mvavrill.miningDiv.mining.util.Jaccard;
+import org.mvavrill.miningDiv.mining.util.TransactionWeights;
 
 import org.chocosolver.solver.Model;
 import org.chocosolver.solver.variables.BoolVar;
@@ -13,7 +15,6 @@ import org.chocosolver.solver.search.strategy.decision.Decision;
 import org.chocosolver.solver.search.strategy.strategy.AbstractStrategy;
 
 import java.util.Arrays;
-import java.util.BitSet;
 import java.util.Random;
 
 /**
@@ -29,7 +30,7 @@ public class TransactionWeightStrategy extends AbstractStrategy<IntVar> {
 
   // Deal with initial values
   private final IStateBool isInitialPropagation;
-  private final BitSet[] verticalDatabase;
+  private final TransactionWeights weights;
   private int[] sumsPresenceOfTransaction;
   private TransactionSet[] initialFreeItemsExtensions = null;
   private int processedHistorySize = 0;
@@ -40,7 +41,7 @@ public class TransactionWeightStrategy extends AbstractStrategy<IntVar> {
   public TransactionWeightStrategy(final Model model, final BoolVar[] vars, final History history, final DataSet dataset, final FreeItemsExtensions itemsExtensions) {
     super(vars);
     this.history = history;
-    this.verticalDatabase = dataset.getVerticalDataBase();
+    this.weights = dataset.getWeights();
     this.itemsExtensions = itemsExtensions;
     isInitialPropagation = model.getEnvironment().makeBool(true);
     sumsPresenceOfTransaction = new int[dataset.getTransactionsSize()];
@@ -59,29 +60,29 @@ public class TransactionWeightStrategy extends AbstractStrategy<IntVar> {
       updateSums();
       isInitialPropagation.set(false);
     }
-    IntVar bestVar = null;
+    final IFreeItems freeItems = itemsExtensions.getFreeItems();
+    int bestItem = -1;
     long minimumIntersection = Long.MAX_VALUE;
-    for (int i = 0; i < vars.length; i++) {
-      if (!vars[i].isInstantiated()) {
-        BitSet transactionsCovered = itemsExtensions.getFreeItemsCover(i).getTransactions();
-        long sum = 0;
-        for (int transaction = transactionsCovered.nextSetBit(0); transaction != -1; transaction = transactionsCovered.nextSetBit(transaction+1)) {
-          sum += sumsPresenceOfTransaction[transaction];
-        }
-        if (sum < minimumIntersection) {
-          bestVar = vars[i];
-          minimumIntersection = sum;
-        }
+    for (int j = 0; j < freeItems.getNbFree(); j++) {
+      final int i = freeItems.getFree(j);
+      TransactionSet transactionsCovered = itemsExtensions.getFreeItemsCover(i);
+      long sum = 0;
+      for (int transaction = transactionsCovered.nextSetBit(0); transaction != -1; transaction = transactionsCovered.nextSetBit(transaction+1)) {
+        sum += weights.getWeight(transaction) * sumsPresenceOfTransaction[transaction];
+      }
+      if (sum < minimumIntersection || (sum == minimumIntersection && i < bestItem)) { // The free items are not ordered, the ties go to the first item
+        bestItem = i;
+        minimumIntersection = sum;
       }
     }
-    if (bestVar == null)
+    if (bestItem == -1)
       return null;
-    return makeIntDecision(bestVar, 1);
+    return makeIntDecision(vars[bestItem], 1);
   }
 
   private void updateSums() {
     for (int i = processedHistorySize; i < history.size(); i++) {
-      BitSet t = history.get(i).getCover().getTransactions();
+      TransactionSet t = history.get(i).getCover();
       for (int transaction = t.nextSetBit(0); transaction != -1; transaction = t.nextSetBit(transaction+1)) {
         sumsPresenceOfTransaction[transaction] += 1;
       }
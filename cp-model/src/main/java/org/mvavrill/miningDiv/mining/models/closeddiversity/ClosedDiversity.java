@@ -1,6 +1,7 @@
 package org.mvavrill.miningDiv.mining.models.closeddiversity;
 
 import org.mvavrill.miningDiv.mining.util.DataSet;
+import org.mvavrill.miningDiv.mining.util.IFreeItems;
 import org.mvavrill.miningDiv.mining.models.FreeItemsExtensions;
 import org.mvavrill.miningDiv.mining.structures.History;
 import org.mvavrill.miningDiv.mining.structures.ItemSet;
@@ -23,8 +24,7 @@ import java.util.HashMap;
 
 public class ClosedDiversity extends Propagator<BoolVar> implements FreeItemsExtensions, IMonitorRestart {
   private final int minFreq; // Minimum frequency
-  // TODO remove static on jMax
-  private static double jMax; // 
+  private final double jMax;
 	
   private DataSet dataset;
   private History history;
@@ -42,10 +42,11 @@ public class ClosedDiversity extends Propagator<BoolVar> implements FreeItemsExt
   public int jto = 0;
   public int numberVarFiltredByLB = 0;
 	
-  public BitSet cov = new BitSet();
+  public TransactionSet cov = new TransactionSet();
   public BitSet itemset = new BitSet();
 
   private final Map<Integer, TransactionSet> freeItemsCover = new HashMap<Integer, TransactionSet>();
+  private final IFreeItems freeItems; // The free, filtered and current items, updated at every propagation
 	
   public ClosedDiversity(final DataSet dataset, final int minFreq, final double ja, final History history, final BoolVar[] p) {
     super(p);
@@ -59,13 +60,14 @@ public class ClosedDiversity extends Propagator<BoolVar> implements FreeItemsExt
     // backtrackable structures : estimated frequencies and covers of X+
     btrk_estimatedFrequencies = new IStateInt[dataset.getNbrVar()];
     for (int item = 0; item < dataset.getNbrVar(); item++)
-      btrk_estimatedFrequencies[item] = this.model.getEnvironment().makeInt(dataset.getVerticalDataBase()[item].cardinality());
-    btrk_coverSigmaPlus = this.model.getEnvironment().makeInt(dataset.getTransactionsSize());
+      btrk_estimatedFrequencies[item] = this.model.getEnvironment().makeInt(dataset.getSupport(item));
+    btrk_coverSigmaPlus = this.model.getEnvironment().makeInt(dataset.getNbTransactions());
+    freeItems = new IFreeItems(this.model, p.length);
 		
     nextVar = -1;
   }
 	
-  public void check_consistency(BitSet itemset, BitSet cover) throws ContradictionException {
+  public void check_consistency(BitSet itemset, TransactionSet cover) throws ContradictionException {
     if(!itemset.isEmpty() && !growth_LB(cover)) {
       jto = 0;
       nextVar = -1;
@@ -90,6 +92,12 @@ public class ClosedDiversity extends Propagator<BoolVar> implements FreeItemsExt
   public BitSet getCurrentCover() {
     throw new IllegalStateException("Cannot return cover using base closedDiversity");
   }
+
+  @Override
+  public IFreeItems getFreeItems() {
+    freeItems.update(vars);
+    return freeItems;
+  }
 	
   @Override
   public void propagate(int evtmask) throws ContradictionException {
@@ -99,25 +107,25 @@ public class ClosedDiversity extends Propagator<BoolVar> implements FreeItemsExt
     BitSet free_items = new BitSet();
     BitSet filtered_items = new BitSet();
     BitSet current_itemset_items = new BitSet();
-    for (int item = 0; item < dataset.getNbrVar(); item++) {
-      if (vars[item].isInstantiatedTo(0)) {
-        filtered_items.set(item);
-      } else if (vars[item].isInstantiatedTo(1)) {
-        current_itemset_items.set(item);
-      } else
-        free_items.set(item);
-    }
+    freeItems.update(vars);
+    for (int k = 0; k < freeItems.getNbFiltered(); k++)
+      filtered_items.set(freeItems.getFiltered(k));
+    for (int k = 0; k < freeItems.getItemsetSize(); k++)
+      current_itemset_items.set(freeItems.getItemsetItem(k));
+    for (int k = 0; k < freeItems.getNbFree(); k++)
+      free_items.set(freeItems.getFree(k));
 		
     // cov(X)
     TransactionSet coverPos1 = dataset.getCovers().getCoverOf(new ItemSet(current_itemset_items));
-    check_consistency(current_itemset_items, coverPos1.getTransactions());
+    check_consistency(current_itemset_items, coverPos1);
     freeItemsCover.clear();
 		
+    final int coverPos1Card = coverPos1.cardinality(dataset.getWeights());
     int diff = 0;
-    diff = btrk_coverSigmaPlus.get() - coverPos1.getTransactions().cardinality();
-    btrk_coverSigmaPlus.set(coverPos1.getTransactions().cardinality());
+    diff = btrk_coverSigmaPlus.get() - coverPos1Card;
+    btrk_coverSigmaPlus.set(coverPos1Card);
 		
-    int min_freq=coverPos1.getTransactions().cardinality()+1;
+    int min_freq=coverPos1Card+1;
     BitSet free_items_prime = (BitSet) free_items.clone();
 		
     for (int item=free_items.nextSetBit(0); item!=-1; item=free_items.nextSetBit(item+1)) {
@@ -125,10 +133,9 @@ public class ClosedDiversity extends Propagator<BoolVar> implements FreeItemsExt
       // Estimated frequencies
       int a = btrk_estimatedFrequencies[item].get() - diff;
       if(a < minFreq) {
-        BitSet cov_XUx = dataset.getCovers().intersectCover(coverPos1, item).
-          getTransactions();
+        TransactionSet cov_XUx = dataset.getCovers().intersectCover(coverPos1, item);
 				
-        a = cov_XUx.cardinality();
+        a = cov_XUx.cardinality(dataset.getWeights());
         if (a < minFreq) { // frequency filtering
           btrk_estimatedFrequencies[item].set(a);
           vars[item].removeValue(1, Cause.Null);
@@ -151,7 +158,7 @@ public class ClosedDiversity extends Propagator<BoolVar> implements FreeItemsExt
       }
       freeItemsCover.put(item,dataset.getCovers().intersectCover(coverPos1, item));
       // filtering by LB
-      if (!growth_LB(freeItemsCover.get(item).getTransactions())) { 
+      if (!growth_LB(freeItemsCover.get(item))) { 
         vars[item].removeValue(1, Cause.Null);
         filtered_items.set(item);
         change = true;
@@ -200,7 +207,7 @@ public class ClosedDiversity extends Propagator<BoolVar> implements FreeItemsExt
     if(!change && !fullExt)
       jto++;
 		
-    cov = (BitSet) coverPos1.getTransactions().clone();
+    cov = coverPos1;
     itemset = (BitSet) current_itemset_items.clone();
 		
     BitSet s_positif = new BitSet(), s_negatif = new BitSet(), s_libre = new BitSet();
@@ -230,16 +237,7 @@ public class ClosedDiversity extends Propagator<BoolVar> implements FreeItemsExt
   }
 
   public boolean coverInclusion(TransactionSet cover1, TransactionSet cover2) {
-    BitSet T2 = new BitSet();
-    BitSet T11 = new BitSet();
-    T2 = cover2.getTransactions();
-    T11 = (BitSet) T2.clone();
-    T11.andNot(cover1.getTransactions());
-
-    if (T11.isEmpty()) {
-      return true;
-    }
-    return false;
+    return cover2.isIncludedIn(cover1);
   }
 
   // lobnury
@@ -256,27 +254,20 @@ public class ClosedDiversity extends Propagator<BoolVar> implements FreeItemsExt
   }
 	
   // lobnury
-  public boolean growth_LB(BitSet cov_XUx) {
+  public boolean growth_LB(TransactionSet cov_XUx) {
     boolean growth_lb = true;
 
     for(int i = 0; i < history.size(); i++) {
       // list of transactions covered by history itemSet Hi
-      BitSet cov_Hi = new BitSet();
-      /*
-        cov_Hi = dataset.getCovers().getCoverOf(new ItemSet(history[i])).getTransactions();
-      //*/
-      cov_Hi = dataset.getCovers().getCoverOf(history.get(i).getItemSet()).getTransactions();
-      BitSet covP_XUx = (BitSet) cov_XUx.clone();
-      covP_XUx.andNot(cov_Hi); // proper cover of X
-      BitSet covP_Hi = (BitSet) cov_Hi.clone();
-      covP_Hi.andNot(cov_XUx); // proper cover of Hi
+      TransactionSet cov_Hi = dataset.getCovers().getCoverOf(history.get(i).getItemSet());
+      int covP_XUx = cov_XUx.andNotCount(cov_Hi, dataset.getWeights()); // size of the proper cover of X
 			
       double val_lb = 0.0;
       double numerateur = 0.0, denominateur = 0.0;
 			
-      if(covP_XUx.cardinality() < minFreq) {
-        numerateur = (double) minFreq - covP_XUx.cardinality();
-        denominateur = (double) cov_Hi.cardinality() + covP_XUx.cardinality();
+      if(covP_XUx < minFreq) {
+        numerateur = (double) minFreq - covP_XUx;
+        denominateur = (double) cov_Hi.cardinality(dataset.getWeights()) + covP_XUx;
         val_lb = numerateur / denominateur;
       }
       /*else if(covP_Hi.cardinality() < minFreq) {
@@ -314,9 +305,9 @@ public class ClosedDiversity extends Propagator<BoolVar> implements FreeItemsExt
 				
         double numerateur = 0.0, denominateur = 0.0;
 				
-        if(covP_x.cardinality() < minFreq) {
-          numerateur = (double) minFreq - covP_x.cardinality();
-          denominateur = (double) cov_Hi.cardinality() + covP_x.cardinality();
+        if(dataset.getWeights().count(covP_x) < minFreq) {
+          numerateur = (double) minFreq - dataset.getWeights().count(covP_x);
+          denominateur = (double) dataset.getWeights().count(cov_Hi) + dataset.getWeights().count(covP_x);
           val_lb = numerateur / denominateur;
         }
         /*else if(covP_Hi.cardinality() < minFreq) {
@@ -335,8 +326,7 @@ public class ClosedDiversity extends Propagator<BoolVar> implements FreeItemsExt
     this.history = history;
   }
 
-  // TODO remove static on jMax
-  public static double getjMax() {
+  public double getjMax() {
     return jMax;
   }
 
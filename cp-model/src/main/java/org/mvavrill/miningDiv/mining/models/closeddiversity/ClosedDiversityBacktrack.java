@@ -2,8 +2,14 @@ package org.mvavrill.miningDiv.mining.models.closeddiversity;
 
 import org.mvavrill.miningDiv.mining.models.FreeItemsExtensions;
 import org.mvavrill.miningDiv.mining.util.DataSet;
-import org.mvavrill.miningDiv.mining.util.IBitSet;
+import org.mvavrill.miningDiv.mining.util.ISparseBitSetCover;
+import org.mvavrill.miningDiv.mining.util.ICover;
+import org.mvavrill.miningDiv.mining.util.IFreeItems;
+import org.mvavrill.miningDiv.mining.util.IProjectedSupports;
+import org.mvavrill.miningDiv.mining.util.IStackIntArray;
+import org.mvavrill.miningDiv.mining.util.ItemsCovers;
 import org.mvavrill.miningDiv.mining.util.Jaccard;
+import org.mvavrill.miningDiv.mining.util.TransactionWeights;
 import org.mvavrill.miningDiv.mining.structures.*;
 
 import org.chocosolver.memory.IStateInt;
@@ -15,20 +21,24 @@ import org.chocosolver.solver.variables.events.IntEventType;
 import org.chocosolver.solver.variables.events.PropagatorEventType;
 import org.chocosolver.util.ESat;
 
-import org.javatuples.Pair;
-
+import java.nio.LongBuffer;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.function.IntUnaryOperator;
+import java.util.Arrays;
 
 public final class ClosedDiversityBacktrack extends Propagator<BoolVar> implements FreeItemsExtensions {
 
   //public static int jaccardCpt = 0;
 
-  private final long[][] itemCovers;
-  private final IBitSet cover;
+  private final ICover cover;
+  private final IFreeItems freeItems; // The free and filtered items, updated with the instantiations
+  private final IProjectedSupports projectedSupports; // The supports of the projections of the cover on the items, so that the projections are only built when they are needed
+  private final DataSet dataset;
+  private final TransactionWeights weights;
   private final int minFreq;
   private final boolean doWeakConsistency;
   
@@ -38,6 +48,19 @@ public final class ClosedDiversityBacktrack extends Propagator<BoolVar> implemen
   private final boolean checkUB; // Whether to check the upper bounds (to deactivate the diversity check when UB < jMax)
   private final List<Integer> historyIndices; // Indices in the history. Used to deactivate the diversity (we do not want to touch the history)
   private final IStateInt firstHistoryIndexNotUB; // First index in the history that is not satisfied with UB.
+  private final HistoryCovers historyCovers; // Words and weighted supports of the covers of the history
+  private final HistoryIntersections historyIntersections; // The counts of the intersections with the history, with the words of its covers or the transposed covers
+  private HistoryLSH historyLSH = null; // The candidates of the LB checks of the nodes that are not leaves, all the history if null
+  private final double[] bounds = new double[2]; // The lb and ub written by Jaccard.lbAndUb
+  private final int nbWords; // The number of words of a cover
+
+  // The free items of the forward checking, in increasing order, and, if they were counted in a single pass (see countProjections), the cardinalities of the intersections of their projections with the history
+  private int[] sortedFree = new int[0];
+  private HistoryMatrix.Counts[] projectionCounts = new HistoryMatrix.Counts[0];
+
+  // The weighted cardinalities of the intersections of the cover with the first elements of the history, updated with the transactions removed from the cover (see andCover), and computed for the new elements when they are needed (see coverIntersections)
+  private final IStackIntArray coverCounts;
+  private final IStateInt coverCountsVersion; // The version of the history (see History.getVersion) of the counters
 
   private final Map<Integer, TransactionSet> freeItemsCover = new HashMap<Integer, TransactionSet>();
 
@@ -46,25 +69,118 @@ public final class ClosedDiversityBacktrack extends Propagator<BoolVar> implemen
   }
 
   public ClosedDiversityBacktrack(final DataSet dataset, final History history, final int minFreq, final double jMax, final BoolVar[] vars, final boolean doWeakConsistency, final boolean checkExactJaccard, final boolean checkUB) {
+    this(dataset, history, minFreq, jMax, vars, doWeakConsistency, checkExactJaccard, checkUB, null);
+  }
+
+  /** @param cover the structure of the cover of the current itemset (see ICover). If null, an ISparseBitSetCover is used */
+  public ClosedDiversityBacktrack(final DataSet dataset, final History history, final int minFreq, final double jMax, final BoolVar[] vars, final boolean doWeakConsistency, final boolean checkExactJaccard, final boolean checkUB, final ICover cover) {
     super(vars, PropagatorPriority.QUADRATIC, true);
-    this.itemCovers = dataset.getVerticalLongDataBase();
-    this.cover = new IBitSet(model, dataset.getTransactionsSize(), true);
+    this.cover = (cover == null) ? new ISparseBitSetCover(model, dataset) : cover;
+    this.projectedSupports = new IProjectedSupports(model, dataset);
+    this.freeItems = new IFreeItems(model, vars.length);
+    this.dataset = dataset;
+    this.nbWords = (dataset.getTransactionsSize() + 63) >>> 6;
+    this.weights = dataset.getWeights();
     this.minFreq = minFreq;
     this.jMax = jMax;
     this.history = history;
+    this.historyCovers = new HistoryCovers(history, weights);
+    this.historyIntersections = historyCovers.getIntersections();
     this.doWeakConsistency = doWeakConsistency;
     this.checkExactJaccard = checkExactJaccard;
     this.checkUB = checkUB;
     firstHistoryIndexNotUB = model.getEnvironment().makeInt(0);
+    coverCounts = new IStackIntArray(model);
+    coverCountsVersion = model.getEnvironment().makeInt(history.getVersion());
     historyIndices = new ArrayList<Integer>();
     for (int i = 0; i < history.size(); i++)
       historyIndices.add(i);
   }
 
+  /**
+   * Restricts the lower bound checks of the nodes that are not leaves to the elements of the history selected by a locality sensitive hashing of their covers (see HistoryLSH).
+   * A violation that is missed only weakens the filtering, since the leaves are still checked against all the history.
+   */
+  public void setHistoryLSH(final HistoryLSH lsh) {
+    historyCovers.addIndex(lsh);
+    historyLSH = lsh;
+  }
+
+  /** The words of the cover to select the candidates of the history with, or null if there is no LSH index */
+  private LongBuffer coverWordsForLSH() {
+    return historyLSH != null ? LongBuffer.wrap(cover.getBitSet().toLongArray()) : null;
+  }
+
+  /** Fills sortedFree with the free items, and returns their number */
+  private int fillFreeItems() {
+    if (freeItems.getNbFree() > sortedFree.length)
+      sortedFree = new int[freeItems.getNbFree()];
+    return freeItems.fillFree(sortedFree);
+  }
+
+  /**
+   * Counts the intersections of the projections of the cover on the free items with all the history, in a single pass over the cover (see HistoryIntersections.countIntersections), if it is cheaper than the intersections the LB checks may compute.
+   * The weighted supports of the projections are read from the projected supports, that are exact.
+   * @return whether projectionCounts was filled
+   */
+  private boolean countProjections(final int nbFree) {
+    final int historySize = historyCovers.size();
+    if (nbFree == 0 || historySize == 0)
+      return false;
+    final ItemsCovers itemsCovers = dataset.getItemsCovers();
+    long nbTransactions = 0;
+    long nbSweptWords = 0;
+    for (int j = 0; j < nbFree; j++) {
+      nbTransactions += projectedSupports.get(sortedFree[j]);
+      nbSweptWords += Math.min(itemsCovers.getNbWords(sortedFree[j]), nbWords);
+    }
+    if (historyIntersections.matrixGain(nbTransactions, nbSweptWords, historySize * nbSweptWords) <= 0) // Even if all the history had to be checked
+      return false;
+    long nbIntersectedWords = 0;
+    for (int j = 0; j < nbFree; j++) {
+      final int projectionSupport = projectedSupports.get(sortedFree[j]);
+      if (projectionSupport >= minFreq)
+        nbIntersectedWords += (long) historyCovers.nbMayViolateLB(projectionSupport, minFreq, jMax) * Math.min(itemsCovers.getNbWords(sortedFree[j]), nbWords);
+    }
+    if (!historyIntersections.prefersMatrix(nbTransactions, nbSweptWords, nbIntersectedWords))
+      return false;
+    if (nbFree > projectionCounts.length) {
+      final int previous = projectionCounts.length;
+      projectionCounts = Arrays.copyOf(projectionCounts, Math.max(nbFree, 2 * previous));
+      for (int j = previous; j < projectionCounts.length; j++)
+        projectionCounts[j] = historyIntersections.newCounts();
+    }
+    historyIntersections.countIntersections(cover.getBitSet().toLongArray(), itemsCovers, sortedFree, nbFree, projectionCounts);
+    return true;
+  }
+
+  /** Intersects the cover with the cover of the item, and subtracts the transactions it removes from the projected supports and from the counters of the intersections with the history */
+  private void andCover(final int item) {
+    final int nbOffsets = projectedSupports.and(cover, item);
+    final int nbCounters = coverCounts.size();
+    if (nbOffsets > 0 && nbCounters > 0 && coverCountsVersion.get() == history.getVersion())
+      historyIntersections.subtractIntersections(projectedSupports.getRemovedWords(), projectedSupports.getRemovedOffsets(), nbOffsets, coverCounts.modify(nbCounters), nbCounters);
+  }
+
+  /** The weighted cardinalities of the intersections of the cover with the elements of the history, the counters of the new elements being computed from the cover */
+  private IntUnaryOperator coverIntersections() {
+    final int historySize = historyCovers.size();
+    final boolean reset = coverCountsVersion.get() != history.getVersion(); // The covers of the history changed
+    if (reset)
+      coverCountsVersion.set(history.getVersion());
+    final int from = reset ? 0 : coverCounts.size();
+    if (reset || from < historySize) {
+      final int[] counters = coverCounts.modify(historySize);
+      for (int i = from; i < historySize; i++)
+        counters[i] = cover.andCount(historyCovers.getWords(i));
+    }
+    return coverCounts::get;
+  }
+
   @Override
   public TransactionSet getFreeItemsCover(final int item) {
     if (!freeItemsCover.containsKey(item))
-      freeItemsCover.put(item, new TransactionSet(cover.getIntersection(itemCovers[item])));
+      freeItemsCover.put(item, cover.getIntersection(item));
     return freeItemsCover.get(item);
   }
 
@@ -73,11 +189,17 @@ public final class ClosedDiversityBacktrack extends Propagator<BoolVar> implemen
     return cover.getBitSet();
   }
 
+  @Override
+  public IFreeItems getFreeItems() {
+    return freeItems;
+  }
+
   @Override
   public void propagate(int vIdx, int mask) throws ContradictionException {
+    freeItems.instantiate(vIdx, vars[vIdx].getValue());
     if (vars[vIdx].getValue() == 1) {
-      cover.and(itemCovers[vIdx]);
-      if (cover.cardinality() < minFreq || !isLBSatisfied(new TransactionSet(cover.getBitSet()), checkUB)) // Possible only with other constraints involved, otherwise forward checking is sufficient
+      andCover(vIdx);
+      if (cover.cardinality() < minFreq || !isLBSatisfied(cover.cardinality(), coverIntersections(), checkUB, coverWordsForLSH())) // Possible only with other constraints involved, otherwise forward checking is sufficient
         this.fails();
     }
     forcePropagate(PropagatorEventType.CUSTOM_PROPAGATION);
@@ -85,78 +207,95 @@ public final class ClosedDiversityBacktrack extends Propagator<BoolVar> implemen
 
   @Override
   public void propagate(int evtmask) throws ContradictionException {
-    BitSet free_items = new BitSet();
-    BitSet filtered_items = new BitSet();
-    for (int item = 0; item < vars.length; item++) {
-      if (vars[item].isInstantiatedTo(0)) {
-        filtered_items.set(item);
-      } else if (vars[item].getDomainSize() == 2) {
-        free_items.set(item);
-      }
-    }
+    freeItems.update(vars); // The instantiations whose events were not received yet
 
 
     // Frequency and LB is already checked in the fine propagator
-    for (int i = filtered_items.nextSetBit(0); i != -1; i = filtered_items.nextSetBit(i + 1))
-      if (cover.isSubsetOf(itemCovers[i])) // If the pattern should be extended with a filtered item
+    projectedSupports.init(cover);
+    for (int k = 0; k < freeItems.getNbFiltered(); k++)
+      if (projectedSupports.get(freeItems.getFiltered(k)) == cover.cardinality()) // If the pattern should be extended with a filtered item
         this.fails();
     
-    freeItemsCover.clear(); // re-initialise
-    for (int item = free_items.nextSetBit(0); item != -1; item = free_items.nextSetBit(item + 1)) {
-      TransactionSet projection = new TransactionSet(cover.getIntersection(itemCovers[item]));
-      if (projection.getTransactions().cardinality() < minFreq || !isLBSatisfied(projection, false)) { // frequency and LB filtering
+    freeItemsCover.clear(); // re-initialise, the covers of the free items are memoized when they are needed
+    final int nbFree = fillFreeItems();
+    boolean counted = countProjections(nbFree); // The counts are the ones of the cover before the full-extensions
+    for (int j = 0; j < nbFree; j++) {
+      final int item = sortedFree[j];
+      final int projectionSupport = projectedSupports.get(item);
+      if (projectionSupport < minFreq) { // frequency filtering
         vars[item].instantiateTo(0, this);
-        filtered_items.set(item);
-        free_items.clear(item);
+        freeItems.instantiate(item, 0);
+        continue;
       }
-      else if (cover.isSubsetOf(itemCovers[item])) { // full-extension
-        vars[item].instantiateTo(1, this);
-        cover.and(itemCovers[item]);
-        free_items.clear(item);
+      final LongBuffer candidatesWords = historyLSH != null ? getFreeItemsCover(item).getWords() : null;
+      if (!isLBSatisfied(projectionSupport, counted ? projectionCounts[j]::get : i -> getFreeItemsCover(item).andCount(historyCovers.getWords(i), weights), false, candidatesWords)) { // LB filtering
+        vars[item].instantiateTo(0, this);
+        freeItems.instantiate(item, 0);
       }
-      else {
-        freeItemsCover.put(item, projection); // Memoize the covers of free items for later
+      else if (projectionSupport == cover.cardinality()) { // full-extension
+        vars[item].instantiateTo(1, this);
+        freeItems.instantiate(item, 1);
+        andCover(item);
+        counted = false;
       }
     }
 
     if (!doWeakConsistency) {
-      for (int i = filtered_items.nextSetBit(0); i != -1; i = filtered_items.nextSetBit(i + 1)) {
-        BitSet coverFiltered = cover.getIntersection(itemCovers[i]);
-        for (int j = free_items.nextSetBit(0); j != -1; j = free_items.nextSetBit(j + 1)) {
-          TransactionSet coverFree = freeItemsCover.get(j);
-          if (coverFree.isIncludedIn(coverFiltered))
+      final int nbFiltered = freeItems.getNbFiltered(); // The items filtered by this consistency are not used to filter others
+      for (int k = 0; k < nbFiltered; k++) {
+        TransactionSet coverFiltered = cover.getIntersection(freeItems.getFiltered(k));
+        for (int l = freeItems.getNbFree() - 1; l >= 0; l--) {
+          final int j = freeItems.getFree(l);
+          TransactionSet coverFree = getFreeItemsCover(j);
+          if (coverFree.isIncludedIn(coverFiltered)) {
             vars[j].instantiateTo(0, this);
+            freeItems.instantiate(j, 0);
+          }
         }
       }
     }
     
-    if (free_items.isEmpty() && checkExactJaccard && !isExactSatisfied(new TransactionSet(cover.getBitSet())))
+    if (freeItems.getNbFree() == 0 && checkExactJaccard && !isExactSatisfied(cover.cardinality(), coverIntersections()))
       this.fails();
 
-    if (!isLBSatisfied(new TransactionSet(cover.getBitSet()), checkUB))
+    if (!isLBSatisfied(cover.cardinality(), coverIntersections(), checkUB, freeItems.getNbFree() == 0 ? null : coverWordsForLSH())) // A leaf is checked against all the history
       this.fails();
   }
 
   @Override
   public ESat isEntailed() {
-    if (!isLBSatisfied(new TransactionSet(cover.getBitSet()), checkUB))
+    if (!isLBSatisfied(cover.cardinality(), coverIntersections(), checkUB, null))
        return ESat.FALSE;
     return ESat.TRUE;
   }
 
-  private boolean isLBSatisfied(final TransactionSet covX, final boolean reduceUB) {
+  /**
+   * @param sizeX the weighted cardinality of the cover X
+   * @param intersectionCount gives the weighted cardinality of the intersection of X and the cover of an element of the history, from its index
+   * @param candidatesWords the words of X if only the candidates of the LSH index are checked, null to check all the history
+   */
+  private boolean isLBSatisfied(final int sizeX, final IntUnaryOperator intersectionCount, final boolean reduceUB, final LongBuffer candidatesWords) {
+    final int historySize = historyCovers.size();
+    final boolean candidatesOnly = candidatesWords != null;
+    if (candidatesOnly)
+      historyLSH.selectCandidates(candidatesWords); // After historyCovers.size(), so that the index has all the history
     if (reduceUB) {
+      if (historyCovers.recentLBViolation(sizeX, intersectionCount, minFreq, jMax, 0) != -1) // The elements that failed recently are likely to fail again
+        return false;
       int firstIndex = firstHistoryIndexNotUB.get();
-      for(int i = firstIndex; i < history.size(); i++) {
+      for(int i = firstIndex; i < historySize; i++) {
         if (i >= historyIndices.size())
           historyIndices.add(i); // This it should be enough to add only one element.
         int currentHistoryIndex = historyIndices.get(i);
+        if (!historyCovers.mayViolateLB(sizeX, currentHistoryIndex, minFreq, jMax) || (candidatesOnly && !historyLSH.isCandidate(currentHistoryIndex))) // Too far in cardinality or not similar enough, but it can still violate it deeper in the search
+          continue;
         //jaccardCpt++;
-        Pair<Double,Double> lbAndUb = Jaccard.lbAndUb(covX, history.get(currentHistoryIndex).getCover(), minFreq);
-        double lb = lbAndUb.getValue0();
-        if((lb > jMax) || ((lb == jMax) && (lb == 0.0)))
+        Jaccard.lbAndUb(sizeX, historyCovers.getSupport(currentHistoryIndex), intersectionCount.applyAsInt(currentHistoryIndex), minFreq, bounds);
+        if (HistoryCovers.violates(bounds[0], jMax)) {
+          historyCovers.recordViolation(currentHistoryIndex);
           return false;
-        double ub = lbAndUb.getValue1();
+        }
+        double ub = bounds[1];
         if (ub < jMax) { // do not need to check again history[historyIndices[i]], so swap it, and increment firstIndex
           historyIndices.set(i, historyIndices.get(firstIndex));
           historyIndices.set(firstIndex, currentHistoryIndex); // if i == firstIndex, then nothing happens
@@ -165,27 +304,14 @@ public final class ClosedDiversityBacktrack extends Propagator<BoolVar> implemen
       }
       firstHistoryIndexNotUB.set(firstIndex); // We only set it at the end. If the function returned earlier, it means a fail, then we don't need to update the firstIndex.
     }
-    else {
-      for(int i = firstHistoryIndexNotUB.get(); i < history.size(); i++) {
-        //jaccardCpt++;
-        double lb = Jaccard.lb(covX, history.get(i).getCover(), minFreq);
-        if((lb > jMax) || ((lb == jMax) && (lb == 0.0)))
-          return false;
-      }
-    }
+    else if (candidatesOnly ? historyCovers.findLBViolationInCandidates(sizeX, intersectionCount, minFreq, jMax, firstHistoryIndexNotUB.get(), historyLSH::isCandidate) != -1 : historyCovers.findLBViolation(sizeX, intersectionCount, minFreq, jMax, firstHistoryIndexNotUB.get()) != -1)
+      return false;
     return true;
   }
 
-  private boolean isExactSatisfied(final TransactionSet covX) {
-    for(int i = firstHistoryIndexNotUB.get(); i < history.size(); i++) {
-      if (i > historyIndices.size())
-        historyIndices.add(i); // This it should be enough to add only one element.
-      double exact = Jaccard.exact(covX, history.get(historyIndices.get(i)).getCover());
-      //jaccardCpt++;
-      if((exact > jMax) || ((exact == jMax) && (exact == 0.0)))
-        return false;
-    }
-    return true;
+  /** The elements whose upper bound is below jMax (see isLBSatisfied) cannot violate it, so that all the history is given to the search of a violation */
+  private boolean isExactSatisfied(final int sizeX, final IntUnaryOperator intersectionCount) {
+    return historyCovers.findExactViolation(sizeX, intersectionCount, jMax, 0) == -1;
   }
 
   public double getjMax() {
@@ -2,6 +2,7 @@ package org.mvavrill.miningDiv.mining.models.closedpatterns;
 
 import org.mvavrill.miningDiv.mining.models.FreeItemsExtensions;
 import org.mvavrill.miningDiv.mining.util.DataSet;
+import org.mvavrill.miningDiv.mining.util.IFreeItems;
 import org.mvavrill.miningDiv.mining.structures.ItemSet;
 import org.mvavrill.miningDiv.mining.structures.TransactionSet;
 
@@ -21,6 +22,7 @@ public final class ClosedPatterns extends Propagator<BoolVar> implements FreeIte
   private final DataSet dataset;
   private final int minFreq;
   private final boolean doWeakConsistency;
+  private final IFreeItems freeItems; // The free, filtered and current items, updated at every propagation
 
   private final Map<Integer, TransactionSet> freeItemsCover = new HashMap<Integer, TransactionSet>();
 
@@ -33,6 +35,7 @@ public final class ClosedPatterns extends Propagator<BoolVar> implements FreeIte
     this.dataset = dataset;
     this.minFreq = minFreq;
     this.doWeakConsistency = doWeakConsistency;
+    this.freeItems = new IFreeItems(model, vars.length);
   }
 
   @Override
@@ -52,6 +55,12 @@ public final class ClosedPatterns extends Propagator<BoolVar> implements FreeIte
     throw new IllegalStateException("Cannot return cover using base closedPattern");
   }
 
+  @Override
+  public IFreeItems getFreeItems() {
+    freeItems.update(vars);
+    return freeItems;
+  }
+
   @Override
   public void propagate(int evtmask) throws ContradictionException {
     // handle free items and their cover wrt cov_X
@@ -62,17 +71,16 @@ public final class ClosedPatterns extends Propagator<BoolVar> implements FreeIte
     BitSet filtered_items = new BitSet(); // items set to 0
     BitSet current_itemset = new BitSet(); // items set to 1 (current closed pattern)
 		
-    for (int item = 0; item < dataset.getNbrVar(); item++) {
-      if (vars[item].isInstantiatedTo(0)) {
-        filtered_items.set(item);
-      } else if (vars[item].isInstantiatedTo(1)) {
-        current_itemset.set(item);
-      } else 
-        free_items.set(item);
-    }
+    freeItems.update(vars);
+    for (int k = 0; k < freeItems.getNbFiltered(); k++)
+      filtered_items.set(freeItems.getFiltered(k));
+    for (int k = 0; k < freeItems.getItemsetSize(); k++)
+      current_itemset.set(freeItems.getItemsetItem(k));
+    for (int k = 0; k < freeItems.getNbFree(); k++)
+      free_items.set(freeItems.getFree(k));
     // cov(X)
     TransactionSet coverPos1 = dataset.getCovers().getCoverOf(new ItemSet(current_itemset));
-    if (coverPos1.getTransactions().cardinality() < minFreq)
+    if (coverPos1.cardinality(dataset.getWeights()) < minFreq)
       this.fails();
     for (int i = filtered_items.nextSetBit(0); i != -1; i = filtered_items.nextSetBit(i + 1))
       if (dataset.getCovers().isIncludedIn(coverPos1, i)) // If the pattern should be extended with a filtered item
@@ -81,14 +89,16 @@ public final class ClosedPatterns extends Propagator<BoolVar> implements FreeIte
     for (int item = free_items.nextSetBit(0); item != -1; item = free_items.nextSetBit(item + 1)) {
       if (dataset.getCovers().isIncludedIn(coverPos1, item)) { // full-extension
         vars[item].removeValue(0, Cause.Null);
+        freeItems.instantiate(item, 1);
         current_itemset.set(item);
         free_items.clear(item);
         dataset.getCovers().pushCover(new ItemSet(current_itemset), coverPos1);
       } else {
         TransactionSet projection = dataset.getCovers().intersectCover(coverPos1, item); 
         // frequency filtering
-        if (projection.getTransactions().cardinality() < minFreq ) {
+        if (projection.cardinality(dataset.getWeights()) < minFreq ) {
           vars[item].removeValue(1, this);
+          freeItems.instantiate(item, 0);
           filtered_items.set(item);
           free_items.clear(item);
         } else {
@@ -102,8 +112,10 @@ public final class ClosedPatterns extends Propagator<BoolVar> implements FreeIte
         TransactionSet cover01 = dataset.getCovers().intersectCover(coverPos1, i);
         for (int j = free_items.nextSetBit(0); j != -1; j = free_items.nextSetBit(j + 1)) {
           TransactionSet cover02 = freeItemsCover.get(j);
-          if (coverInclusion(cover01, cover02))
+          if (coverInclusion(cover01, cover02)) {
             vars[j].removeValue(1, Cause.Null);
+            freeItems.instantiate(j, 0);
+          }
         }
       }
     }
@@ -115,15 +127,7 @@ public final class ClosedPatterns extends Propagator<BoolVar> implements FreeIte
   }
 
   public boolean coverInclusion(TransactionSet cover1, TransactionSet cover2) {
-    BitSet T2 = new BitSet();
-    BitSet T11 = new BitSet();
-    T2 = cover2.getTransactions();
-    T11 = (BitSet) T2.clone();
-    T11.andNot(cover1.getTransactions());
-
-    if (T11.isEmpty())
-      return true;
-    return false;
+    return cover2.isIncludedIn(cover1);
   }
 
 }
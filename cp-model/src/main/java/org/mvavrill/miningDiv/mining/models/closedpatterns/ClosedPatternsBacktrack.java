@@ -2,7 +2,10 @@ package org.mvavrill.miningDiv.mining.models.closedpatterns;
 
 import org.mvavrill.miningDiv.mining.models.FreeItemsExtensions;
 import org.mvavrill.miningDiv.mining.util.DataSet;
-import org.mvavrill.miningDiv.mining.util.IBitSet;
+import org.mvavrill.miningDiv.mining.util.ISparseBitSetCover;
+import org.mvavrill.miningDiv.mining.util.ICover;
+import org.mvavrill.miningDiv.mining.util.IFreeItems;
+import org.mvavrill.miningDiv.mining.util.IProjectedSupports;
 import org.mvavrill.miningDiv.mining.structures.ItemSet;
 import org.mvavrill.miningDiv.mining.structures.TransactionSet;
 
@@ -20,8 +23,9 @@ import java.util.HashMap;
 
 public final class ClosedPatternsBacktrack extends Propagator<BoolVar> implements FreeItemsExtensions {
 
-  private final long[][] itemCovers;
-  private final IBitSet cover;
+  private final ICover cover;
+  private final IFreeItems freeItems; // The free and filtered items, updated with the instantiations
+  private final IProjectedSupports projectedSupports; // The supports of the projections of the cover on the items, so that the projections are only built when they are asked (see getFreeItemsCover)
   private final int minFreq;
   private final boolean doWeakConsistency;
 
@@ -32,9 +36,15 @@ public final class ClosedPatternsBacktrack extends Propagator<BoolVar> implement
   }
 
   public ClosedPatternsBacktrack(final DataSet dataset, final int minFreq, final BoolVar[] vars, final boolean doWeakConsistency) {
+    this(dataset, minFreq, vars, doWeakConsistency, null);
+  }
+
+  /** @param cover the structure of the cover of the current itemset (see ICover). If null, an ISparseBitSetCover is used */
+  public ClosedPatternsBacktrack(final DataSet dataset, final int minFreq, final BoolVar[] vars, final boolean doWeakConsistency, final ICover cover) {
     super(vars, PropagatorPriority.QUADRATIC, true);
-    this.itemCovers = dataset.getVerticalLongDataBase();
-    this.cover = new IBitSet(model, dataset.getTransactionsSize(), true);
+    this.cover = (cover == null) ? new ISparseBitSetCover(model, dataset) : cover;
+    this.projectedSupports = new IProjectedSupports(model, dataset);
+    this.freeItems = new IFreeItems(model, vars.length);
     this.minFreq = minFreq;
     this.doWeakConsistency = doWeakConsistency;
   }
@@ -42,7 +52,7 @@ public final class ClosedPatternsBacktrack extends Propagator<BoolVar> implement
   @Override
   public TransactionSet getFreeItemsCover(final int item) {
     if (!freeItemsCover.containsKey(item))
-      freeItemsCover.put(item, new TransactionSet(cover.getIntersection(itemCovers[item])));
+      freeItemsCover.put(item, cover.getIntersection(item));
     return freeItemsCover.get(item);
   }
 
@@ -51,10 +61,16 @@ public final class ClosedPatternsBacktrack extends Propagator<BoolVar> implement
     return cover.getBitSet();
   }
 
+  @Override
+  public IFreeItems getFreeItems() {
+    return freeItems;
+  }
+
   @Override
   public void propagate(int vIdx, int mask) throws ContradictionException {
+    freeItems.instantiate(vIdx, vars[vIdx].getValue());
     if (vars[vIdx].getValue() == 1) {
-      cover.and(itemCovers[vIdx]);
+      projectedSupports.and(cover, vIdx);
       if (cover.cardinality() < minFreq)
         this.fails();
     }
@@ -63,49 +79,43 @@ public final class ClosedPatternsBacktrack extends Propagator<BoolVar> implement
 
   @Override
   public void propagate(int evtmask) throws ContradictionException {
-    BitSet free_items = new BitSet();
-    BitSet filtered_items = new BitSet();
-    for (int item = 0; item < vars.length; item++) {
-      if (vars[item].isInstantiatedTo(0)) {
-        filtered_items.set(item);
-      } else if (vars[item].getDomainSize() == 2) {
-        free_items.set(item);
-      }
-    }
+    freeItems.update(vars); // The instantiations whose events were not received yet
 
 
     // Frequency is already checked in the fine propagator
-    for (int i = filtered_items.nextSetBit(0); i != -1; i = filtered_items.nextSetBit(i + 1))
-      if (cover.isSubsetOf(itemCovers[i])) // If the pattern should be extended with a filtered item
+    projectedSupports.init(cover);
+    final int coverSize = cover.cardinality();
+    for (int k = 0; k < freeItems.getNbFiltered(); k++)
+      if (projectedSupports.get(freeItems.getFiltered(k)) == coverSize) // If the pattern should be extended with a filtered item
         this.fails();
 
     
-    freeItemsCover.clear(); // re-initialize
-    for (int item = free_items.nextSetBit(0); item != -1; item = free_items.nextSetBit(item + 1)) {
-      if (cover.isSubsetOf(itemCovers[item])) { // full-extension
+    freeItemsCover.clear(); // re-initialize, the covers of the free items are memoized when they are asked
+    for (int k = freeItems.getNbFree() - 1; k >= 0; k--) { // Backward, since an item leaves the free items by being swapped with the last one
+      final int item = freeItems.getFree(k);
+      final int projectionSupport = projectedSupports.get(item);
+      if (projectionSupport == coverSize) { // full-extension
         vars[item].instantiateTo(1, this);
-        free_items.clear(item);
+        freeItems.instantiate(item, 1);
       }
-      else {
-        TransactionSet projection = new TransactionSet(cover.getIntersection(itemCovers[item])); 
-        // frequency filtering
-        if (projection.getTransactions().cardinality() < minFreq ) {
-          vars[item].instantiateTo(0, this);
-          filtered_items.set(item);
-          free_items.clear(item);
-        } else {
-          freeItemsCover.put(item, projection); // Memoize the covers of free items for later
-        }
+      // frequency filtering
+      else if (projectionSupport < minFreq) {
+        vars[item].instantiateTo(0, this);
+        freeItems.instantiate(item, 0);
       }
     }
 
     if (!doWeakConsistency) {
-      for (int i = filtered_items.nextSetBit(0); i != -1; i = filtered_items.nextSetBit(i + 1)) {
-        BitSet coverFiltered = cover.getIntersection(itemCovers[i]);
-        for (int j = free_items.nextSetBit(0); j != -1; j = free_items.nextSetBit(j + 1)) {
-          TransactionSet coverFree = freeItemsCover.get(j);
-          if (coverFree.isIncludedIn(coverFiltered))
+      final int nbFiltered = freeItems.getNbFiltered(); // The items filtered by this consistency are not used to filter others
+      for (int k = 0; k < nbFiltered; k++) {
+        TransactionSet coverFiltered = cover.getIntersection(freeItems.getFiltered(k));
+        for (int l = freeItems.getNbFree() - 1; l >= 0; l--) {
+          final int j = freeItems.getFree(l);
+          TransactionSet coverFree = getFreeItemsCover(j);
+          if (coverFree.isIncludedIn(coverFiltered)) {
             vars[j].removeValue(1, this);
+            freeItems.instantiate(j, 0);
+          }
         }
       }
     }
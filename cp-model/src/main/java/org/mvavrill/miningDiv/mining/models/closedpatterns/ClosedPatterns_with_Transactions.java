@@ -74,13 +74,13 @@ public final class ClosedPatterns_with_Transactions extends Propagator<BoolVar>
 		TransactionSet coverSigmaPlus = covers.getCoverOf(new ItemSet(Sigma_positif));
 
 		// on vérifie la cohérence entre les Tt et les couvertures des motifs
-		BitSet coverSigmaPlusUFree = (BitSet) coverSigmaPlus.getTransactions().clone();
+		TransactionSet coverSigmaPlusUFree = coverSigmaPlus;
 		for (int i : Sigma_libre.stream().toArray()) {
-			coverSigmaPlusUFree.and(dataset.getVerticalDataBase()[i]);
+			coverSigmaPlusUFree = coverSigmaPlusUFree.getIntersection(dataset.getItemsCovers(), i);
 		}
-		for (int i = 0; i < coverSigmaPlus.getTransactions().length(); i++) {
-			boolean t = coverSigmaPlus.getTransactions().get(i);
-			if ((coverSigmaPlusUFree.get(i) && T[i].isInstantiatedTo(0)) || (!t && T[i].isInstantiatedTo(1)) ) {
+		for (int i = 0; i < coverSigmaPlus.length(); i++) {
+			boolean t = coverSigmaPlus.contains(i);
+			if ((coverSigmaPlusUFree.contains(i) && T[i].isInstantiatedTo(0)) || (!t && T[i].isInstantiatedTo(1)) ) {
 				String msg = "\n\t\t*** Message from ClosedPatterns : ***\n"
 						+ "\t\t\t an unconsistancy in transactions variable "
 						+ "" + T[i].getName() + " detected\n";
@@ -109,7 +109,7 @@ public final class ClosedPatterns_with_Transactions extends Propagator<BoolVar>
 				projection = covers.intersectCover(coverSigmaPlus, item);
 				// filtrage par rapport au seuil
 
-				if (projection.getTransactions().cardinality() < seuil) {
+				if (projection.cardinality() < seuil) {
 					p[item].removeValue(1, Cause.Null);
 					//p[item].removeValue(1, ClosedPatternsCauses.InfrequentItems);
 					Sigma_libNeg.set(item);
@@ -152,11 +152,11 @@ public final class ClosedPatterns_with_Transactions extends Propagator<BoolVar>
 		for (int id_tran = beta_libre.nextSetBit(0); id_tran != -1; 
 				id_tran = beta_libre.nextSetBit(id_tran + 1)) {
 				
-			if (!coverSigmaPlus.getTransactions().get(id_tran)) {
+			if (!coverSigmaPlus.contains(id_tran)) {
 				T[id_tran].removeValue(1, Cause.Null);
 				//T[id_tran].removeValue(1, ClosedPatternsCauses.UncoveredTransactions);
 			} 
-			else if (coverSigmaPlus.getTransactions().get(id_tran) && Sigma_libre.isEmpty()) {
+			else if (coverSigmaPlus.contains(id_tran) && Sigma_libre.isEmpty()) {
 				// if
 				// (cover_intersect_PosLib.getTransactions().get(id_tran)) {
 				T[id_tran].removeValue(0, Cause.Null);
@@ -218,27 +218,17 @@ public final class ClosedPatterns_with_Transactions extends Propagator<BoolVar>
 
 	public boolean coverInclusion(TransactionSet cover1, TransactionSet cover2) {
 
-		BitSet T2 = new BitSet();
-		BitSet T11 = new BitSet();
-		T2 = cover2.getTransactions();
-		T11 = (BitSet) T2.clone();
-		T11.andNot(cover1.getTransactions());
-
-		if (T11.isEmpty()) {
-			return true;
-		}
-		return false;
+		return cover2.isIncludedIn(cover1);
 
 	}
 
 	public TransactionSet getIntersection(TransactionSet CoverCurant, BitSet Sigma_libre0) {
-		BitSet coverPosLib = new BitSet();
-		coverPosLib = (BitSet) CoverCurant.getTransactions().clone();
+		TransactionSet coverPosLib = CoverCurant;
 		for (int Item = Sigma_libre0.nextSetBit(0); Item != -1; Item = Sigma_libre0.nextSetBit(Item + 1)) {
 			// intersection entre coverture de sigma_{+} & couverture de
-			coverPosLib.and(dataset.getVerticalDataBase()[Item]);
+			coverPosLib = coverPosLib.getIntersection(dataset.getItemsCovers(), Item);
 		}
-		return new TransactionSet(coverPosLib);
+		return coverPosLib;
 	}
 
 }
@@ -1,7 +1,10 @@
 package org.mvavrill.miningDiv.mining.structures;
 
 import org.mvavrill.miningDiv.mining.util.DataSet;
+import org.mvavrill.miningDiv.mining.util.ItemsCovers;
 import org.mvavrill.miningDiv.mining.util.Jaccard;
+import org.mvavrill.miningDiv.mining.util.TransactionWeights;
+import org.mvavrill.miningDiv.mining.util.WindowUpdate;
 
 import org.chocosolver.solver.Model;
 import org.chocosolver.solver.Solver;
@@ -26,6 +29,7 @@ public class History implements IMonitorSolution {
   private final List<ItemsetCover> allItemsets;
   private final BoolVar[] vars;
   private final DataSet dataset;
+  private int version = 0; // Incremented every time the covers of the itemsets change (see refreshCovers)
 
   /** Basic constructor. It will not record the solutions */
   public History() {
@@ -35,9 +39,14 @@ public class History implements IMonitorSolution {
   }
 
   public History(final List<ItemsetCover> allItemsets) {
+    this(allItemsets, null);
+  }
+
+  /** The dataset is only used to save the itemsets with the items of the file (see DataSet.getOriginalItem) */
+  public History(final List<ItemsetCover> allItemsets, final DataSet dataset) {
     this.allItemsets = allItemsets;
     vars = null;
-    dataset = null;
+    this.dataset = dataset;
   }
 
   /** Constructor to use when wanting to record the solutions. */
@@ -57,7 +66,7 @@ public class History implements IMonitorSolution {
     for (int i: idsToExtract) {
       extractedItemsets.add(allItemsets.get(i));
     }
-    return new History(extractedItemsets);
+    return new History(extractedItemsets, dataset);
   }
 
   /** Returns a new history containing all the ItemsetCovers h[i] for start <= i < end */
@@ -66,7 +75,61 @@ public class History implements IMonitorSolution {
     for (int i = start; i < end; i++) {
       extractedItemsets.add(allItemsets.get(i));
     }
-    return new History(extractedItemsets);
+    return new History(extractedItemsets, dataset);
+  }
+
+  /**
+   * Updates the covers of the itemsets after the sliding window of the dataset moved (see DataSet.slide).
+   * Only the slots that changed are recomputed, the rest of the covers are kept.
+   */
+  public void refreshCovers(final WindowUpdate update) {
+    final BitSet changedSlots = update.getChangedSlots();
+    final ItemsCovers itemsCovers = dataset.getItemsCovers();
+    for (int i = 0; i < allItemsets.size(); i++) {
+      ItemsetCover itemsetCover = allItemsets.get(i);
+      BitSet itemset = itemsetCover.getItemSet().getBitSet();
+      BitSet cover = itemsetCover.getCover().getTransactions();
+      cover.andNot(changedSlots);
+      for (int slot = changedSlots.nextSetBit(0); slot != -1; slot = changedSlots.nextSetBit(slot + 1)) {
+        boolean contained = true;
+        for (int item = itemset.nextSetBit(0); item != -1 && contained; item = itemset.nextSetBit(item + 1))
+          contained = itemsCovers.contains(item, slot);
+        if (contained)
+          cover.set(slot);
+      }
+      allItemsets.set(i, new ItemsetCover(itemsetCover.getItemSet(), new TransactionSet(cover)));
+    }
+    version++;
+  }
+
+  /** A number that changes every time the covers of the itemsets change, so that the structures built on the covers know when to rebuild (see HistoryCovers) */
+  public int getVersion() {
+    return version;
+  }
+
+  /**
+   * Returns a new history containing the itemsets that are still solutions of the closed diversity problem, in the order of this history.
+   * An itemset is kept if it is frequent, closed, and if its lower bound of the Jaccard with the itemsets kept before it is not above jMax (as in ClosedDiversity).
+   * It is meant to restart a search after the dataset changed, with the itemsets that are still valid (see PatternMining.setInitialHistory).
+   */
+  public History extractStillValid(final int minFreq, final double jMax) {
+    final TransactionWeights weights = weights();
+    final ItemsCovers itemsCovers = dataset.getItemsCovers();
+    List<ItemsetCover> validItemsets = new ArrayList<ItemsetCover>();
+    for (ItemsetCover itemsetCover : allItemsets) {
+      BitSet itemset = itemsetCover.getItemSet().getBitSet();
+      TransactionSet cover = itemsetCover.getCover();
+      boolean valid = !itemset.isEmpty() && cover.cardinality(weights) >= minFreq;
+      for (int item = 0; item < itemsCovers.getNbItems() && valid; item++) // closedness
+        valid = itemset.get(item) || !cover.isIncludedIn(itemsCovers, item);
+      for (int i = 0; i < validItemsets.size() && valid; i++) {
+        double lb = Jaccard.lb(cover, validItemsets.get(i).getCover(), minFreq, weights);
+        valid = !((lb > jMax) || ((lb == jMax) && (lb == 0.0)));
+      }
+      if (valid)
+        validItemsets.add(itemsetCover);
+    }
+    return new History(validItemsets, dataset);
   }
 
   @Override
@@ -80,6 +143,11 @@ public class History implements IMonitorSolution {
     allItemsets.add(new ItemsetCover(itemsetI, dataset.getCovers().getCoverOf(itemsetI)));
   }
 	
+  /** The weights of the transactions of the covers */
+  private TransactionWeights weights() {
+    return dataset == null ? TransactionWeights.UNIT : dataset.getWeights();
+  }
+
   public void add(final ItemsetCover s) {
     allItemsets.add(s);
   }
@@ -102,7 +170,7 @@ public class History implements IMonitorSolution {
   }
 
   /** Saves the itemsets (and not the transactions) to the file. The first line contains a first intetger : the number N of itemsets; and then multiple integers for running times T in nanoseconds.
-   * Then there are N lines containing each an itemset, as integers separated by spaces.
+   * Then there are N lines containing each an itemset, as integers separated by spaces. The items are the ones of the dataset file, even if the dataset renumbered them.
    */
   public void saveToFile(final String fileName, long... runningTimes) throws IOException {
     FileWriter myWriter = new FileWriter(fileName);
@@ -112,7 +180,8 @@ public class History implements IMonitorSolution {
     }
     myWriter.write("\n");
     for (ItemsetCover ic : allItemsets) {
-      ic.getItemSet().getBitSet().stream().forEach(i -> {try {myWriter.write((i+1) + " ");} catch (IOException e) {throw new RuntimeException(e);}});
+      ic.getItemSet().getBitSet().stream().map(i -> dataset == null ? i : dataset.getOriginalItem(i)).sorted()
+        .forEach(i -> {try {myWriter.write((i+1) + " ");} catch (IOException e) {throw new RuntimeException(e);}});
       myWriter.write("\n");
     }
     myWriter.close();
@@ -122,7 +191,7 @@ public class History implements IMonitorSolution {
   public void printLbs(final int minFreq) {
     for (int i = 1; i < allItemsets.size(); i++) {
       for (int j = 0; j < i; j++) {
-        System.out.print(Jaccard.lb(allItemsets.get(i).getCover(),allItemsets.get(j).getCover(), minFreq) + " ");
+        System.out.print(Jaccard.lb(allItemsets.get(i).getCover(),allItemsets.get(j).getCover(), minFreq, weights()) + " ");
       }
       System.out.println("");
     }
@@ -134,7 +203,7 @@ public class History implements IMonitorSolution {
     for (int i = 0; i < allItemsets.size(); i++) {
       TransactionSet currentCover = allItemsets.get(i).getCover();
       for (int j = 0; j < i; j++) {
-        allJaccards.add(Jaccard.exact(currentCover, allItemsets.get(j).getCover()));
+        allJaccards.add(Jaccard.exact(currentCover, allItemsets.get(j).getCover(), weights()));
       }
     }
     return allJaccards;
@@ -157,7 +226,7 @@ public class History implements IMonitorSolution {
     for (int i = 1; i < allItemsets.size(); i++) {
       TransactionSet currentCover = allItemsets.get(i).getCover();
       for (int j = 0; j < i; j++) {
-        totalSum += Jaccard.exact(currentCover, allItemsets.get(j).getCover());
+        totalSum += Jaccard.exact(currentCover, allItemsets.get(j).getCover(), weights());
         cpt++;
       }
       averages[i-1] = totalSum/cpt;
@@ -173,7 +242,7 @@ public class History implements IMonitorSolution {
   private void updateMinima(final double[] maxToTree, final int newId) {
     TransactionSet newCover = allItemsets.get(newId).getCover();
     for (int i = 0; i < maxToTree.length; i++) {
-      maxToTree[i] = (newId == i) ? Double.POSITIVE_INFINITY : Math.max(maxToTree[i], Jaccard.exact(allItemsets.get(i).getCover(), newCover));
+      maxToTree[i] = (newId == i) ? Double.POSITIVE_INFINITY : Math.max(maxToTree[i], Jaccard.exact(allItemsets.get(i).getCover(), newCover, weights()));
     }
   }
   /** Updates all the structures after a new element has been chosen */
@@ -191,7 +260,7 @@ public class History implements IMonitorSolution {
     for (int i = 1; i < allItemsets.size(); i++) {
       TransactionSet iCover = allItemsets.get(i).getCover();
       for (int j = 0; j < i; j++) {
-        double currentJaccard = Jaccard.exact(iCover, allItemsets.get(j).getCover());
+        double currentJaccard = Jaccard.exact(iCover, allItemsets.get(j).getCover(), weights());
         if (currentJaccard == 0.)
           return new Pair<Integer, Integer>(j, i);
         if (currentJaccard < currentMinimum) {
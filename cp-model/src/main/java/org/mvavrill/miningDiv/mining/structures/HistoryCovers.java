@@ -0,0 +1,307 @@
+package org.mvavrill.miningDiv.mining.structures;
+
+import org.mvavrill.miningDiv.mining.util.Jaccard;
+import org.mvavrill.miningDiv.mining.util.TransactionWeights;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The covers of the itemsets of a history as words (as in TransactionSet.toLongArray()), with their weighted cardinalities, to evaluate the Jaccard of one cover against all of them.
+ * The arrays are filled when the history grows, and refilled when its covers change (see History.refreshCovers), so that the loops do not go through the ItemsetCovers.
+ * The cover X is given by its weighted cardinality and a function giving the weighted cardinality of its intersection with the cover of an element from its index, so that it can be a TransactionSet, a backtrackable cover (see ICover) or counters maintained along the search.
+ * All the functions only consider the elements of the history from the index `from`.
+ * The Jaccard and its lower bound increase with the cardinality of the intersection, that is at most the smallest of the two cardinalities: the elements whose cardinality is too far from the one of X cannot violate jMax (see mayViolate).
+ * The elements are kept sorted by cardinality, so that the checks only go through the interval of the elements that may violate jMax, starting from the ones whose cardinality is the closest to the one of X.
+ * The elements that violated jMax most recently are checked first, since the next covers are often close to the last one.
+ * The checks can also be restricted to candidates, for instance the ones of a locality sensitive hashing of the covers (see HistoryLSH, kept up to date with addIndex, and findLBViolationInCandidates).
+ * The intersections of a TransactionSet with the elements are counted by getIntersections, that chooses between the words of the elements and the transposed covers (see HistoryIntersections).
+ * @author Mathieu Vavrille
+ */
+public class HistoryCovers {
+  private static final int NB_RECENT_VIOLATIONS = 4;
+
+  private final History history;
+  private final TransactionWeights weights;
+  private long[][] words = new long[16][];
+  private int[] supports = new int[16]; // Weighted by weights
+  private int[] bySupport = new int[16]; // The filled elements, by increasing support
+  private int size = 0; // The number of filled elements
+  private int historyVersion;
+  private final int[] recentViolations = new int[NB_RECENT_VIOLATIONS]; // The elements that violated jMax, the most recent first, -1 if there are fewer
+  private final List<HistoryIndex> indexes = new ArrayList<HistoryIndex>(); // Filled with the covers of the elements, see addIndex
+  private final HistoryIntersections intersections;
+
+  public HistoryCovers(final History history, final TransactionWeights weights) {
+    this.history = history;
+    this.weights = weights;
+    this.historyVersion = history.getVersion();
+    Arrays.fill(recentViolations, -1);
+    this.intersections = new HistoryIntersections(this, weights);
+    indexes.add(intersections);
+  }
+
+  /** Fills the arrays with the new elements of the history, or with all of them if its covers changed */
+  private void update() {
+    if (historyVersion != history.getVersion()) {
+      historyVersion = history.getVersion();
+      size = 0;
+      Arrays.fill(recentViolations, -1);
+      for (HistoryIndex index : indexes)
+        index.clear();
+    }
+    if (history.size() > words.length) {
+      final int capacity = Math.max(2 * words.length, history.size());
+      words = Arrays.copyOf(words, capacity);
+      supports = Arrays.copyOf(supports, capacity);
+      bySupport = Arrays.copyOf(bySupport, capacity);
+    }
+    for (; size < history.size(); size++) {
+      final TransactionSet cover = history.get(size).getCover();
+      words[size] = cover.toLongArray();
+      supports[size] = cover.cardinality(weights);
+      final int position = firstWithSupportAbove(supports[size]);
+      System.arraycopy(bySupport, position, bySupport, position + 1, size - position);
+      bySupport[position] = size;
+      for (HistoryIndex index : indexes)
+        index.add(words[size]);
+    }
+  }
+
+  /** Fills the (empty) index with the covers of the elements, and then keeps it up to date with the history */
+  public void addIndex(final HistoryIndex index) {
+    update();
+    index.clear();
+    for (int i = 0; i < size; i++)
+      index.add(words[i]);
+    indexes.add(index);
+  }
+
+  /** The counts of the intersections with the elements, shared by all the users of the history covers so that the transposed covers are built once */
+  public HistoryIntersections getIntersections() {
+    return intersections;
+  }
+
+  /** The first position in bySupport whose element has a support greater than `support`, size if there is none */
+  private int firstWithSupportAbove(final int support) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+      if (supports[bySupport[middle]] <= support)
+        low = middle + 1;
+      else
+        high = middle;
+    }
+    return low;
+  }
+
+  /** The number of elements of the history */
+  public int size() {
+    update();
+    return size;
+  }
+
+  /** The words of the cover of the element i, that must not be modified */
+  public long[] getWords(final int i) {
+    update();
+    return words[i];
+  }
+
+  /** The weighted cardinality of the cover of the element i */
+  public int getSupport(final int i) {
+    update();
+    return supports[i];
+  }
+
+  /** Whether a Jaccard violates the bound jMax. A Jaccard of 0 violates a bound of 0 */
+  public static boolean violates(final double jaccard, final double jMax) {
+    return (jaccard > jMax) || ((jaccard == jMax) && (jaccard == 0.0));
+  }
+
+  /**
+   * Whether the exact Jaccard (or its lower bound if `exact` is false) between X and a set of cardinality sizeH may violate jMax, i.e. if it violates it when their intersection is as large as possible.
+   * As a function of sizeH, this largest value increases up to sizeX and then decreases, so that the elements that may violate jMax are an interval of the elements sorted by cardinality.
+   */
+  private static boolean mayViolate(final int sizeX, final int sizeH, final boolean exact, final int theta, final double jMax) {
+    final int maxSize12 = Math.min(sizeX, sizeH);
+    return violates(exact ? Jaccard.exact(sizeX, sizeH, maxSize12) : Jaccard.lb(sizeX, sizeH, maxSize12, theta), jMax);
+  }
+
+  /** Whether the lower bound of the Jaccard between X and the element i may violate jMax, from their cardinalities only */
+  public boolean mayViolateLB(final int sizeX, final int i, final int theta, final double jMax) {
+    update();
+    return mayViolate(sizeX, supports[i], false, theta, jMax);
+  }
+
+  /** Puts the element first in the elements that violated jMax most recently */
+  public void recordViolation(final int i) {
+    int r = 0;
+    while (r < NB_RECENT_VIOLATIONS - 1 && recentViolations[r] != i)
+      r++;
+    System.arraycopy(recentViolations, 0, recentViolations, 1, r);
+    recentViolations[0] = i;
+  }
+
+  private boolean isRecentViolation(final int i) {
+    for (int r = 0; r < NB_RECENT_VIOLATIONS; r++)
+      if (recentViolations[r] == i)
+        return true;
+    return false;
+  }
+
+  /** The exact Jaccard, or its lower bound, between X and the element i, from the cardinality of their intersection */
+  private double jaccard(final int sizeX, final int size12, final int i, final boolean exact, final int theta) {
+    return exact ? Jaccard.exact(sizeX, supports[i], size12) : Jaccard.lb(sizeX, supports[i], size12, theta);
+  }
+
+  /** Whether the element violates jMax, in which case it becomes the most recent violation */
+  private boolean checkViolation(final int sizeX, final IntUnaryOperator intersectionCount, final int i, final boolean exact, final int theta, final double jMax) {
+    if (!violates(jaccard(sizeX, intersectionCount.applyAsInt(i), i, exact, theta), jMax))
+      return false;
+    recordViolation(i);
+    return true;
+  }
+
+  /** An element that violates jMax among the most recent violations, or -1 if there is none */
+  private int findRecentViolation(final int sizeX, final IntUnaryOperator intersectionCount, final boolean exact, final int theta, final double jMax, final int from) {
+    for (int r = 0; r < NB_RECENT_VIOLATIONS; r++) {
+      final int i = recentViolations[r];
+      if (i >= from && i < size && checkViolation(sizeX, intersectionCount, i, exact, theta, jMax))
+        return i;
+    }
+    return -1;
+  }
+
+  /** An element that violates jMax, the recent violations being checked first, and then the elements that may violate jMax from the cardinality closest to sizeX, or -1 if there is none */
+  private int findViolation(final int sizeX, final IntUnaryOperator intersectionCount, final boolean exact, final int theta, final double jMax, final int from, final IntPredicate isCandidate) {
+    update();
+    final int recent = findRecentViolation(sizeX, intersectionCount, exact, theta, jMax, from);
+    if (recent != -1)
+      return recent;
+    final int peak = firstWithSupportAbove(sizeX - 1); // The first position with a support of at least sizeX
+    for (int position = peak; position < size && mayViolate(sizeX, supports[bySupport[position]], exact, theta, jMax); position++) {
+      final int i = bySupport[position];
+      if (i >= from && (isCandidate == null || isCandidate.test(i)) && !isRecentViolation(i) && checkViolation(sizeX, intersectionCount, i, exact, theta, jMax))
+        return i;
+    }
+    for (int position = peak - 1; position >= 0 && mayViolate(sizeX, supports[bySupport[position]], exact, theta, jMax); position--) {
+      final int i = bySupport[position];
+      if (i >= from && (isCandidate == null || isCandidate.test(i)) && !isRecentViolation(i) && checkViolation(sizeX, intersectionCount, i, exact, theta, jMax))
+        return i;
+    }
+    return -1;
+  }
+
+  /** The number of elements that may violate jMax from their cardinalities (see mayViolate), found by a binary search on each side of the peak */
+  private int nbMayViolate(final int sizeX, final boolean exact, final int theta, final double jMax) {
+    final int peak = firstWithSupportAbove(sizeX - 1);
+    int low = peak;
+    int high = size;
+    while (low < high) { // The first position above the peak that cannot violate jMax
+      final int middle = (low + high) >>> 1;
+      if (mayViolate(sizeX, supports[bySupport[middle]], exact, theta, jMax))
+        low = middle + 1;
+      else
+        high = middle;
+    }
+    final int end = low;
+    low = 0;
+    high = peak;
+    while (low < high) { // The first position below the peak that may violate jMax
+      final int middle = (low + high) >>> 1;
+      if (mayViolate(sizeX, supports[bySupport[middle]], exact, theta, jMax))
+        high = middle;
+      else
+        low = middle + 1;
+    }
+    return end - low;
+  }
+
+  /** The number of elements whose lower bound of the Jaccard with X may violate jMax from their cardinalities, i.e. the number of intersections that a search of a violation may compute */
+  public int nbMayViolateLB(final int sizeX, final int theta, final double jMax) {
+    update();
+    return nbMayViolate(sizeX, false, theta, jMax);
+  }
+
+  /** An element, among the ones that violated jMax most recently, whose lower bound of the Jaccard with X violates jMax, or -1 if there is none */
+  public int recentLBViolation(final int sizeX, final IntUnaryOperator intersectionCount, final int theta, final double jMax, final int from) {
+    update();
+    return findRecentViolation(sizeX, intersectionCount, false, theta, jMax, from);
+  }
+
+  /**
+   * The index of an element whose lower bound of the Jaccard with X violates jMax, or -1 if there is none.
+   * @param sizeX the weighted cardinality of X
+   * @param intersectionCount gives the weighted cardinality of the intersection of X and the cover of an element, from its index
+   */
+  public int findLBViolation(final int sizeX, final IntUnaryOperator intersectionCount, final int theta, final double jMax, final int from) {
+    return findViolation(sizeX, intersectionCount, false, theta, jMax, from, null);
+  }
+
+  /**
+   * Same as findLBViolation, but only the recent violations and the elements accepted by isCandidate are checked.
+   * The elements that are not candidates may still violate jMax: restricting the checks to the candidates is only sound when missing a violation only weakens the filtering, and not to accept a solution.
+   */
+  public int findLBViolationInCandidates(final int sizeX, final IntUnaryOperator intersectionCount, final int theta, final double jMax, final int from, final IntPredicate isCandidate) {
+    return findViolation(sizeX, intersectionCount, false, theta, jMax, from, isCandidate);
+  }
+
+  /** The index of an element whose exact Jaccard with X violates jMax, or -1 if there is none */
+  public int findExactViolation(final int sizeX, final IntUnaryOperator intersectionCount, final double jMax, final int from) {
+    return findViolation(sizeX, intersectionCount, true, 0, jMax, from, null);
+  }
+
+  /** The index of an element whose lower bound of the Jaccard with X violates jMax, using the words of X or the matrix */
+  public int findLBViolation(final TransactionSet coverX, final int theta, final double jMax, final int from) {
+    update();
+    final int sizeX = coverX.cardinality(weights);
+    return findViolation(sizeX, intersections.intersectionCounts(coverX, nbMayViolate(sizeX, false, theta, jMax)), false, theta, jMax, from, null);
+  }
+
+  /** The index of an element whose exact Jaccard with X violates jMax, using the words of X or the matrix */
+  public int findExactViolation(final TransactionSet coverX, final double jMax, final int from) {
+    update();
+    final int sizeX = coverX.cardinality(weights);
+    return findViolation(sizeX, intersections.intersectionCounts(coverX, nbMayViolate(sizeX, true, 0, jMax)), true, 0, jMax, from, null);
+  }
+
+  /** The exact Jaccard, or its upper bound, between X and the element i */
+  private double bound(final int sizeX, final int size12, final int i, final boolean exact, final int theta) {
+    return exact ? Jaccard.exact(sizeX, supports[i], size12) : Jaccard.ub(sizeX, size12, theta);
+  }
+
+  /**
+   * The index of the element with the maximum exact Jaccard (or upper bound if `exact` is false) with X, the first one in case of ties, or -1 if there is none.
+   * @param theta the threshold of the upper bound, unused if `exact` is true
+   */
+  public int argMaxBound(final TransactionSet coverX, final boolean exact, final int theta, final int from) {
+    update();
+    final int sizeX = coverX.cardinality(weights);
+    final IntUnaryOperator intersectionCount = intersections.intersectionCounts(coverX, size - from);
+    double maxBound = Double.NEGATIVE_INFINITY;
+    int argMax = -1;
+    for (int i = from; i < size; i++) {
+      final double bound = bound(sizeX, intersectionCount.applyAsInt(i), i, exact, theta);
+      if (bound > maxBound) {
+        maxBound = bound;
+        argMax = i;
+      }
+    }
+    return argMax;
+  }
+
+  /** The maximum exact Jaccard (or upper bound if `exact` is false) between X and the elements, 0 if there is none */
+  public double maxBound(final TransactionSet coverX, final boolean exact, final int theta, final int from) {
+    update();
+    final int sizeX = coverX.cardinality(weights);
+    final IntUnaryOperator intersectionCount = intersections.intersectionCounts(coverX, size - from);
+    double maxBound = 0.;
+    for (int i = from; i < size; i++)
+      maxBound = Math.max(maxBound, bound(sizeX, intersectionCount.applyAsInt(i), i, exact, theta));
+    return maxBound;
+  }
+}
@@ -0,0 +1,15 @@
+package org.mvavrill.miningDiv.mining.structures;
+
+/**
+ * A structure built on the covers of the elements of a history, kept up to date by HistoryCovers (see HistoryCovers.addIndex).
+ * The covers are added in the order of the elements, and the index is cleared when the covers of the history change.
+ * @author Mathieu Vavrille
+ */
+public interface HistoryIndex {
+
+  /** Adds the cover of the next element (the index of the element being the number of elements added before), given by its words, that must not be modified */
+  void add(long[] words);
+
+  /** Removes all the elements */
+  void clear();
+}
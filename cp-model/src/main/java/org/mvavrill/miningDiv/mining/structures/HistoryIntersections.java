@@ -0,0 +1,128 @@
+package org.mvavrill.miningDiv.mining.structures;
+
+import org.mvavrill.miningDiv.mining.util.ItemsCovers;
+import org.mvavrill.miningDiv.mining.util.TransactionWeights;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The cardinalities of the intersections of a cover X with all the elements of a history (see HistoryCovers), either by intersecting X with the words of every element, or in a single pass over X with the transposed covers (see HistoryMatrix).
+ * The pass over the matrix is cheaper when X has few transactions, but the matrix takes as much memory as the covers: it is only built once the passes that were not made would have saved more than its construction (see prefersMatrix).
+ * @author Mathieu Vavrille
+ */
+public class HistoryIntersections implements HistoryIndex {
+  private static final long MATRIX_GAIN = 4;
+
+  private final HistoryCovers historyCovers;
+  private final TransactionWeights weights;
+  private HistoryMatrix matrix = null;
+  private long totalSupport = 0; // The sum of the supports of the elements, the cost of building the matrix
+  private long missedGain = 0; // The gains of the passes over the matrix before it was built (see prefersMatrix)
+  private HistoryMatrix.Counts counts = null; // The counts of the last pass over the matrix of intersectionCounts and of subtractIntersections
+
+  /** Created by the HistoryCovers, that keeps it up to date (see HistoryCovers.getIntersections) */
+  HistoryIntersections(final HistoryCovers historyCovers, final TransactionWeights weights) {
+    this.historyCovers = historyCovers;
+    this.weights = weights;
+  }
+
+  @Override
+  public void add(final long[] words) {
+    totalSupport += weights.count(words);
+    if (matrix != null)
+      matrix.add(words);
+  }
+
+  @Override
+  public void clear() {
+    totalSupport = 0;
+    if (matrix != null)
+      matrix.clear();
+  }
+
+  /** The transposed covers, built on the first call */
+  private HistoryMatrix getMatrix() {
+    final int size = historyCovers.size();
+    if (matrix == null) {
+      matrix = new HistoryMatrix();
+      for (int i = 0; i < size; i++)
+        matrix.add(historyCovers.getWords(i));
+    }
+    return matrix;
+  }
+
+  /** Counters for the passes over the transposed covers (see countIntersections) */
+  public HistoryMatrix.Counts newCounts() {
+    return getMatrix().new Counts();
+  }
+
+  /**
+   * The estimated gain of a pass over the transposed covers for sets of nbTransactions transactions (in total) given by nbSweptWords words, instead of intersecting nbIntersectedWords words with the words of the elements, negative if the pass is not worth it.
+   * The costs are estimated without building the matrix, in intersections of words: the rows are read in no particular order, so that reading a row costs about 64 of them, and adding it 16 more for every word of the row.
+   * Since the matrix takes as much memory as the covers and is updated with the history, the pass must be at least MATRIX_GAIN times cheaper.
+   */
+  public long matrixGain(final long nbTransactions, final long nbSweptWords, final long nbIntersectedWords) {
+    final int size = historyCovers.size();
+    return nbIntersectedWords - MATRIX_GAIN * (nbTransactions * (64L + 16L * ((size + 63) >>> 6)) + 16L * size + nbSweptWords);
+  }
+
+  /**
+   * Whether to make a pass over the transposed covers rather than the intersections (see matrixGain).
+   * The matrix is only built once the passes that were not made would have saved more than its construction, as in the ski rental problem, so that it is not built for a few passes.
+   */
+  public boolean prefersMatrix(final long nbTransactions, final long nbSweptWords, final long nbIntersectedWords) {
+    final long gain = matrixGain(nbTransactions, nbSweptWords, nbIntersectedWords);
+    if (gain <= 0)
+      return false;
+    if (matrix != null)
+      return true;
+    missedGain += gain;
+    return missedGain > 64L * totalSupport;
+  }
+
+  /**
+   * Sets countsX[j] to the weighted cardinalities of the intersections of the elements with the projection of the cover X on items[j], for the nbItems first items, in a single pass over X.
+   * @param countsX at least nbItems counters, created by newCounts
+   */
+  public void countIntersections(final long[] wordsX, final ItemsCovers itemsCovers, final int[] items, final int nbItems, final HistoryMatrix.Counts[] countsX) {
+    getMatrix().andCounts(wordsX, itemsCovers, items, nbItems, weights, countsX);
+  }
+
+  /**
+   * Subtracts from counters[i] the weighted cardinality of the intersection of the element i with the transactions of `wordsX`, for the nbCounters first elements.
+   * Only the words of wordsX at the nbOffsets first offsets are non-zero, so that the intersections only go through them, unless a pass over the matrix is cheaper.
+   */
+  public void subtractIntersections(final long[] wordsX, final int[] offsets, final int nbOffsets, final int[] counters, final int nbCounters) {
+    int cardinality = 0;
+    for (int k = 0; k < nbOffsets; k++)
+      cardinality += Long.bitCount(wordsX[offsets[k]]);
+    if (prefersMatrix(cardinality, nbOffsets, (long) nbCounters * nbOffsets)) {
+      if (counts == null)
+        counts = newCounts();
+      getMatrix().andCounts(wordsX, weights, counts);
+      for (int i = 0; i < nbCounters; i++)
+        counters[i] -= counts.get(i);
+      return;
+    }
+    for (int i = 0; i < nbCounters; i++) {
+      final long[] wordsH = historyCovers.getWords(i);
+      int count = 0;
+      for (int k = 0; k < nbOffsets; k++) {
+        final int offset = offsets[k];
+        if (offset < wordsH.length)
+          count += weights.count(wordsX[offset] & wordsH[offset], offset);
+      }
+      counters[i] -= count;
+    }
+  }
+
+  /** The weighted cardinalities of the intersections of X with the elements, with a pass over the matrix if it is cheaper than `nbIntersections` intersections */
+  IntUnaryOperator intersectionCounts(final TransactionSet coverX, final int nbIntersections) {
+    if (!prefersMatrix(coverX.cardinality(), coverX.getNbWords(), (long) nbIntersections * coverX.getNbWords()))
+      return i -> coverX.andCount(historyCovers.getWords(i), weights);
+    if (counts == null)
+      counts = newCounts();
+    getMatrix().andCounts(coverX, weights, counts);
+    return counts::get;
+  }
+}
@@ -0,0 +1,154 @@
+package org.mvavrill.miningDiv.mining.structures;
+
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A locality sensitive hashing index of the covers of a history, to find the elements whose Jaccard with a cover may be high.
+ * Every cover has a MinHash signature of nbBands*nbRows bins, computed in a single pass over its transactions (one permutation hashing, the empty bins taking the value of the next non-empty bin).
+ * Only the nbBits lowest bits of every bin are kept (b-bit MinHash), and the signature is cut into nbBands bands of nbRows bins: two covers are candidates if they have the same values on at least one band.
+ * Two covers of Jaccard s are candidates with a probability of about 1-(1-s^nbRows)^nbBands, so that more bands or fewer rows find more candidates.
+ * The candidates are only a guess: an element that is not a candidate may still have a high Jaccard with the cover (see HistoryCovers.findLBViolationInCandidates for how it is used soundly).
+ * The index is filled and kept up to date by the HistoryCovers of the history (see HistoryCovers.addIndex).
+ * @author Mathieu Vavrille
+ */
+public class HistoryLSH implements HistoryIndex {
+  private static final int EMPTY = Integer.MAX_VALUE; // The value of the bins of an empty cover
+
+  private final int nbBands;
+  private final int nbRows;
+  private final int nbBits;
+  private final int[] signature; // The signature of the last cover hashed
+  private final List<Map<Long, List<Integer>>> bands = new ArrayList<Map<Long, List<Integer>>>(); // For every band, the elements of every key
+  private int size = 0;
+
+  private int[] candidateStamps = new int[16]; // candidateStamps[i] == stamp if the element i is a candidate of the last query
+  private int stamp = 0;
+
+  // Statistics
+  private long nbQueries = 0;
+  private long nbCandidates = 0;
+  private long nbElementsQueried = 0;
+
+  /**
+   * @param nbBands the number of bands, the more bands the more candidates
+   * @param nbRows the number of bins of every band, the more rows the fewer candidates
+   * @param nbBits the number of bits kept for every bin (at most 32)
+   */
+  public HistoryLSH(final int nbBands, final int nbRows, final int nbBits) {
+    if (nbBands <= 0 || nbRows <= 0 || nbBits <= 0 || nbBits > 32)
+      throw new IllegalArgumentException("The number of bands (" + nbBands + ") and rows (" + nbRows + ") must be positive, and the number of bits (" + nbBits + ") between 1 and 32");
+    this.nbBands = nbBands;
+    this.nbRows = nbRows;
+    this.nbBits = nbBits;
+    this.signature = new int[nbBands * nbRows];
+    for (int band = 0; band < nbBands; band++)
+      bands.add(new HashMap<Long, List<Integer>>());
+  }
+
+  /** A hash of the transaction, the same for all the covers */
+  private static long hash(final int transaction) {
+    long h = (transaction + 1) * 0x9E3779B97F4A7C15L;
+    h ^= h >>> 32;
+    h *= 0xD6E8FEB86659FD93L;
+    return h ^ (h >>> 32);
+  }
+
+  /** Computes the signature of the cover into `signature` */
+  private void sign(final LongBuffer words) {
+    Arrays.fill(signature, EMPTY);
+    final int nbBins = signature.length;
+    for (int w = 0; w < words.limit(); w++) {
+      long word = words.get(w);
+      while (word != 0) {
+        final long h = hash((w << 6) + Long.numberOfTrailingZeros(word));
+        final int bin = (int) (((h >>> 32) * nbBins) >>> 32);
+        final int value = (int) h & 0x7FFFFFFF;
+        if (value < signature[bin])
+          signature[bin] = value;
+        word &= word - 1;
+      }
+    }
+    int nonEmpty = -1;
+    for (int bin = nbBins - 1; bin >= 0 && nonEmpty == -1; bin--)
+      if (signature[bin] != EMPTY)
+        nonEmpty = bin;
+    if (nonEmpty == -1)
+      return;
+    for (int k = 1; k <= nbBins; k++) { // The empty bins take the value of the next non-empty bin, shifted by the distance
+      final int bin = (nonEmpty + nbBins - k) % nbBins;
+      if (signature[bin] == EMPTY)
+        signature[bin] = signature[(bin + 1) % nbBins] + 1;
+    }
+    final int mask = nbBits == 32 ? -1 : (1 << nbBits) - 1;
+    for (int bin = 0; bin < nbBins; bin++)
+      signature[bin] &= mask;
+  }
+
+  /** The key of the band in the current signature */
+  private long key(final int band) {
+    long key = band;
+    for (int row = band * nbRows; row < (band + 1) * nbRows; row++)
+      key = key * 0x100000001B3L + signature[row];
+    return key;
+  }
+
+  @Override
+  public void add(final long[] words) {
+    sign(LongBuffer.wrap(words));
+    for (int band = 0; band < nbBands; band++)
+      bands.get(band).computeIfAbsent(key(band), k -> new ArrayList<Integer>()).add(size);
+    if (size == candidateStamps.length)
+      candidateStamps = Arrays.copyOf(candidateStamps, 2 * size);
+    size++;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public void clear() {
+    for (Map<Long, List<Integer>> band : bands)
+      band.clear();
+    size = 0;
+  }
+
+  /** Selects the elements that share a band with the cover, see isCandidate. Returns the number of candidates */
+  public int selectCandidates(final LongBuffer words) {
+    stamp++;
+    if (stamp == Integer.MAX_VALUE) {
+      Arrays.fill(candidateStamps, 0);
+      stamp = 1;
+    }
+    sign(words);
+    int nb = 0;
+    for (int band = 0; band < nbBands; band++) {
+      final List<Integer> elements = bands.get(band).get(key(band));
+      if (elements != null)
+        for (int i : elements)
+          if (candidateStamps[i] != stamp) {
+            candidateStamps[i] = stamp;
+            nb++;
+          }
+    }
+    nbQueries++;
+    nbCandidates += nb;
+    nbElementsQueried += size;
+    return nb;
+  }
+
+  /** Whether the element was selected by the last call to selectCandidates */
+  public boolean isCandidate(final int i) {
+    return candidateStamps[i] == stamp;
+  }
+
+  /** The number of queries, and the average number of candidates compared to the average size of the history */
+  public String getStatistics() {
+    return nbQueries + " queries, " + (nbQueries == 0 ? 0 : nbCandidates / nbQueries) + " candidates on average among " + (nbQueries == 0 ? 0 : nbElementsQueried / nbQueries) + " elements (" + nbBands + " bands of " + nbRows + " rows of " + nbBits + " bits)";
+  }
+}
@@ -0,0 +1,221 @@
+package org.mvavrill.miningDiv.mining.structures;
+
+import org.mvavrill.miningDiv.mining.util.ItemsCovers;
+import org.mvavrill.miningDiv.mining.util.TransactionWeights;
+
+import java.util.Arrays;
+
+/**
+ * The covers of the elements of a history, transposed: the row of a transaction has the bit i set if the cover of the element i contains it.
+ * A single pass over the transactions of a cover X then gives the cardinality of its intersection with all the elements at once, by adding the rows of its transactions.
+ * The sums are kept bit-sliced (see Counts): the plane k holds the bit k of the counters of all the elements, so that adding a row to the 64 counters of a word is a ripple-carry addition over a few words.
+ * This is cheaper than intersecting X with every element when X has few transactions compared to the number of words of the covers (see HistoryIntersections).
+ * @author Mathieu Vavrille
+ */
+public class HistoryMatrix implements HistoryIndex {
+  private static final int MAX_PLANES = 32;
+
+  private long[] rows = new long[0]; // The row of the transaction t is rows[t*rowWords..(t+1)*rowWords]
+  private int rowWords = 1; // The number of words of every row, the elements fitting in the rows being at most 64*rowWords
+  private int nbRows = 0; // The number of transactions with a row
+  private int size = 0;
+
+  @Override
+  public void add(final long[] words) {
+    if (size == 64 * rowWords)
+      resize(nbRows, 2 * rowWords);
+    if (64 * words.length > nbRows)
+      resize(Math.max(64 * words.length, 2 * nbRows), rowWords);
+    final int w = size >>> 6;
+    final long bit = 1L << size;
+    for (int offset = 0; offset < words.length; offset++) {
+      long word = words[offset];
+      while (word != 0) {
+        rows[((offset << 6) + Long.numberOfTrailingZeros(word)) * rowWords + w] |= bit;
+        word &= word - 1;
+      }
+    }
+    size++;
+  }
+
+  private void resize(final int newNbRows, final int newRowWords) {
+    final long[] newRows = new long[newNbRows * newRowWords];
+    for (int t = 0; t < nbRows; t++)
+      System.arraycopy(rows, t * rowWords, newRows, t * newRowWords, rowWords);
+    rows = newRows;
+    nbRows = newNbRows;
+    rowWords = newRowWords;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(rows, 0L);
+    size = 0;
+  }
+
+  /** The number of words of the rows that hold elements */
+  private int usedRowWords() {
+    return (size + 63) >>> 6;
+  }
+
+  /** Sets the counts to the weighted cardinalities of the intersections of the cover, given by its words, with all the elements */
+  public void andCounts(final long[] words, final TransactionWeights weights, final Counts counts) {
+    counts.reset();
+    final int length = Math.min(words.length, nbRows >>> 6);
+    for (int offset = 0; offset < length; offset++)
+      counts.add(words[offset], offset, weights);
+    counts.flush();
+  }
+
+  /** Same as andCounts, for a TransactionSet */
+  public void andCounts(final TransactionSet cover, final TransactionWeights weights, final Counts counts) {
+    counts.reset();
+    final int length = Math.min(cover.getNbWords(), nbRows >>> 6);
+    for (int offset = 0; offset < length; offset++)
+      counts.add(cover.getWord(offset), offset, weights);
+    counts.flush();
+  }
+
+  /**
+   * Sets counts[j] to the weighted cardinalities of the intersections of the projection of the cover on items[j] with all the elements, for all the nbItems items.
+   * The projections are never built: a single pass goes through the words of the cover, and every word is intersected with the covers of all the items before going to the next one.
+   */
+  public void andCounts(final long[] words, final ItemsCovers itemsCovers, final int[] items, final int nbItems, final TransactionWeights weights, final Counts[] counts) {
+    for (int j = 0; j < nbItems; j++)
+      counts[j].reset();
+    final int length = Math.min(words.length, nbRows >>> 6);
+    for (int j = 0; j < nbItems; j++) {
+      final int itemLength = Math.min(length, itemsCovers.getNbWords(items[j]));
+      for (int offset = 0; offset < itemLength; offset++) {
+        final long word = words[offset];
+        if (word != 0)
+          counts[j].add(word & itemsCovers.getWord(items[j], offset), offset, weights);
+      }
+      counts[j].flush();
+    }
+  }
+
+  /**
+   * Adds the carry, shifted by `level` (i.e. 2^level times), to the bit-sliced counters.
+   * The carries of all the words go up one plane at a time, until none is left, so that the inner loop does not branch on the words.
+   * @return the number of planes used, at least `nbPlanes`
+   */
+  private static int ripple(final long[] planes, final int planeWords, final int used, final long[] carry, final int level, final int nbPlanes) {
+    int k = level;
+    long remaining = 1;
+    for (; remaining != 0; k++) {
+      remaining = 0;
+      final int offset = k * planeWords;
+      for (int w = 0; w < used; w++) {
+        final long plane = planes[offset + w];
+        final long c = carry[w];
+        planes[offset + w] = plane ^ c;
+        carry[w] = c & plane;
+        remaining |= c & plane;
+      }
+    }
+    return Math.max(nbPlanes, k);
+  }
+
+  /**
+   * Bit-sliced counters, one for every element of the matrix, filled by andCounts.
+   * The rows of unit weight are added 8 at a time with a tree of carry-save adders on the 3 lowest planes (as in the Harley-Seal population count), so that only the carries of 8 go up the planes.
+   */
+  public final class Counts {
+    private long[] planes = new long[0]; // The bit k of the counter of the element i is the bit i of the plane k, planes[k*planeWords..(k+1)*planeWords]
+    private int planeWords = 0;
+    private int nbPlanes = 0; // The planes above are zero
+    private long[] carry = new long[0];
+    private final int[] pending = new int[8]; // The offsets in rows of the rows of unit weight waiting to be added
+    private int nbPending = 0;
+
+    private void reset() {
+      if (planeWords != rowWords) {
+        planeWords = rowWords;
+        planes = new long[MAX_PLANES * planeWords];
+        carry = new long[planeWords];
+      }
+      else
+        Arrays.fill(planes, 0, nbPlanes * planeWords, 0L);
+      nbPlanes = 0;
+      nbPending = 0;
+    }
+
+    /** Adds the rows of the transactions of the word of index `offset`, once for every unit of their weights */
+    private void add(long word, final int offset, final TransactionWeights weights) {
+      while (word != 0) {
+        final int transaction = (offset << 6) + Long.numberOfTrailingZeros(word);
+        if (weights.isUnit()) {
+          pending[nbPending++] = transaction * rowWords;
+          if (nbPending == 8)
+            addPending();
+        }
+        else
+          for (int weight = weights.getWeight(transaction); weight != 0; weight &= weight - 1)
+            addRow(transaction * rowWords, Integer.numberOfTrailingZeros(weight));
+        word &= word - 1;
+      }
+    }
+
+    /** Adds the row at the offset in rows, shifted by `level` */
+    private void addRow(final int base, final int level) {
+      final int used = usedRowWords();
+      System.arraycopy(rows, base, carry, 0, used);
+      nbPlanes = ripple(planes, planeWords, used, carry, level, nbPlanes);
+    }
+
+    /** Adds the 8 pending rows */
+    private void addPending() {
+      final long[] r = rows;
+      final long[] p = planes;
+      final int pw = planeWords;
+      final int used = usedRowWords();
+      final int r0 = pending[0], r1 = pending[1], r2 = pending[2], r3 = pending[3], r4 = pending[4], r5 = pending[5], r6 = pending[6], r7 = pending[7];
+      long remaining = 0;
+      for (int w = 0; w < used; w++) {
+        long ones = p[w];
+        long twos = p[pw + w];
+        long fours = p[2 * pw + w];
+        long u, a, b, twosA, twosB, foursA, foursB;
+        a = r[r0 + w]; b = r[r1 + w]; u = ones ^ a; twosA = (ones & a) | (u & b); ones = u ^ b;
+        a = r[r2 + w]; b = r[r3 + w]; u = ones ^ a; twosB = (ones & a) | (u & b); ones = u ^ b;
+        u = twos ^ twosA; foursA = (twos & twosA) | (u & twosB); twos = u ^ twosB;
+        a = r[r4 + w]; b = r[r5 + w]; u = ones ^ a; twosA = (ones & a) | (u & b); ones = u ^ b;
+        a = r[r6 + w]; b = r[r7 + w]; u = ones ^ a; twosB = (ones & a) | (u & b); ones = u ^ b;
+        u = twos ^ twosA; foursB = (twos & twosA) | (u & twosB); twos = u ^ twosB;
+        u = fours ^ foursA;
+        final long eights = (fours & foursA) | (u & foursB);
+        fours = u ^ foursB;
+        p[w] = ones;
+        p[pw + w] = twos;
+        p[2 * pw + w] = fours;
+        carry[w] = eights;
+        remaining |= eights;
+      }
+      nbPlanes = Math.max(nbPlanes, 3);
+      if (remaining != 0)
+        nbPlanes = ripple(p, pw, used, carry, 3, nbPlanes);
+      nbPending = 0;
+    }
+
+    /** Adds the rows still pending, at the end of a pass */
+    private void flush() {
+      for (int i = 0; i < nbPending; i++)
+        addRow(pending[i], 0);
+      nbPending = 0;
+    }
+
+    /** The counter of the element i */
+    public int get(final int i) {
+      final int w = i >>> 6;
+      int res = 0;
+      for (int k = 0; k < nbPlanes; k++)
+        res |= (int) ((planes[k * planeWords + w] >>> i) & 1L) << k;
+      return res;
+    }
+  }
+}
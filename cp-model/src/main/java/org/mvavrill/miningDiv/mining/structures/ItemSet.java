@@ -33,6 +33,17 @@ public class ItemSet {
     return items.equals(itemset.getBitSet());
   }
 
+  /** Two itemsets are equal if they contain the same items, so that they can be used as keys (as long as the BitSet is not modified) */
+  @Override
+  public boolean equals(final Object o) {
+    return o instanceof ItemSet && isEqualItemSet((ItemSet) o);
+  }
+
+  @Override
+  public int hashCode() {
+    return items.hashCode();
+  }
+
   @Override
   public String toString() {
     return items.toString();
@@ -1,64 +1,246 @@
 package org.mvavrill.miningDiv.mining.structures;
 
+import org.mvavrill.miningDiv.mining.util.ItemsCovers;
+import org.mvavrill.miningDiv.mining.util.TransactionWeights;
+import org.mvavrill.miningDiv.mining.util.WordKernels;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.stream.IntStream;
+
+/**
+ * An immutable set of transactions, stored as the words of a bitset (as in BitSet.toLongArray(), without trailing zero words) with its cardinality.
+ * The words are never modified after the creation, so that the sets can be shared without copies, and the words are exposed through read-only views.
+ * Only the operations that create a new set (getIntersection) allocate: the counts, inclusion and equality tests work directly on the words.
+ * getTransactions() returns a copy as a BitSet, and should be kept out of the loops.
+ * The weighted cardinality is computed once for the last weights it was asked with.
+ */
+public final class TransactionSet {
+  private static final long[] NO_WORDS = new long[0];
+  private static final WordKernels KERNELS = WordKernels.get();
+
+  private final long[] words;
+  private final int cardinality;
+  private WeightedCardinality weighted = null; // Racy but safe: the holder is immutable, and a lost update only recomputes it
+
+  /** The cardinality for some weights */
+  private static final class WeightedCardinality {
+    final TransactionWeights weights;
+    final int value;
+
+    WeightedCardinality(final TransactionWeights weights, final int value) {
+      this.weights = weights;
+      this.value = value;
+    }
+  }
 
-public class TransactionSet {
-  private final BitSet transactions;
-	
   public TransactionSet() {
-    this.transactions = new BitSet();
+    this(NO_WORDS);
   }
 
   public TransactionSet(final BitSet b) {
-    this.transactions = (BitSet) b.clone();
+    this(b.toLongArray());
+  }
+
+  /** The words must have no trailing zero word, and must not be modified afterwards */
+  private TransactionSet(final long[] words) {
+    this.words = words;
+    this.cardinality = KERNELS.count(words, words.length);
+  }
+
+  /**
+   * Creates a set from words (as in BitSet.toLongArray()) without copying them, except to remove the trailing zero words.
+   * The caller gives the ownership of the array, that must not be modified afterwards.
+   */
+  public static TransactionSet wrap(final long[] words) {
+    int length = words.length;
+    while (length > 0 && words[length-1] == 0)
+      length--;
+    return new TransactionSet(length == words.length ? words : Arrays.copyOf(words, length));
+  }
+
+  /** Number of transactions */
+  public int cardinality() {
+    return cardinality;
+  }
+
+  /** Sum of the weights of the transactions */
+  public int cardinality(final TransactionWeights weights) {
+    if (weights.isUnit())
+      return cardinality;
+    WeightedCardinality current = weighted;
+    if (current == null || current.weights != weights) {
+      current = new WeightedCardinality(weights, weights.count(words));
+      weighted = current;
+    }
+    return current.value;
+  }
+
+  public boolean isEmpty() {
+    return cardinality == 0;
+  }
+
+  public boolean contains(final int transaction) {
+    final int w = transaction >>> 6;
+    return w < words.length && (words[w] & (1L << transaction)) != 0;
+  }
+
+  /** The index of the first transaction greater or equal to `from`, or -1 (as in BitSet.nextSetBit) */
+  public int nextSetBit(final int from) {
+    int w = from >>> 6;
+    if (w >= words.length)
+      return -1;
+    long word = words[w] & (-1L << from);
+    while (true) {
+      if (word != 0)
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+      if (++w == words.length)
+        return -1;
+      word = words[w];
+    }
+  }
+
+  public IntStream stream() {
+    return IntStream.iterate(nextSetBit(0), t -> nextSetBit(t+1)).limit(cardinality);
+  }
+
+  /** The index of the last transaction plus one (as in BitSet.length()) */
+  public int length() {
+    return words.length == 0 ? 0 : (words.length << 6) - Long.numberOfLeadingZeros(words[words.length-1]);
+  }
+
+  /** Number of words, the words after these being 0 */
+  public int getNbWords() {
+    return words.length;
+  }
+
+  /** The word at index `w`, 0 if it is after the last word */
+  public long getWord(final int w) {
+    return w < words.length ? words[w] : 0L;
+  }
+
+  /** A read-only view on the words */
+  public LongBuffer getWords() {
+    return LongBuffer.wrap(words).asReadOnlyBuffer();
+  }
+
+  /** Number of transactions in the intersection of this and t2, i.e. the numerator of their Jaccard */
+  public int andCount(final TransactionSet t2) {
+    return andCount(t2.words);
+  }
+  /** Number of transactions in the intersection of this and the words (as in BitSet.toLongArray()) */
+  public int andCount(final long[] words2) {
+    return KERNELS.andCount(words, words2, Math.min(words.length, words2.length));
+  }
+  /** Sum of the weights of the transactions in the intersection of this and the words */
+  public int andCount(final long[] words2, final TransactionWeights weights) {
+    return weights.isUnit() ? andCount(words2) : weights.andCount(words, words2);
+  }
+  /** Sum of the weights of the transactions in the intersection of this and t2 */
+  public int andCount(final TransactionSet t2, final TransactionWeights weights) {
+    return andCount(t2.words, weights);
+  }
+  /** Number of transactions of this that contain the item */
+  public int andCount(final ItemsCovers itemsCovers, final int item) {
+    return itemsCovers.andCount(item, words);
+  }
+
+  /** Number of transactions of this that are not in t2 */
+  public int andNotCount(final TransactionSet t2) {
+    return cardinality - andCount(t2);
+  }
+  /** Sum of the weights of the transactions of this that are not in t2 */
+  public int andNotCount(final TransactionSet t2, final TransactionWeights weights) {
+    return cardinality(weights) - andCount(t2, weights);
   }
 
   /**
    * Returns the intersection @this and an other transactions as a new transaction
    */
   public TransactionSet getIntersection(final TransactionSet t2) {
-    return getIntersection((BitSet) t2.transactions);
+    return getIntersection(t2.words);
   }
   /**
    * Returns the intersection of a the transactions of @this and a BitSet as a new transaction
    */
   public TransactionSet getIntersection(final BitSet b2) {
-    BitSet intersection = (BitSet) transactions.clone();
-    intersection.and(b2);
-    return new TransactionSet(intersection);
+    return getIntersection(b2.toLongArray());
+  }
+  /**
+   * Returns the intersection of a the transactions of @this and words (as in BitSet.toLongArray()) as a new transaction
+   */
+  public TransactionSet getIntersection(final long[] words2) {
+    long[] res = new long[Math.min(words.length, words2.length)];
+    KERNELS.and(words, words2, res, res.length);
+    return wrap(res);
+  }
+
+  /** Returns the intersection of this and the cover of the item as a new transaction */
+  public TransactionSet getIntersection(final ItemsCovers itemsCovers, final int item) {
+    return wrap(itemsCovers.and(item, words));
   }
 
   /** Tests if this is included in the TransactionSet t2 */
   public boolean isIncludedIn(final TransactionSet t2) {
-    return isIncludedIn(t2.transactions);
+    return cardinality <= t2.cardinality && isIncludedIn(t2.words);
+  }
+  /** Tests if this is included in the words (as in BitSet.toLongArray()) */
+  public boolean isIncludedIn(final long[] words2) {
+    final int length = Math.min(words.length, words2.length);
+    for (int w = length; w < words.length; w++) // words2[w] = 0, but not represented
+      if (words[w] != 0)
+        return false;
+    return KERNELS.isSubset(words, words2, length);
+  }
+  /** Tests if this is included in the cover of the item */
+  public boolean isIncludedIn(final ItemsCovers itemsCovers, final int item) {
+    return itemsCovers.includes(item, words);
   }
   /** Tests if this is included in the bitset b2 */
   public boolean isIncludedIn(final BitSet b2) {
-    BitSet removed = (BitSet) transactions.clone();
-    removed.andNot(b2);
-    return removed.isEmpty();
+    for (int t = nextSetBit(0); t != -1; t = nextSetBit(t+1))
+      if (!b2.get(t))
+        return false;
+    return true;
   }
 
   /**
    * Equality test between this and an other transaction set
    */
   public boolean equals(final TransactionSet t2) {
-    return equals(t2.transactions);
+    return cardinality == t2.cardinality && Arrays.equals(words, t2.words);
   }
   /**
    * Equality test between this and an bitset
    */
   public boolean equals(final BitSet b2) {
-    return transactions.equals(b2);
+    return cardinality == b2.cardinality() && isIncludedIn(b2);
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    return o instanceof TransactionSet && equals((TransactionSet) o);
   }
-  
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(words);
+  }
+
+  /** A copy of the transactions */
   public BitSet getTransactions() {
-    return (BitSet) transactions.clone();
+    return BitSet.valueOf(words);
   }
-	
+
+  /** A copy of the words */
+  public long[] toLongArray() {
+    return words.clone();
+  }
+
   @Override
   public String toString() {
-    return transactions.toString();
+    return getTransactions().toString();
   }
 
 }
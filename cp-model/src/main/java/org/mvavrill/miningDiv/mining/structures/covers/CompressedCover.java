@@ -0,0 +1,524 @@
+package org.mvavrill.miningDiv.mining.structures.covers;
+
+import org.mvavrill.miningDiv.mining.structures.TransactionSet;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * An immutable compressed set of transactions, in the style of Roaring bitmaps.
+ * The transactions are split in blocks of 2^16 transactions (according to their 16 high bits), and every non-empty block is stored in the smallest of three containers :
+ * a sorted array of the 16 low bits (sparse blocks), a bitmap of 1024 words (dense blocks), or a list of runs (blocks made of few intervals).
+ * The intersection, the cardinality of the intersection and the inclusion work on any pair of containers, and also between a compressed cover and a set of transactions given as words of a bitset.
+ * The words are read through a LongBuffer, so that the words of a TransactionSet are read through its view (see TransactionSet.getWords) without being copied.
+ * @author Mathieu Vavrille
+ */
+public final class CompressedCover {
+
+  private static final int BLOCK_WORDS = 1024; // 2^16 bits
+  private static final int MAX_ARRAY_SIZE = 4096; // Above, a bitmap is smaller than an array
+
+  private final char[] keys; // 16 high bits of the blocks, in increasing order
+  private final Container[] containers;
+  private final int cardinality;
+
+  private CompressedCover(final char[] keys, final Container[] containers) {
+    this.keys = keys;
+    this.containers = containers;
+    int card = 0;
+    for (Container container : containers)
+      card += container.cardinality();
+    this.cardinality = card;
+  }
+
+  /** Compresses the set of transactions given as the words of a bitset (as in BitSet.toLongArray()) */
+  public static CompressedCover fromWords(final long[] words) {
+    final int nbBlocks = (words.length + BLOCK_WORDS - 1) / BLOCK_WORDS;
+    char[] keys = new char[nbBlocks];
+    Container[] containers = new Container[nbBlocks];
+    int nbContainers = 0;
+    final long[] blockWords = new long[BLOCK_WORDS];
+    for (int block = 0; block < nbBlocks; block++) {
+      final int offset = block * BLOCK_WORDS;
+      final int length = Math.min(BLOCK_WORDS, words.length - offset);
+      Arrays.fill(blockWords, 0L);
+      System.arraycopy(words, offset, blockWords, 0, length);
+      Container container = Container.best(blockWords);
+      if (container != null) {
+        keys[nbContainers] = (char) block;
+        containers[nbContainers++] = container;
+      }
+    }
+    return new CompressedCover(Arrays.copyOf(keys, nbContainers), Arrays.copyOf(containers, nbContainers));
+  }
+
+  public static CompressedCover fromBitSet(final BitSet transactions) {
+    return fromWords(transactions.toLongArray());
+  }
+
+  public int cardinality() {
+    return cardinality;
+  }
+
+  public boolean isEmpty() {
+    return cardinality == 0;
+  }
+
+  public boolean contains(final int transaction) {
+    final int i = Arrays.binarySearch(keys, (char) (transaction >>> 16));
+    return transaction >= 0 && i >= 0 && containers[i].contains(transaction & 0xFFFF);
+  }
+
+  /** The intersection of this and other */
+  public CompressedCover and(final CompressedCover other) {
+    final int maxSize = Math.min(keys.length, other.keys.length);
+    char[] resKeys = new char[maxSize];
+    Container[] resContainers = new Container[maxSize];
+    int nbContainers = 0;
+    for (int i = 0, j = 0; i < keys.length && j < other.keys.length;) {
+      if (keys[i] < other.keys[j])
+        i++;
+      else if (keys[i] > other.keys[j])
+        j++;
+      else {
+        Container container = Container.and(containers[i], other.containers[j]);
+        if (container != null) {
+          resKeys[nbContainers] = keys[i];
+          resContainers[nbContainers++] = container;
+        }
+        i++;
+        j++;
+      }
+    }
+    return new CompressedCover(Arrays.copyOf(resKeys, nbContainers), Arrays.copyOf(resContainers, nbContainers));
+  }
+
+  /** The cardinality of the intersection of this and other, without building the intersection */
+  public int andCount(final CompressedCover other) {
+    int res = 0;
+    for (int i = 0, j = 0; i < keys.length && j < other.keys.length;) {
+      if (keys[i] < other.keys[j])
+        i++;
+      else if (keys[i] > other.keys[j])
+        j++;
+      else
+        res += Container.andCount(containers[i++], other.containers[j++]);
+    }
+    return res;
+  }
+
+  /** Tests if this is included in other */
+  public boolean isSubsetOf(final CompressedCover other) {
+    return cardinality <= other.cardinality && andCount(other) == cardinality;
+  }
+
+  /** The intersection of this and the transactions given as words, as words (trimmed as in BitSet.toLongArray()) */
+  public long[] and(final long[] words) {
+    return and(LongBuffer.wrap(words));
+  }
+
+  /** The intersection of this and the set of transactions, as words (trimmed as in BitSet.toLongArray()) */
+  public long[] and(final TransactionSet transactions) {
+    return and(transactions.getWords());
+  }
+
+  /** The intersection of this and the words, from index 0 to the limit of the buffer */
+  private long[] and(final LongBuffer words) {
+    final int length = words.limit();
+    final long[] res = new long[length];
+    for (int i = 0; i < keys.length && keys[i] * BLOCK_WORDS < length; i++)
+      containers[i].andInto(words, res, keys[i] * BLOCK_WORDS);
+    return trim(res);
+  }
+
+  /** The cardinality of the intersection of this and the transactions given as words */
+  public int andCount(final long[] words) {
+    return andCount(LongBuffer.wrap(words));
+  }
+
+  /** The cardinality of the intersection of this and the set of transactions */
+  public int andCount(final TransactionSet transactions) {
+    return andCount(transactions.getWords());
+  }
+
+  private int andCount(final LongBuffer words) {
+    int res = 0;
+    for (int i = 0; i < keys.length && keys[i] * BLOCK_WORDS < words.limit(); i++)
+      res += containers[i].andCount(words, keys[i] * BLOCK_WORDS);
+    return res;
+  }
+
+  /** Tests if the transactions given as words are included in this */
+  public boolean isSupersetOf(final long[] words) {
+    int card = 0;
+    for (long word : words)
+      card += Long.bitCount(word);
+    return card <= cardinality && andCount(words) == card;
+  }
+
+  /** Tests if the set of transactions is included in this */
+  public boolean isSupersetOf(final TransactionSet transactions) {
+    return transactions.cardinality() <= cardinality && andCount(transactions) == transactions.cardinality();
+  }
+
+  /** The transactions as the words of a bitset (trimmed as in BitSet.toLongArray()) */
+  public long[] toWords() {
+    if (keys.length == 0)
+      return new long[0];
+    final long[] res = new long[(keys[keys.length - 1] + 1) * BLOCK_WORDS];
+    for (int i = 0; i < keys.length; i++)
+      containers[i].orInto(res, keys[i] * BLOCK_WORDS);
+    return trim(res);
+  }
+
+  public BitSet toBitSet() {
+    return BitSet.valueOf(toWords());
+  }
+
+  /** The number of containers of each type (array, bitmap, run), to check the compression */
+  public int[] getContainersTypes() {
+    final int[] res = new int[3];
+    for (Container container : containers)
+      res[container.type()]++;
+    return res;
+  }
+
+  @Override
+  public String toString() {
+    return toBitSet().toString();
+  }
+
+  private static long[] trim(final long[] words) {
+    int length = words.length;
+    while (length > 0 && words[length - 1] == 0)
+      length--;
+    return length == words.length ? words : Arrays.copyOf(words, length);
+  }
+
+  /** Mask of the bits of the word `w` (of a block) that are in the interval [first, last] of the block */
+  private static long rangeMask(final int w, final int first, final int last) {
+    final int from = Math.max(first, w << 6) & 63;
+    final int to = Math.min(last, (w << 6) + 63) & 63;
+    return (-1L >>> (63 - to)) & (-1L << from);
+  }
+
+  /** A block of 2^16 transactions, identified by their 16 low bits */
+  private abstract static class Container {
+    static final int ARRAY = 0;
+    static final int BITMAP = 1;
+    static final int RUN = 2;
+
+    abstract int type();
+    abstract int cardinality();
+    abstract boolean contains(int low);
+    /** Sets the bits of the block in words[offset..offset+1024) */
+    abstract void orInto(long[] words, int offset);
+    /** Adds to dst (empty on the block) the bits of src that are in the block, for the words that exist in src (up to its limit) */
+    abstract void andInto(LongBuffer src, long[] dst, int offset);
+    /** popcount of src[offset+w] & block[w], for the words that exist in src (up to its limit) */
+    abstract int andCount(LongBuffer src, int offset);
+
+    /** The smallest container for the bits of the block (a copy is made if needed), or null if the block is empty */
+    static Container best(final long[] bits) {
+      int card = 0;
+      int nbRuns = 0;
+      long previous = 0;
+      for (long word : bits) {
+        card += Long.bitCount(word);
+        nbRuns += Long.bitCount(word & ~((word << 1) | (previous >>> 63)));
+        previous = word;
+      }
+      if (card == 0)
+        return null;
+      final int arraySize = 2 * card;
+      final int bitmapSize = 8 * BLOCK_WORDS;
+      final int runSize = 4 * nbRuns;
+      if (runSize < arraySize && runSize < bitmapSize)
+        return RunContainer.fromBits(bits, nbRuns);
+      if (card <= MAX_ARRAY_SIZE)
+        return ArrayContainer.fromBits(bits, card);
+      return new BitmapContainer(bits.clone(), card);
+    }
+
+    /** Intersection of two containers, null if empty */
+    static Container and(final Container a, final Container b) {
+      if (a.type() == ARRAY && b.type() == ARRAY)
+        return ((ArrayContainer) a).and((ArrayContainer) b);
+      if (a.type() == ARRAY)
+        return ((ArrayContainer) a).filter(b);
+      if (b.type() == ARRAY)
+        return ((ArrayContainer) b).filter(a);
+      final long[] aBits = new long[BLOCK_WORDS];
+      a.orInto(aBits, 0);
+      final long[] bits = new long[BLOCK_WORDS];
+      b.andInto(LongBuffer.wrap(aBits), bits, 0);
+      return best(bits);
+    }
+
+    /** Cardinality of the intersection of two containers */
+    static int andCount(final Container a, final Container b) {
+      if (a.type() == ARRAY)
+        return ((ArrayContainer) a).filterCount(b);
+      if (b.type() == ARRAY)
+        return ((ArrayContainer) b).filterCount(a);
+      if (a.type() == BITMAP)
+        return b.andCount(LongBuffer.wrap(((BitmapContainer) a).bits), 0);
+      if (b.type() == BITMAP)
+        return a.andCount(LongBuffer.wrap(((BitmapContainer) b).bits), 0);
+      return ((RunContainer) a).andCount((RunContainer) b);
+    }
+  }
+
+  private static final class ArrayContainer extends Container {
+    private final char[] values; // sorted
+
+    private ArrayContainer(final char[] values) {
+      this.values = values;
+    }
+
+    static ArrayContainer fromBits(final long[] bits, final int card) {
+      final char[] values = new char[card];
+      int n = 0;
+      for (int w = 0; w < bits.length; w++)
+        for (long word = bits[w]; word != 0; word &= word - 1)
+          values[n++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+      return new ArrayContainer(values);
+    }
+
+    @Override int type() { return ARRAY; }
+    @Override int cardinality() { return values.length; }
+
+    @Override
+    boolean contains(final int low) {
+      return Arrays.binarySearch(values, (char) low) >= 0;
+    }
+
+    @Override
+    void orInto(final long[] words, final int offset) {
+      for (char v : values)
+        words[offset + (v >>> 6)] |= 1L << v;
+    }
+
+    @Override
+    void andInto(final LongBuffer src, final long[] dst, final int offset) {
+      for (char v : values) {
+        final int w = offset + (v >>> 6);
+        if (w >= src.limit())
+          break;
+        dst[w] |= src.get(w) & (1L << v);
+      }
+    }
+
+    @Override
+    int andCount(final LongBuffer src, final int offset) {
+      int res = 0;
+      for (char v : values) {
+        final int w = offset + (v >>> 6);
+        if (w >= src.limit())
+          break;
+        res += (int) ((src.get(w) >>> v) & 1L);
+      }
+      return res;
+    }
+
+    /** Intersection of two sorted arrays */
+    Container and(final ArrayContainer other) {
+      final char[] res = new char[Math.min(values.length, other.values.length)];
+      int n = 0;
+      for (int i = 0, j = 0; i < values.length && j < other.values.length;) {
+        if (values[i] < other.values[j])
+          i++;
+        else if (values[i] > other.values[j])
+          j++;
+        else {
+          res[n++] = values[i];
+          i++;
+          j++;
+        }
+      }
+      return n == 0 ? null : new ArrayContainer(Arrays.copyOf(res, n));
+    }
+
+    /** The values of this that are in the other container */
+    Container filter(final Container other) {
+      final char[] res = new char[values.length];
+      int n = 0;
+      for (char v : values)
+        if (other.contains(v))
+          res[n++] = v;
+      return n == 0 ? null : new ArrayContainer(Arrays.copyOf(res, n));
+    }
+
+    int filterCount(final Container other) {
+      if (other.type() == ARRAY) {
+        int res = 0;
+        final char[] otherValues = ((ArrayContainer) other).values;
+        for (int i = 0, j = 0; i < values.length && j < otherValues.length;) {
+          if (values[i] < otherValues[j])
+            i++;
+          else if (values[i] > otherValues[j])
+            j++;
+          else {
+            res++;
+            i++;
+            j++;
+          }
+        }
+        return res;
+      }
+      int res = 0;
+      for (char v : values)
+        if (other.contains(v))
+          res++;
+      return res;
+    }
+  }
+
+  private static final class BitmapContainer extends Container {
+    private final long[] bits;
+    private final int card;
+
+    private BitmapContainer(final long[] bits, final int card) {
+      this.bits = bits;
+      this.card = card;
+    }
+
+    @Override int type() { return BITMAP; }
+    @Override int cardinality() { return card; }
+
+    @Override
+    boolean contains(final int low) {
+      return (bits[low >>> 6] & (1L << low)) != 0;
+    }
+
+    @Override
+    void orInto(final long[] words, final int offset) {
+      for (int w = 0; w < BLOCK_WORDS; w++)
+        words[offset + w] |= bits[w];
+    }
+
+    @Override
+    void andInto(final LongBuffer src, final long[] dst, final int offset) {
+      final int length = Math.min(BLOCK_WORDS, src.limit() - offset);
+      for (int w = 0; w < length; w++)
+        dst[offset + w] = src.get(offset + w) & bits[w];
+    }
+
+    @Override
+    int andCount(final LongBuffer src, final int offset) {
+      final int length = Math.min(BLOCK_WORDS, src.limit() - offset);
+      int res = 0;
+      for (int w = 0; w < length; w++)
+        res += Long.bitCount(src.get(offset + w) & bits[w]);
+      return res;
+    }
+  }
+
+  private static final class RunContainer extends Container {
+    private final char[] firsts; // first value of each run, increasing
+    private final char[] lasts; // last value (included) of each run
+    private final int card;
+
+    private RunContainer(final char[] firsts, final char[] lasts) {
+      this.firsts = firsts;
+      this.lasts = lasts;
+      int c = 0;
+      for (int r = 0; r < firsts.length; r++)
+        c += lasts[r] - firsts[r] + 1;
+      this.card = c;
+    }
+
+    static RunContainer fromBits(final long[] bits, final int nbRuns) {
+      final char[] firsts = new char[nbRuns];
+      final char[] lasts = new char[nbRuns];
+      int n = 0;
+      int v = nextSetBit(bits, 0);
+      while (v != -1) {
+        final int end = nextClearBit(bits, v);
+        firsts[n] = (char) v;
+        lasts[n++] = (char) (end - 1);
+        v = end < 1 << 16 ? nextSetBit(bits, end) : -1;
+      }
+      return new RunContainer(firsts, lasts);
+    }
+
+    private static int nextSetBit(final long[] bits, final int from) {
+      int w = from >>> 6;
+      long word = bits[w] & (-1L << from);
+      while (word == 0) {
+        if (++w == BLOCK_WORDS)
+          return -1;
+        word = bits[w];
+      }
+      return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    private static int nextClearBit(final long[] bits, final int from) {
+      int w = from >>> 6;
+      long word = ~bits[w] & (-1L << from);
+      while (word == 0) {
+        if (++w == BLOCK_WORDS)
+          return 1 << 16;
+        word = ~bits[w];
+      }
+      return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    @Override int type() { return RUN; }
+    @Override int cardinality() { return card; }
+
+    @Override
+    boolean contains(final int low) {
+      int lo = 0;
+      int hi = firsts.length - 1;
+      while (lo <= hi) { // last run starting before low
+        final int mid = (lo + hi) >>> 1;
+        if (firsts[mid] <= low)
+          lo = mid + 1;
+        else
+          hi = mid - 1;
+      }
+      return hi >= 0 && low <= lasts[hi];
+    }
+
+    @Override
+    void orInto(final long[] words, final int offset) {
+      for (int r = 0; r < firsts.length; r++)
+        for (int w = firsts[r] >>> 6; w <= lasts[r] >>> 6; w++)
+          words[offset + w] |= rangeMask(w, firsts[r], lasts[r]);
+    }
+
+    @Override
+    void andInto(final LongBuffer src, final long[] dst, final int offset) {
+      for (int r = 0; r < firsts.length; r++)
+        for (int w = firsts[r] >>> 6; w <= lasts[r] >>> 6 && offset + w < src.limit(); w++)
+          dst[offset + w] |= src.get(offset + w) & rangeMask(w, firsts[r], lasts[r]);
+    }
+
+    @Override
+    int andCount(final LongBuffer src, final int offset) {
+      int res = 0;
+      for (int r = 0; r < firsts.length; r++)
+        for (int w = firsts[r] >>> 6; w <= lasts[r] >>> 6 && offset + w < src.limit(); w++)
+          res += Long.bitCount(src.get(offset + w) & rangeMask(w, firsts[r], lasts[r]));
+      return res;
+    }
+
+    /** Cardinality of the intersection of two lists of runs */
+    int andCount(final RunContainer other) {
+      int res = 0;
+      for (int i = 0, j = 0; i < firsts.length && j < other.firsts.length;) {
+        final int first = Math.max(firsts[i], other.firsts[j]);
+        final int last = Math.min(lasts[i], other.lasts[j]);
+        if (first <= last)
+          res += last - first + 1;
+        if (lasts[i] < other.lasts[j])
+          i++;
+        else
+          j++;
+      }
+      return res;
+    }
+  }
+}
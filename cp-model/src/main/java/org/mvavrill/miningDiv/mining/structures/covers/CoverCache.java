@@ -0,0 +1,152 @@
+package org.mvavrill.miningDiv.mining.structures.covers;
+
+import org.mvavrill.miningDiv.mining.structures.ItemSet;
+import org.mvavrill.miningDiv.mining.structures.TransactionSet;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded memoization of the covers of itemsets.
+ * The entries are kept in the order of their last use, and the least recently used ones are evicted when the memory of the entries goes above a budget.
+ * The memory of an entry is estimated from the number of words of its itemset and of its cover.
+ * The keys are copies of the itemsets given to `put`, so that the propagators can keep modifying their BitSets.
+ * The cache can be used by several threads: the itemsets are split by their hash into stripes, each with its own lock and an equal part of the budget, so that the order of use is only kept per stripe.
+ * @author Mathieu Vavrille
+ */
+public class CoverCache {
+  /** The default budget, in bytes */
+  public static final long DEFAULT_BUDGET = 256L << 20;
+  /** The default number of stripes */
+  public static final int DEFAULT_NB_STRIPES = 16;
+  private static final long ENTRY_OVERHEAD = 160; // Bytes of the map entry, of the ItemSet, BitSet and TransactionSet objects and of the headers of their arrays
+
+  private final Stripe[] stripes;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /** The entries of the itemsets of a stripe, in the order of their last use */
+  private final class Stripe {
+    final long budget;
+    final LinkedHashMap<ItemSet, TransactionSet> covers = new LinkedHashMap<ItemSet, TransactionSet>(16, 0.75f, true);
+    long usedBytes = 0;
+
+    Stripe(final long budget) {
+      this.budget = budget;
+    }
+
+    synchronized TransactionSet get(final ItemSet itemSet) {
+      return covers.get(itemSet);
+    }
+
+    synchronized void put(final ItemSet key, final TransactionSet cover, final long size) {
+      final TransactionSet previous = covers.put(key, cover);
+      if (previous != null)
+        usedBytes -= sizeOf(key, previous);
+      usedBytes += size;
+      final Iterator<Map.Entry<ItemSet, TransactionSet>> eldest = covers.entrySet().iterator();
+      while (usedBytes > budget) {
+        final Map.Entry<ItemSet, TransactionSet> entry = eldest.next();
+        usedBytes -= sizeOf(entry.getKey(), entry.getValue());
+        eldest.remove();
+        evictions.increment();
+      }
+    }
+
+    synchronized void clear() {
+      covers.clear();
+      usedBytes = 0;
+    }
+  }
+
+  /** @param budget the maximum memory (in bytes) of the entries */
+  public CoverCache(final long budget) {
+    this(budget, DEFAULT_NB_STRIPES);
+  }
+
+  /**
+   * @param budget the maximum memory (in bytes) of the entries
+   * @param nbStripes the number of independent parts of the cache. With a single stripe, the least recently used entry of the whole cache is evicted first
+   */
+  public CoverCache(final long budget, final int nbStripes) {
+    stripes = new Stripe[nbStripes];
+    for (int i = 0; i < nbStripes; i++)
+      stripes[i] = new Stripe(budget / nbStripes);
+  }
+
+  private Stripe stripeOf(final ItemSet itemSet) {
+    final int h = itemSet.hashCode();
+    return stripes[((h ^ (h >>> 16)) & 0x7fffffff) % stripes.length];
+  }
+
+  /** The cover of the itemset if it is in the cache (it then becomes the most recently used), null otherwise */
+  public TransactionSet get(final ItemSet itemSet) {
+    final TransactionSet cover = stripeOf(itemSet).get(itemSet);
+    if (cover == null)
+      misses.increment();
+    else
+      hits.increment();
+    return cover;
+  }
+
+  /** Adds the cover of the itemset, and evicts the least recently used entries of its stripe if the budget is exceeded */
+  public void put(final ItemSet itemSet, final TransactionSet cover) {
+    final Stripe stripe = stripeOf(itemSet);
+    final long size = sizeOf(itemSet, cover);
+    if (size > stripe.budget)
+      return;
+    stripe.put(new ItemSet((BitSet) itemSet.getBitSet().clone()), cover, size);
+  }
+
+  /** Removes all the entries. The counters are kept */
+  public void clear() {
+    for (Stripe stripe : stripes)
+      stripe.clear();
+  }
+
+  private static long sizeOf(final ItemSet itemSet, final TransactionSet cover) {
+    return ENTRY_OVERHEAD + 8L * (((itemSet.getBitSet().length() + 63) >>> 6) + cover.getNbWords());
+  }
+
+  public int size() {
+    int res = 0;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        res += stripe.covers.size();
+      }
+    }
+    return res;
+  }
+
+  /** The estimated memory (in bytes) of the entries */
+  public long getUsedBytes() {
+    long res = 0;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        res += stripe.usedBytes;
+      }
+    }
+    return res;
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  @Override
+  public String toString() {
+    return getHits() + " hits, " + getMisses() + " misses, " + getEvictions() + " evictions, " + size() + " covers (" + (getUsedBytes() >>> 10) + "kB)";
+  }
+}
@@ -2,6 +2,7 @@ package org.mvavrill.miningDiv.mining.structures.covers;
 
 import org.mvavrill.miningDiv.mining.structures.ItemSet;
 import org.mvavrill.miningDiv.mining.structures.TransactionSet;
+import org.mvavrill.miningDiv.mining.util.ItemsCovers;
 
 import java.util.BitSet;
 
@@ -11,7 +12,7 @@ import java.util.BitSet;
  */
 public class CoversBase extends CoversComputation {
 
-  public CoversBase(final BitSet[] itemsCovers, final TransactionSet allTransactions) {
+  public CoversBase(final ItemsCovers itemsCovers, final TransactionSet allTransactions) {
     super(itemsCovers, allTransactions);
   }
   
@@ -21,9 +22,9 @@ public class CoversBase extends CoversComputation {
       return allTransactions;
     BitSet itemSetB = itemSet.getBitSet();
     int item0 = itemSetB.nextSetBit(0);
-    TransactionSet res = new TransactionSet(itemsCovers[item0]);
-    for (int item=itemSetB.nextSetBit(item0); item!=-1; item=itemSetB.nextSetBit(item+1)) {
-      res = res.getIntersection(itemsCovers[item]);
+    TransactionSet res = allTransactions.getIntersection(itemsCovers, item0);
+    for (int item=itemSetB.nextSetBit(item0+1); item!=-1; item=itemSetB.nextSetBit(item+1)) {
+      res = res.getIntersection(itemsCovers, item);
     }
     return res;
   }
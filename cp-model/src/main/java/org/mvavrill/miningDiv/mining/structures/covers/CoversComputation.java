@@ -2,15 +2,19 @@ package org.mvavrill.miningDiv.mining.structures.covers;
 
 import org.mvavrill.miningDiv.mining.structures.ItemSet;
 import org.mvavrill.miningDiv.mining.structures.TransactionSet;
+import org.mvavrill.miningDiv.mining.util.ItemsCovers;
 
-import java.util.BitSet;
-
+/**
+ * The computation of the covers of the itemsets.
+ * A single instance can be used by several threads, i.e. by several models on the same DataSet: the covers of the items are never modified (except when a sliding window moves, see DataSet.slide),
+ * and the memoization structures are either kept per thread or synchronized.
+ */
 public abstract class CoversComputation {
   
-  protected final BitSet[] itemsCovers;
+  protected final ItemsCovers itemsCovers; // The covers of the items
   protected final TransactionSet allTransactions;
 
-  public CoversComputation(final BitSet[] itemsCovers, final TransactionSet allTransactions) {
+  public CoversComputation(final ItemsCovers itemsCovers, final TransactionSet allTransactions) {
     this.itemsCovers = itemsCovers;
     this.allTransactions = allTransactions;
   }
@@ -25,6 +29,11 @@ public abstract class CoversComputation {
    * Re-initialize the cover (to be used as if it was created from scratch)
    */
   public void init() {}
+
+  /** The statistics of the memoization of the covers (hits, misses, evictions). null if the covers are not memoized in a bounded structure */
+  public String getStatistics() {
+    return null;
+  }
   
   /** 
    * Return the cover associated to the itemSet.
@@ -34,7 +43,7 @@ public abstract class CoversComputation {
 
   /** Checks if the cover is included in the cover of `item` */
   public boolean isIncludedIn(final TransactionSet cover, final int item) {
-    return cover.isIncludedIn(itemsCovers[item]);
+    return cover.isIncludedIn(itemsCovers, item);
   }
     
   /**
@@ -42,8 +51,8 @@ public abstract class CoversComputation {
    * @param item an item
    * @return intersection of cover and the cover of `item` 
    */
-  public synchronized TransactionSet intersectCover(final TransactionSet cover, final Integer item) {
-    return cover.getIntersection(itemsCovers[item]);
+  public TransactionSet intersectCover(final TransactionSet cover, final Integer item) {
+    return cover.getIntersection(itemsCovers, item);
   }
   
 }
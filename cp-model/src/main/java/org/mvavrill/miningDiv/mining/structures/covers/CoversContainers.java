@@ -0,0 +1,59 @@
+package org.mvavrill.miningDiv.mining.structures.covers;
+
+import org.mvavrill.miningDiv.mining.structures.ItemSet;
+import org.mvavrill.miningDiv.mining.structures.TransactionSet;
+import org.mvavrill.miningDiv.mining.util.ItemsCovers;
+
+import java.util.BitSet;
+
+/**
+ * This class computes the covers without memoization, like CoversBase, but by intersecting the covers of the items stored in containers (see CompressedCover).
+ * It is an option for the speed of the intersections only: the intersections start from the item with the smallest support, and sparse items are intersected as sorted arrays or runs, without going through all the words of a bitset.
+ * The cover is only converted to a TransactionSet once it is computed, and the covers of the itemsets are read through their views, without copies.
+ * The containers are built in addition to the covers of the items, which the propagators and the history keep using: this mode uses more memory than the others.
+ * @author Mathieu Vavrille
+ */
+public class CoversContainers extends CoversComputation {
+  private final CompressedCover[] compressedCovers;
+
+  public CoversContainers(final ItemsCovers itemsCovers, final TransactionSet allTransactions) {
+    super(itemsCovers, allTransactions);
+    compressedCovers = new CompressedCover[itemsCovers.getNbItems()];
+    for (int item = 0; item < itemsCovers.getNbItems(); item++)
+      compressedCovers[item] = CompressedCover.fromWords(itemsCovers.toLongArray(item));
+  }
+
+  public CompressedCover getCompressedCover(final int item) {
+    return compressedCovers[item];
+  }
+
+  @Override
+  public TransactionSet getCoverOf(final ItemSet itemSet) {
+    if (itemSet.getBitSet().isEmpty())
+      return allTransactions;
+    BitSet itemSetB = itemSet.getBitSet();
+    int smallest = itemSetB.nextSetBit(0);
+    for (int item = itemSetB.nextSetBit(smallest + 1); item != -1; item = itemSetB.nextSetBit(item + 1)) {
+      if (compressedCovers[item].cardinality() < compressedCovers[smallest].cardinality())
+        smallest = item;
+    }
+    CompressedCover res = compressedCovers[smallest];
+    for (int item = itemSetB.nextSetBit(0); item != -1 && !res.isEmpty(); item = itemSetB.nextSetBit(item + 1)) {
+      if (item != smallest)
+        res = res.and(compressedCovers[item]);
+    }
+    return TransactionSet.wrap(res.toWords());
+  }
+
+  @Override
+  public boolean isIncludedIn(final TransactionSet cover, final int item) {
+    if (cover.cardinality() > compressedCovers[item].cardinality())
+      return false;
+    return compressedCovers[item].isSupersetOf(cover);
+  }
+
+  @Override
+  public TransactionSet intersectCover(final TransactionSet cover, final Integer item) {
+    return TransactionSet.wrap(compressedCovers[item].and(cover));
+  }
+}
@@ -2,23 +2,26 @@ package org.mvavrill.miningDiv.mining.structures.covers;
 
 import org.mvavrill.miningDiv.mining.structures.ItemSet;
 import org.mvavrill.miningDiv.mining.structures.TransactionSet;
-import org.mvavrill.miningDiv.mining.structures.ItemsetCover;
+import org.mvavrill.miningDiv.mining.util.ItemsCovers;
 
-import java.util.Map;
-import java.util.HashMap;
 import java.util.BitSet;
 
 /**
- * This class implements the computation of covers using a queue to memoïze the previously found ItemsetCovers.
- * `pushCover` will add the ItemsetCover to a queue.
- * `getCover` will pop the elements of the queue until either the itemset is found, or a superset of the itemset is found.
- * In this case it will compute the cover by starting from the cover of the superset.
+ * This class implements the computation of covers memoizing the covers of the itemsets in a bounded cache (see CoverCache).
+ * `pushCover` will add the cover of the itemset to the cache.
+ * `getCover` will return the cover from the cache if it is there, otherwise it will compute it by intersecting the covers of the items, and add it to the cache.
  */
 public class CoversFull extends CoversComputation{
-  private final Map<ItemSet, TransactionSet> covers = new HashMap<ItemSet, TransactionSet>();
+  private final CoverCache covers;
 
-  public CoversFull(final BitSet[] itemsCovers, final TransactionSet allTransactions) {
+  public CoversFull(final ItemsCovers itemsCovers, final TransactionSet allTransactions) {
+    this(itemsCovers, allTransactions, CoverCache.DEFAULT_BUDGET);
+  }
+
+  /** @param cacheBudget the maximum memory (in bytes) of the memoized covers */
+  public CoversFull(final ItemsCovers itemsCovers, final TransactionSet allTransactions, final long cacheBudget) {
     super(itemsCovers, allTransactions);
+    this.covers = new CoverCache(cacheBudget);
   }
 
   @Override
@@ -31,17 +34,23 @@ public class CoversFull extends CoversComputation{
     covers.clear();
   }
 
+  @Override
+  public String getStatistics() {
+    return covers.toString();
+  }
+
   @Override
   public TransactionSet getCoverOf(final ItemSet itemSet) {
     if (itemSet.getBitSet().isEmpty())
       return allTransactions;
-    if (covers.containsKey(itemSet))
-      return covers.get(itemSet);
+    TransactionSet cached = covers.get(itemSet);
+    if (cached != null)
+      return cached;
     BitSet itemSetB = itemSet.getBitSet();
     int item0 = itemSetB.nextSetBit(0);
-    TransactionSet res = new TransactionSet(itemsCovers[item0]);
-    for (int item=itemSetB.nextSetBit(item0); item!=-1; item=itemSetB.nextSetBit(item+1)) {
-      res = res.getIntersection(itemsCovers[item]);
+    TransactionSet res = allTransactions.getIntersection(itemsCovers, item0);
+    for (int item=itemSetB.nextSetBit(item0+1); item!=-1; item=itemSetB.nextSetBit(item+1)) {
+      res = res.getIntersection(itemsCovers, item);
     }
     pushCover(itemSet, res);
     return res;
@@ -2,6 +2,7 @@ package org.mvavrill.miningDiv.mining.structures.covers;
 
 import org.mvavrill.miningDiv.mining.structures.ItemSet;
 import org.mvavrill.miningDiv.mining.structures.TransactionSet;
+import org.mvavrill.miningDiv.mining.util.ItemsCovers;
 import org.mvavrill.miningDiv.mining.structures.ItemsetCover;
 
 import java.util.ArrayDeque;
@@ -13,28 +14,30 @@ import java.util.Deque;
  * `pushCover` will add the ItemsetCover to a queue.
  * `getCover` will pop the elements of the queue until either the itemset is found, or a superset of the itemset is found.
  * In this case it will compute the cover by starting from the cover of the superset.
+ * The queue follows the branch of the search, so every thread has its own queue.
  */
 public class CoversQueued extends CoversComputation{
-  private final Deque<ItemsetCover> currentCovers = new ArrayDeque<ItemsetCover>();
+  private volatile ThreadLocal<Deque<ItemsetCover>> threadCovers = ThreadLocal.withInitial(ArrayDeque::new);
 
-  public CoversQueued(final BitSet[] itemsCovers, final TransactionSet allTransactions) {
+  public CoversQueued(final ItemsCovers itemsCovers, final TransactionSet allTransactions) {
     super(itemsCovers, allTransactions);
   }
 
   @Override
   public void pushCover(final ItemSet itemSet, final TransactionSet transactionSet) {
-    currentCovers.push(new ItemsetCover(itemSet, transactionSet));
+    threadCovers.get().push(new ItemsetCover(itemSet, transactionSet));
   }
 
   @Override
-  public void init() {
-    currentCovers.clear();
+  public void init() { // The queues of all the threads are replaced
+    threadCovers = ThreadLocal.withInitial(ArrayDeque::new);
   }
 
   @Override
   public TransactionSet getCoverOf(final ItemSet itemSet) {
     if (itemSet.getBitSet().isEmpty())
       return allTransactions;
+    final Deque<ItemsetCover> currentCovers = threadCovers.get();
     while (!currentCovers.isEmpty()) {
       ItemsetCover topObject = currentCovers.peek();
       if (topObject.getItemSet().isEqualItemSet(itemSet)) { // If the cover of the itemset is at the top of the queue
@@ -45,7 +48,7 @@ public class CoversQueued extends CoversComputation{
         diffItemSet.andNot(topObject.getItemSet().getBitSet());
         TransactionSet res = topObject.getCover();
         for (int item = diffItemSet.nextSetBit(0); item != -1; item = diffItemSet.nextSetBit(item + 1)) {
-          res = res.getIntersection(new TransactionSet(itemsCovers[item]));
+          res = res.getIntersection(itemsCovers, item);
         }			
         pushCover(itemSet, res);
         return res;
@@ -55,9 +58,9 @@ public class CoversQueued extends CoversComputation{
     // if the itemset's cover is not found (have not been stored), we compute it 
     BitSet itemSetB = itemSet.getBitSet();
     int item0 = itemSetB.nextSetBit(0);
-    TransactionSet res = new TransactionSet(itemsCovers[item0]);
-    for (int item=itemSetB.nextSetBit(item0); item!=-1; item=itemSetB.nextSetBit(item+1)) {
-      res = res.getIntersection(itemsCovers[item]);
+    TransactionSet res = allTransactions.getIntersection(itemsCovers, item0);
+    for (int item=itemSetB.nextSetBit(item0+1); item!=-1; item=itemSetB.nextSetBit(item+1)) {
+      res = res.getIntersection(itemsCovers, item);
     }
     pushCover(itemSet, res);
     return res;
@@ -0,0 +1,267 @@
+package org.mvavrill.miningDiv.mining.structures.covers;
+
+import org.mvavrill.miningDiv.mining.structures.ItemSet;
+import org.mvavrill.miningDiv.mining.structures.TransactionSet;
+import org.mvavrill.miningDiv.mining.util.ItemsCovers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class generalizes CoversQueued: the covers are memoized in a trie over the itemsets, seen as increasing sequences of items.
+ * `getCoverOf` looks for the largest itemset of the trie whose cover is stored and that is a subset of the itemset (not only a prefix), and intersects its cover with the covers of the missing items only.
+ * Unlike the queue, nothing is lost when the search jumps to another branch or restarts.
+ * When the memory of the trie is above its budget, the covers are evicted by batches: the least recently used first and, among the covers used at about the same time, the deepest first, since they are the most specific.
+ * The lookups of several threads run concurrently under a read lock, each with its own scratch, while the insertions and evictions take the write lock. The intersections are done outside of the lock.
+ * @author Mathieu Vavrille
+ */
+public class CoversTrie extends CoversComputation {
+  private static final long NODE_OVERHEAD = 96; // Bytes of a node, of its TransactionSet and of the headers of their arrays
+  private static final int RECENCY_SHIFT = 10; // The covers used within the same 2^RECENCY_SHIFT lookups are considered equally recent
+
+  private final long budget;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private Node root = new Node(-1, 0); // The fields below are modified under the write lock
+  private long usedBytes = NODE_OVERHEAD;
+  private int nbCovers = 0;
+  private final AtomicLong clock = new AtomicLong();
+
+  private final LongAdder exactHits = new LongAdder();
+  private final LongAdder partialHits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  private final ThreadLocal<Lookup> threadLookup = ThreadLocal.withInitial(Lookup::new);
+
+  /** The scratch of a lookup, one per thread */
+  private static final class Lookup {
+    int[] path = new int[16];
+    int[] bestPath = new int[16];
+    int bestDepth;
+    TransactionSet bestCover;
+
+    void reset(final int nbItems) {
+      if (path.length < nbItems) {
+        path = new int[nbItems];
+        bestPath = new int[nbItems];
+      }
+      bestDepth = 0;
+      bestCover = null;
+    }
+  }
+
+  private static final class Node {
+    final int item;
+    final int depth;
+    int[] childrenItems = new int[0]; // Sorted
+    Node[] children = new Node[0];
+    TransactionSet cover = null;
+    volatile long lastUse = 0; // Updated by the lookups under the read lock, the races only change the order of the evictions
+
+    Node(final int item, final int depth) {
+      this.item = item;
+      this.depth = depth;
+    }
+
+    Node getChild(final int childItem) {
+      final int index = Arrays.binarySearch(childrenItems, childItem);
+      return index >= 0 ? children[index] : null;
+    }
+
+    Node addChild(final int childItem) {
+      final int index = -Arrays.binarySearch(childrenItems, childItem) - 1;
+      final Node child = new Node(childItem, depth + 1);
+      int[] newItems = new int[childrenItems.length + 1];
+      Node[] newChildren = new Node[children.length + 1];
+      System.arraycopy(childrenItems, 0, newItems, 0, index);
+      System.arraycopy(children, 0, newChildren, 0, index);
+      newItems[index] = childItem;
+      newChildren[index] = child;
+      System.arraycopy(childrenItems, index, newItems, index + 1, childrenItems.length - index);
+      System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+      childrenItems = newItems;
+      children = newChildren;
+      return child;
+    }
+  }
+
+  public CoversTrie(final ItemsCovers itemsCovers, final TransactionSet allTransactions) {
+    this(itemsCovers, allTransactions, CoverCache.DEFAULT_BUDGET);
+  }
+
+  /** @param budget the maximum memory (in bytes) of the trie */
+  public CoversTrie(final ItemsCovers itemsCovers, final TransactionSet allTransactions, final long budget) {
+    super(itemsCovers, allTransactions);
+    this.budget = budget;
+  }
+
+  @Override
+  public void pushCover(final ItemSet itemSet, final TransactionSet transactionSet) {
+    if (itemSet.getBitSet().isEmpty())
+      return;
+    store(itemSet.getBitSet().stream().toArray(), transactionSet, clock.get());
+  }
+
+  @Override
+  public void init() {
+    lock.writeLock().lock();
+    try {
+      root = new Node(-1, 0);
+      usedBytes = NODE_OVERHEAD;
+      nbCovers = 0;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public TransactionSet getCoverOf(final ItemSet itemSet) {
+    if (itemSet.getBitSet().isEmpty())
+      return allTransactions;
+    final long time = clock.incrementAndGet();
+    final int[] items = itemSet.getBitSet().stream().toArray();
+    final Lookup lookup = threadLookup.get();
+    lookup.reset(items.length);
+    lock.readLock().lock();
+    try {
+      final Node bestNode = searchSubset(lookup, root, null, items, 0);
+      if (bestNode != null) {
+        bestNode.lastUse = time;
+        lookup.bestCover = bestNode.cover;
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    TransactionSet res;
+    if (lookup.bestCover == null) {
+      misses.increment();
+      res = allTransactions;
+    }
+    else {
+      if (lookup.bestDepth == items.length) {
+        exactHits.increment();
+        return lookup.bestCover;
+      }
+      partialHits.increment();
+      res = lookup.bestCover;
+    }
+    for (int i = 0, j = 0; i < items.length; i++) { // Intersects the items that are not in bestPath
+      if (j < lookup.bestDepth && lookup.bestPath[j] == items[i])
+        j++;
+      else
+        res = res.getIntersection(itemsCovers, items[i]);
+    }
+    store(items, res, time);
+    return res;
+  }
+
+  /**
+   * Finds the deepest node with a cover whose itemset is included in items[..], starting from node, whose path is path[0..node.depth).
+   * Returns the best node found so far (best being the best node found before the call), its path being in bestPath.
+   */
+  private static Node searchSubset(final Lookup lookup, final Node node, Node best, final int[] items, final int from) {
+    if (node.cover != null && node.depth > lookup.bestDepth) {
+      lookup.bestDepth = node.depth;
+      best = node;
+      System.arraycopy(lookup.path, 0, lookup.bestPath, 0, node.depth);
+    }
+    for (int i = from; i < items.length && lookup.bestDepth < items.length; i++) {
+      if (node.depth + items.length - i <= lookup.bestDepth) // Cannot find a deeper node
+        break;
+      final Node child = node.getChild(items[i]);
+      if (child != null) {
+        lookup.path[node.depth] = items[i];
+        best = searchSubset(lookup, child, best, items, i + 1);
+      }
+    }
+    return best;
+  }
+
+  /** Stores the cover at the node of the (increasing) items, creating the missing nodes */
+  private void store(final int[] items, final TransactionSet cover, final long time) {
+    lock.writeLock().lock();
+    try {
+      storeLocked(items, cover, time);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void storeLocked(final int[] items, final TransactionSet cover, final long time) {
+    Node node = root;
+    for (int item : items) {
+      Node child = node.getChild(item);
+      if (child == null) {
+        child = node.addChild(item);
+        usedBytes += NODE_OVERHEAD + 12; // The node and its place in the arrays of its parent
+      }
+      node = child;
+    }
+    if (node.cover == null)
+      nbCovers++;
+    else
+      usedBytes -= 8L * node.cover.getNbWords();
+    node.cover = cover;
+    node.lastUse = time;
+    usedBytes += 8L * cover.getNbWords();
+    if (usedBytes > budget)
+      evict();
+  }
+
+  /** Evicts covers until the trie uses at most 3/4 of its budget, and removes the nodes that lead to no cover */
+  private void evict() {
+    List<Node> withCover = new ArrayList<Node>(nbCovers);
+    collectCovers(root, withCover);
+    withCover.sort(Comparator.<Node>comparingLong(node -> node.lastUse >>> RECENCY_SHIFT).thenComparing(Comparator.<Node>comparingInt(node -> node.depth).reversed()));
+    final long target = budget - budget / 4;
+    for (int i = 0; i < withCover.size() && usedBytes > target; i++) {
+      Node node = withCover.get(i);
+      usedBytes -= 8L * node.cover.getNbWords();
+      node.cover = null;
+      nbCovers--;
+      evictions.increment();
+    }
+    prune(root);
+  }
+
+  private static void collectCovers(final Node node, final List<Node> res) {
+    if (node.cover != null)
+      res.add(node);
+    for (Node child : node.children)
+      collectCovers(child, res);
+  }
+
+  /** Removes the subtrees without covers. Returns true if the node has no cover in its subtree */
+  private boolean prune(final Node node) {
+    int nbKept = 0;
+    for (int i = 0; i < node.children.length; i++) {
+      if (prune(node.children[i]))
+        usedBytes -= NODE_OVERHEAD + 12;
+      else {
+        node.childrenItems[nbKept] = node.childrenItems[i];
+        node.children[nbKept++] = node.children[i];
+      }
+    }
+    if (nbKept != node.children.length) {
+      node.childrenItems = Arrays.copyOf(node.childrenItems, nbKept);
+      node.children = Arrays.copyOf(node.children, nbKept);
+    }
+    return nbKept == 0 && node.cover == null;
+  }
+
+  @Override
+  public String getStatistics() {
+    lock.readLock().lock();
+    try {
+      return exactHits.sum() + " exact hits, " + partialHits.sum() + " partial hits, " + misses.sum() + " misses, " + evictions.sum() + " evictions, " + nbCovers + " covers (" + (usedBytes >>> 10) + "kB)";
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+}
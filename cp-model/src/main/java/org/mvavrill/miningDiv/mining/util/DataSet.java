@@ -1,122 +1,458 @@
 package org.mvavrill.miningDiv.mining.util;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.NoSuchElementException;
-import java.util.Set;
-import java.util.StringTokenizer;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.stream.IntStream;
 
 import org.mvavrill.miningDiv.mining.structures.covers.*;
 import org.mvavrill.miningDiv.mining.structures.ItemSet;
 import org.mvavrill.miningDiv.mining.structures.TransactionSet;
 
 public class DataSet {
-  private final BitSet[] verticalDataBase;
-  private final long[][] verticalLongDataBase;
-  private final List<ItemSet> horizontalBase;
+  // The covers, supports and numbers of transactions are updated in place when the dataset is a sliding window (see slide)
+  private ItemsCovers itemsCovers; // The vertical database
+  private int[] itemsSupports;
+  private final int[] originalItems; // originalItems[i] is the item in the file of the item i. null if the items were not renumbered
+  private List<ItemSet> horizontalBase = null; // Built on demand, see getHorizontalBase()
+  private int[][] transactionsItems = null; // Built on demand, see getTransactionsItems()
 
-  private int maxItem = 0;
-  private final TransactionSet allTransactions;
-  private final CoversComputation covers;
+  private int maxItem;
+  private int nbTransactions; // Number of transactions in the file (in the window for a sliding window)
+  private int transactionsSize; // Number of transactions in the covers (distinct transactions if they are merged)
+  private final TransactionWeights weights;
+  private TransactionSet allTransactions;
+  private CoversComputation covers;
+  private final int coversMode;
+  private final long coversCacheBudget; // Used only if the covers are memoized in a bounded structure (CoversFull or CoversTrie)
 
+  // Sliding window
+  private final int windowSize; // Maximum number of transactions in the window, -1 if the dataset is not a sliding window
+  private int oldestSlot = 0; // The transaction of the window that expires first, once the window is full
+
+  /**
+   * Loads the dataset with the default options (see DataSetOptions).
+   * @param dataSetPath the path of the dataset, in the FIMI format
+   */
   public DataSet(final String dataSetPath) throws IOException {
-    this(dataSetPath, 0);
-  }
-	
-  public DataSet(final String dataSetPath, final int coversMode) throws IOException {
-    horizontalBase = new ArrayList<ItemSet>();
-    BufferedReader br = new BufferedReader(new FileReader(dataSetPath));
-    String items;
-    while ((items = br.readLine()) != null) { // iterate over the lines to build the transaction
-      if (items.equals("[EOF]"))
-        break;
-      // if the line is a comment, is empty or is metadata
-      if (items.isEmpty() == true || items.charAt(0) == '#' || items.charAt(0) == '%' || items.charAt(0) == '@') {
-        continue;
+    this(dataSetPath, new DataSetOptions());
+  }
+
+  /**
+   * Loads the dataset, and prepares its covers, as given by the options.
+   * With a window size (see DataSetOptions.setWindowSize), the dataset is a sliding window over the last transactions of the file, that moves with `slide`.
+   * The transactions of the window are numbered by slots: the new transactions take the slots of the expired ones, so that the covers are updated in place.
+   * @param dataSetPath the path of the dataset, in the FIMI format
+   * @param options the options of the loading, read once here
+   */
+  public DataSet(final String dataSetPath, final DataSetOptions options) throws IOException {
+    options.check();
+    this.coversMode = options.getCoversMode();
+    this.coversCacheBudget = options.getCoversCacheBudget();
+    this.windowSize = options.getWindowSize();
+    final boolean useCache = options.getUseCache();
+    final double threshold = options.getThreshold();
+    final boolean collapseDuplicates = options.getCollapseDuplicates();
+    final boolean reorderTransactions = options.getReorderTransactions();
+    long[][] loadedCovers = null;
+    ItemsCovers cachedCovers = null; // The covers mapped from the cache, used without copies if the transactions are not changed below
+    int[] loadedSupports;
+    long[][] covers; // The covers of the items, copied into itemsCovers once they are final. null if the cached covers are used
+    if (useCache) {
+      DataSetCache cache = new DataSetCache(dataSetPath);
+      maxItem = cache.getMaxItem();
+      nbTransactions = cache.getNbTransactions();
+      cachedCovers = cache.getItemsCovers();
+      loadedSupports = cache.getItemsSupports();
+      if (windowSize > 0 || collapseDuplicates || reorderTransactions) { // The covers are rebuilt on the heap
+        loadedCovers = new long[cachedCovers.getNbItems()][];
+        for (int item = 0; item < loadedCovers.length; item++)
+          loadedCovers[item] = cachedCovers.toLongArray(item);
+        cachedCovers = null;
       }
-      horizontalBase.add(createTransaction(items));
     }
-    br.close();
-
-    // Vertical Representation
-    verticalDataBase = new BitSet[getNbrVar()];
-    for (int item = 0; item < getNbrVar(); item++) {
-      verticalDataBase[item] = new BitSet();
+    else {
+      FimiParser parser = new FimiParser(dataSetPath);
+      maxItem = parser.getMaxItem();
+      nbTransactions = parser.getNbTransactions();
+      loadedCovers = parser.getItemsCovers();
+      loadedSupports = parser.getItemsSupports();
+    }
+    if (windowSize > 0) { // Keep the last transactions, in slots 0 to windowSize-1
+      final int start = Math.max(0, nbTransactions - windowSize);
+      loadedCovers = Arrays.stream(loadedCovers).map(cover -> windowCover(cover, start, windowSize)).toArray(long[][]::new);
+      loadedSupports = Arrays.stream(loadedCovers).mapToInt(cover -> Arrays.stream(cover).mapToInt(Long::bitCount).sum()).toArray();
+      nbTransactions -= start;
+    }
+    if (threshold >= 0) {
+      originalItems = frequentItems(loadedSupports, Math.max(1, minFreqOf(threshold)), options.getSortBySupport());
+      covers = loadedCovers == null ? null : new long[originalItems.length][];
+      itemsSupports = new int[originalItems.length];
+      for (int item = 0; item < originalItems.length; item++) {
+        if (covers != null)
+          covers[item] = loadedCovers[originalItems[item]];
+        itemsSupports[item] = loadedSupports[originalItems[item]];
+      }
+      if (cachedCovers != null)
+        cachedCovers = cachedCovers.select(originalItems);
+    }
+    else {
+      originalItems = null;
+      covers = loadedCovers;
+      itemsSupports = loadedSupports;
+    }
+    int[] rowsWeights = null;
+    if (collapseDuplicates) {
+      int[] rowOf = distinctTransactions(covers, nbTransactions);
+      rowsWeights = new int[Arrays.stream(rowOf).max().orElse(-1) + 1];
+      for (int row : rowOf)
+        rowsWeights[row]++;
+      for (int item = 0; item < covers.length; item++)
+        covers[item] = mapTransactions(covers[item], rowOf, rowsWeights.length);
+      transactionsSize = rowsWeights.length;
     }
-    // Fill the vertical representation
-    for (int i = 0; i < horizontalBase.size(); i++) {
-      ItemSet itemSet = horizontalBase.get(i);
-      BitSet transaction = itemSet.getBitSet();
-      for (int item = transaction.nextSetBit(0); item != -1; item = transaction.nextSetBit(item + 1)) {
-        verticalDataBase[item].set(i);
+    else {
+      transactionsSize = nbTransactions;
+    }
+    if (reorderTransactions) {
+      final int[] originalTransactions = grayCodeOrder(covers, itemsSupports, transactionsSize);
+      int[] positionOf = new int[transactionsSize];
+      for (int t = 0; t < transactionsSize; t++)
+        positionOf[originalTransactions[t]] = t;
+      for (int item = 0; item < covers.length; item++)
+        covers[item] = mapTransactions(covers[item], positionOf, transactionsSize);
+      if (rowsWeights != null) {
+        int[] reorderedWeights = new int[transactionsSize];
+        for (int t = 0; t < transactionsSize; t++)
+          reorderedWeights[t] = rowsWeights[originalTransactions[t]];
+        rowsWeights = reorderedWeights;
       }
     }
-    verticalLongDataBase = new long[getNbrVar()][];
-    for (int i = 0; i < verticalDataBase.length; i++)
-      verticalLongDataBase[i] = verticalDataBase[i].toLongArray();
-    
+    weights = rowsWeights == null ? TransactionWeights.UNIT : new TransactionWeights(rowsWeights);
+
+    itemsCovers = cachedCovers != null ? cachedCovers : ItemsCovers.of(covers, options.getOffHeap()); // The mapped covers are already off the heap
+    makeCovers();
+  }
+
+  /** Creates allTransactions and the covers computation from the vertical database */
+  private void makeCovers() {
     // Full BitSet for allTransactions
     BitSet tempAllTransactions = new BitSet();
-    tempAllTransactions.set(0,horizontalBase.size());
+    tempAllTransactions.set(0,transactionsSize);
     allTransactions = new TransactionSet(tempAllTransactions);
 
     if (coversMode == 0)
-      covers = new CoversBase(verticalDataBase, allTransactions);
+      covers = new CoversBase(itemsCovers, allTransactions);
     else if (coversMode == 1)
-      covers = new CoversQueued(verticalDataBase, allTransactions);
+      covers = new CoversQueued(itemsCovers, allTransactions);
+    else if (coversMode == 3)
+      covers = new CoversContainers(itemsCovers, allTransactions);
+    else if (coversMode == 4)
+      covers = new CoversTrie(itemsCovers, allTransactions, coversCacheBudget);
     else
-      covers = new CoversFull(verticalDataBase, allTransactions);
+      covers = new CoversFull(itemsCovers, allTransactions, coversCacheBudget);
+  }
+
+  /** The bits [start, start+windowSize) of the cover, moved to [0, windowSize). The result has all the words of the window, so that it can be updated in place */
+  private static long[] windowCover(final long[] cover, final int start, final int windowSize) {
+    final long[] res = new long[(windowSize + 63) >>> 6];
+    final int shift = start & 63;
+    for (int w = 0; w < res.length; w++) {
+      final int from = w + (start >>> 6);
+      long word = from < cover.length ? cover[from] >>> shift : 0L;
+      if (shift != 0 && from + 1 < cover.length)
+        word |= cover[from + 1] << (64 - shift);
+      res[w] = word;
+    }
+    if ((windowSize & 63) != 0)
+      res[res.length - 1] &= -1L >>> (64 - (windowSize & 63));
+    return res;
   }
 
-  public List<String> getTokensWithCollection(String str) {
-    return Collections.list(new StringTokenizer(str, " ")).stream().map(token -> (String) token)
-      .collect(Collectors.toList());
+  /**
+   * Moves the sliding window: the new transactions are appended, and the oldest transactions expire when the window is full.
+   * The covers and supports are updated in place, and the covers computation is recreated (its memoized covers are no longer valid).
+   * @param newTransactions the transactions to append, with the items of the dataset
+   * @return the slots that changed, to update the covers computed before the slide (see History.refreshCovers)
+   */
+  public WindowUpdate slide(final List<ItemSet> newTransactions) {
+    if (windowSize < 0)
+      throw new IllegalStateException("The dataset is not a sliding window");
+    final long startTime = System.nanoTime();
+    BitSet changedSlots = new BitSet();
+    int nbExpired = 0;
+    for (ItemSet transaction : newTransactions) {
+      int slot;
+      if (transactionsSize < windowSize) {
+        slot = transactionsSize++;
+        nbTransactions++;
+      }
+      else {
+        slot = oldestSlot;
+        oldestSlot = (oldestSlot + 1) % windowSize;
+        removeTransaction(slot);
+        nbExpired++;
+      }
+      addTransaction(slot, transaction.getBitSet());
+      changedSlots.set(slot);
+    }
+    horizontalBase = null;
+    transactionsItems = null;
+    makeCovers();
+    return new WindowUpdate(changedSlots, newTransactions.size(), nbExpired, System.nanoTime() - startTime);
+  }
+
+  private void removeTransaction(final int slot) {
+    for (int item = 0; item < itemsCovers.getNbItems(); item++) {
+      if (itemsCovers.contains(item, slot)) {
+        itemsCovers.clear(item, slot);
+        itemsSupports[item]--;
+      }
+    }
+  }
+
+  private void addTransaction(final int slot, final BitSet items) {
+    final int lastItem = items.length() - 1;
+    if (lastItem >= itemsCovers.getNbItems()) { // New items, with covers of all the words of the window
+      itemsCovers = itemsCovers.withItems(lastItem + 1, (windowSize + 63) >>> 6, itemsCovers.isOffHeap());
+      itemsSupports = Arrays.copyOf(itemsSupports, lastItem + 1);
+      maxItem = Math.max(maxItem, lastItem + 1);
+    }
+    for (int item = items.nextSetBit(0); item != -1; item = items.nextSetBit(item + 1)) {
+      itemsCovers.set(item, slot);
+      itemsSupports[item]++;
+    }
+  }
+
+  /** Whether the dataset is a sliding window (see slide) */
+  public boolean isWindow() {
+    return windowSize > 0;
   }
 
   /**
-   * Create a transaction object from a line from the input file
-   * @param line a line from input file
-   * @return a transaction (an itemset)
+   * The horizontal representation of the dataset (one itemset per transaction), with the renumbered items of the dataset (i.e. the variables), that getOriginalItem maps back to the items of the file.
+   * It is not stored by default, and is only built (from the vertical representation) the first time it is asked.
    */
-  private ItemSet createTransaction(final String line) {
-    BitSet items = new BitSet();
-    getTokensWithCollection(line).forEach(elt -> {
-        int eltVal = Integer.parseInt(elt);
-        items.set(eltVal-1);
-        maxItem = Math.max(maxItem,eltVal);
-      });
-    return new ItemSet(items);
+  public synchronized List<ItemSet> getHorizontalBase() {
+    if (horizontalBase == null) {
+      List<ItemSet> transactions = new ArrayList<ItemSet>(transactionsSize);
+      for (int i = 0; i < transactionsSize; i++)
+        transactions.add(new ItemSet(new BitSet()));
+      for (int item = 0; item < itemsCovers.getNbItems(); item++) {
+        BitSet itemCover = itemsCovers.getBitSet(item);
+        for (int t = itemCover.nextSetBit(0); t != -1; t = itemCover.nextSetBit(t + 1))
+          transactions.get(t).getBitSet().set(item);
+      }
+      horizontalBase = transactions;
+    }
+    return horizontalBase;
+  }
+
+  /**
+   * The items of every transaction of the covers, as the pair {starts, items} of horizontalLists.
+   * It is only built the first time it is asked, and again after the window moves.
+   */
+  public synchronized int[][] getTransactionsItems() {
+    if (transactionsItems == null) {
+      final long[][] itemsWords = new long[itemsCovers.getNbItems()][];
+      for (int item = 0; item < itemsWords.length; item++)
+        itemsWords[item] = itemsCovers.toLongArray(item);
+      transactionsItems = horizontalLists(itemsWords, transactionsSize, null);
+    }
+    return transactionsItems;
+  }
+
+  /**
+   * Horizontal representation, as the list of the items of every transaction, in increasing order.
+   * The items of the transaction t are items[starts[t]] to items[starts[t+1]-1].
+   * @param itemsRanks the number given to every item in the lists (the identity if null)
+   * @return the pair {starts, items}
+   */
+  private static int[][] horizontalLists(final long[][] covers, final int nbTransactions, final int[] itemsRanks) {
+    final int[] starts = new int[nbTransactions + 1];
+    for (long[] cover : covers)
+      for (int w = 0; w < cover.length; w++)
+        for (long word = cover[w]; word != 0; word &= word - 1)
+          starts[(w << 6) + Long.numberOfTrailingZeros(word) + 1]++;
+    for (int t = 0; t < nbTransactions; t++)
+      starts[t + 1] += starts[t];
+    final int[] items = new int[starts[nbTransactions]];
+    final int[] filled = Arrays.copyOf(starts, nbTransactions);
+    final int[] order = itemsRanks == null ? IntStream.range(0, covers.length).toArray() : inverse(itemsRanks);
+    for (int item : order) // by increasing rank, so that the lists are sorted
+      for (int w = 0; w < covers[item].length; w++)
+        for (long word = covers[item][w]; word != 0; word &= word - 1)
+          items[filled[(w << 6) + Long.numberOfTrailingZeros(word)]++] = itemsRanks == null ? item : itemsRanks[item];
+    return new int[][] {starts, items};
+  }
+
+  private static int[] inverse(final int[] permutation) {
+    final int[] res = new int[permutation.length];
+    for (int i = 0; i < permutation.length; i++)
+      res[permutation[i]] = i;
+    return res;
+  }
+
+  /**
+   * Orders the transactions by the reflected Gray code of their items, the items being ranked by decreasing support.
+   * The transactions containing the most frequent item come first, and at every level the order is reversed when the common prefix contains an odd number of items.
+   * Consecutive transactions then differ by few items, so that the covers of the frequent items (and of the frequent itemsets) are made of long runs of consecutive transactions.
+   * @return the transactions in their new order
+   */
+  private static int[] grayCodeOrder(final long[][] covers, final int[] supports, final int nbTransactions) {
+    final int[] byDecreasingSupport = IntStream.range(0, covers.length).boxed()
+      .sorted(Comparator.comparingInt((Integer item) -> -supports[item]).thenComparingInt(item -> item))
+      .mapToInt(Integer::intValue).toArray();
+    final int[][] lists = horizontalLists(covers, nbTransactions, inverse(byDecreasingSupport));
+    final int[] starts = lists[0];
+    final int[] items = lists[1];
+    return IntStream.range(0, nbTransactions).boxed().sorted((t1, t2) -> {
+        int i1 = starts[t1];
+        int i2 = starts[t2];
+        while (i1 < starts[t1 + 1] && i2 < starts[t2 + 1] && items[i1] == items[i2]) {
+          i1++;
+          i2++;
+        }
+        final boolean end1 = i1 == starts[t1 + 1];
+        final boolean end2 = i2 == starts[t2 + 1];
+        if (end1 && end2)
+          return Integer.compare(t1, t2);
+        final boolean firstHasItem = end2 || (!end1 && items[i1] < items[i2]); // t1 contains the first item where they differ
+        final boolean reflected = ((i1 - starts[t1]) & 1) == 1;
+        return (firstHasItem != reflected) ? -1 : 1;
+      }).mapToInt(Integer::intValue).toArray();
+  }
+
+  /**
+   * Numbers the distinct transactions by order of first occurrence.
+   * @return an array giving for every transaction the number of the first identical transaction
+   */
+  private static int[] distinctTransactions(final long[][] covers, final int nbTransactions) {
+    final int[][] lists = horizontalLists(covers, nbTransactions, null);
+    final int[] starts = lists[0];
+    final int[] items = lists[1];
+    // Group the identical transactions
+    final Map<TransactionKey, Integer> rows = new HashMap<TransactionKey, Integer>();
+    final int[] rowOf = new int[nbTransactions];
+    for (int t = 0; t < nbTransactions; t++) {
+      Integer row = rows.putIfAbsent(new TransactionKey(items, starts[t], starts[t + 1]), rows.size());
+      rowOf[t] = row == null ? rows.size() - 1 : row;
+    }
+    return rowOf;
+  }
+
+  /** The cover where the transaction t is replaced by rowOf[t] */
+  private static long[] mapTransactions(final long[] cover, final int[] rowOf, final int nbRows) {
+    final long[] res = new long[(nbRows + 63) >>> 6];
+    for (int w = 0; w < cover.length; w++)
+      for (long word = cover[w]; word != 0; word &= word - 1) {
+        final int row = rowOf[(w << 6) + Long.numberOfTrailingZeros(word)];
+        res[row >>> 6] |= 1L << row;
+      }
+    int length = res.length;
+    while (length > 0 && res[length - 1] == 0)
+      length--;
+    return Arrays.copyOf(res, length);
+  }
+
+  /** A transaction, as the slice [start, end) of an array of items, with equality on the content */
+  private static final class TransactionKey {
+    private final int[] items;
+    private final int start;
+    private final int end;
+    private final int hash;
+
+    private TransactionKey(final int[] items, final int start, final int end) {
+      this.items = items;
+      this.start = start;
+      this.end = end;
+      int h = 1;
+      for (int i = start; i < end; i++)
+        h = 31 * h + items[i];
+      this.hash = h;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (!(o instanceof TransactionKey))
+        return false;
+      TransactionKey other = (TransactionKey) o;
+      if (hash != other.hash || end - start != other.end - other.start)
+        return false;
+      for (int i = 0; i < end - start; i++)
+        if (items[start + i] != other.items[other.start + i])
+          return false;
+      return true;
+    }
+  }
+
+  /** The items (of the file, starting at 0) whose support is at least minSupport, in the order of the file or by increasing support */
+  private static int[] frequentItems(final int[] supports, final int minSupport, final boolean sortBySupport) {
+    IntStream frequent = IntStream.range(0, supports.length).filter(item -> supports[item] >= minSupport);
+    if (!sortBySupport)
+      return frequent.toArray();
+    return frequent.boxed()
+      .sorted(Comparator.comparingInt((Integer item) -> supports[item]).thenComparingInt(item -> item))
+      .mapToInt(Integer::intValue).toArray();
+  }
+
+  /** The minimum frequency corresponding to a threshold in percentage, i.e. ceil(#transactions*threshold/100) */
+  public int minFreqOf(final double threshold) {
+    return (int) Math.ceil(threshold*nbTransactions/100);
+  }
+
+  /** The item in the file (starting at 0) corresponding to the item (i.e. variable) `item` of the dataset. It is the identity if the items were not pruned */
+  public int getOriginalItem(final int item) {
+    return originalItems == null ? item : originalItems[item];
   }
 
   public void init() {
     covers.init();
   }
 
+  /** The greatest item in the file */
   public int getMaxItem() {
     return maxItem;
   }
 
+  /** The number of items (i.e. of variables) of the dataset. It is smaller than getMaxItem() if the items were pruned */
   public int getNbrVar() {
-    return maxItem;
+    return itemsCovers.getNbItems();
   }
 
+  /** The number of transactions of the covers. If the duplicate transactions were merged, it is the number of distinct transactions */
   public int getTransactionsSize() {
-    return horizontalBase.size();
+    return transactionsSize;
+  }
+
+  /** The number of transactions in the file, i.e. the sum of the weights of the transactions */
+  public int getNbTransactions() {
+    return nbTransactions;
+  }
+
+  /** The weights of the transactions, that should be used to compute every cardinality of a cover. They are all 1 (UNIT) if the duplicate transactions were not merged */
+  public TransactionWeights getWeights() {
+    return weights;
   }
 
-  public BitSet[] getVerticalDataBase() {
-    return verticalDataBase;
+  /** The number of transactions containing the item (counted with their weights) */
+  public int getSupport(final int item) {
+    return itemsSupports[item];
   }
 
-  public long[][] getVerticalLongDataBase() {
-    return verticalLongDataBase;
+  /** The covers of the items. They are modified in place when the sliding window moves, and replaced when new items appear in the window */
+  public ItemsCovers getItemsCovers() {
+    return itemsCovers;
   }
 
   public TransactionSet getAllTransactions() {
@@ -131,7 +467,7 @@ public class DataSet {
   public String toString() {
     StringBuilder DataSetContent = new StringBuilder();
 
-    for (ItemSet transaction : horizontalBase) {
+    for (ItemSet transaction : getHorizontalBase()) {
       DataSetContent.append(transaction);
       DataSetContent.append("\n");
     }
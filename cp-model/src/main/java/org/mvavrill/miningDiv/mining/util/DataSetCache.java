@@ -0,0 +1,230 @@
+package org.mvavrill.miningDiv.mining.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A binary cache of the vertical representation of a dataset, stored next to the dataset file (with the extension `.bin` appended).
+ * The file contains a header (item and transaction counts, size and modification date of the source file, checksum, supports and number of words of every item), followed by the words of the covers of all the items, item after item, in little-endian order.
+ * The cache is memory-mapped when read, and the covers of the items are served from the mapping (see ItemsCovers.wrap), without being copied on the heap, so that concurrent JVMs share the pages of the file.
+ * Opening the cache only reads the header: the cache is valid if its format, its size and the source file match the header, so that the pages of the covers are only read when they are used.
+ * The checksum of the covers is checked after the cache is written, and when the cache is opened with `verify` (see DataSetCache(String, boolean)).
+ * If the cache is missing, invalid, or older than the dataset, it is rebuilt from the dataset file, and then mapped.
+ * @author Mathieu Vavrille
+ */
+public class DataSetCache {
+
+  public static final String EXTENSION = ".bin";
+  private static final long MAGIC = 0x4d44495642494e31L; // "MDIVBIN1"
+  private static final int VERSION = 2;
+  private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+  private static final int FIXED_HEADER_SIZE = 8 + 4 + 4 + 4 + 8 + 8 + 8;
+  private static final long MAX_MAPPING_SIZE = Integer.MAX_VALUE;
+
+  private final ItemsCovers itemsCovers;
+  private final int[] itemsSupports;
+  private final int nbTransactions;
+  private final boolean rebuilt;
+
+  /**
+   * Loads the vertical representation of the dataset from its cache, and (re)builds the cache if it is not valid.
+   * Only the header of the cache is read (see DataSetCache(String, boolean) to check the covers).
+   * @param dataSetPath the path of the dataset in the FIMI format (not the path of the cache)
+   */
+  public DataSetCache(final String dataSetPath) throws IOException {
+    this(dataSetPath, false);
+  }
+
+  /**
+   * @param dataSetPath the path of the dataset in the FIMI format (not the path of the cache)
+   * @param verify if set, the checksum of the covers is checked, which reads the whole cache, and the cache is rebuilt if it is corrupted
+   */
+  public DataSetCache(final String dataSetPath, final boolean verify) throws IOException {
+    final File source = new File(dataSetPath);
+    final Path cachePath = Paths.get(dataSetPath + EXTENSION);
+    Loaded loaded = Files.exists(cachePath) ? read(cachePath, source) : null;
+    if (loaded != null && verify && !loaded.verify())
+      loaded = null;
+    rebuilt = loaded == null;
+    if (rebuilt) {
+      FimiParser parser = new FimiParser(dataSetPath);
+      write(cachePath, source, parser.getItemsCovers(), parser.getItemsSupports(), parser.getNbTransactions());
+      loaded = read(cachePath, source);
+      if (loaded == null || !loaded.verify()) // The cache was replaced by a concurrent writer, or not written correctly: the parsed covers are used
+        loaded = new Loaded(ItemsCovers.of(parser.getItemsCovers(), false), parser.getItemsSupports(), parser.getNbTransactions(), 0L);
+    }
+    this.itemsCovers = loaded.itemsCovers;
+    this.itemsSupports = loaded.itemsSupports;
+    this.nbTransactions = loaded.nbTransactions;
+  }
+
+  /** The covers of the items, read-only, usually on the mapping of the cache */
+  public ItemsCovers getItemsCovers() {
+    return itemsCovers;
+  }
+
+  public int[] getItemsSupports() {
+    return itemsSupports;
+  }
+
+  public int getMaxItem() {
+    return itemsCovers.getNbItems();
+  }
+
+  public int getNbTransactions() {
+    return nbTransactions;
+  }
+
+  /** Whether the cache had to be (re)built from the dataset file */
+  public boolean wasRebuilt() {
+    return rebuilt;
+  }
+
+  /** Maps the cache, returns null if the header is not valid (wrong format or size, or stale). The words are not read. The mappings stay valid after the channel is closed */
+  private static Loaded read(final Path cachePath, final File source) throws IOException {
+    try (FileChannel channel = FileChannel.open(cachePath, StandardOpenOption.READ)) {
+      final long size = channel.size();
+      if (size < FIXED_HEADER_SIZE)
+        return null;
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, FIXED_HEADER_SIZE).order(ORDER);
+      if (header.getLong() != MAGIC || header.getInt() != VERSION)
+        return null;
+      final int maxItem = header.getInt();
+      final int nbTransactions = header.getInt();
+      final long sourceSize = header.getLong();
+      final long sourceLastModified = header.getLong();
+      final long checksum = header.getLong();
+      if (source.exists() && (source.length() != sourceSize || source.lastModified() != sourceLastModified))
+        return null; // stale
+      final long wordsStart = wordsStart(maxItem);
+      if (size < wordsStart)
+        return null;
+      ByteBuffer itemsHeader = channel.map(FileChannel.MapMode.READ_ONLY, FIXED_HEADER_SIZE, 8L * maxItem).order(ORDER);
+      final int[] itemsSupports = new int[maxItem];
+      final int[] nbWords = new int[maxItem];
+      itemsHeader.asIntBuffer().get(itemsSupports).get(nbWords);
+      long totalWords = 0;
+      for (int item = 0; item < maxItem; item++)
+        totalWords += nbWords[item];
+      if (size != wordsStart + 8 * totalWords)
+        return null;
+      final List<LongBuffer> windows = new ArrayList<LongBuffer>();
+      final int[] windowOf = new int[maxItem];
+      final int[] offsets = new int[maxItem];
+      long windowStart = wordsStart;
+      LongBuffer window = null;
+      long position = wordsStart;
+      for (int item = 0; item < maxItem; item++) {
+        final long itemEnd = position + 8L * nbWords[item];
+        if (window == null || itemEnd > windowStart + 8L * window.capacity()) { // map a new window starting at this item
+          windowStart = position;
+          window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(MAX_MAPPING_SIZE & ~7L, size - windowStart)).order(ORDER).asLongBuffer();
+          windows.add(window);
+        }
+        windowOf[item] = windows.size() - 1;
+        offsets[item] = (int) ((position - windowStart) / 8);
+        position = itemEnd;
+      }
+      final ItemsCovers itemsCovers = ItemsCovers.wrap(windows.toArray(new LongBuffer[0]), windowOf, offsets, nbWords);
+      return new Loaded(itemsCovers, itemsSupports, nbTransactions, checksum);
+    }
+  }
+
+  /** Writes the cache in a temporary file, and then moves it, so that a concurrent reader never sees a partial cache */
+  private static void write(final Path cachePath, final File source, final long[][] itemsCovers, final int[] itemsSupports, final int nbTransactions) throws IOException {
+    final int maxItem = itemsCovers.length;
+    final int[] nbWords = new int[maxItem];
+    for (int item = 0; item < maxItem; item++)
+      nbWords[item] = itemsCovers[item].length;
+    long hash = headerChecksum(itemsSupports, nbWords);
+    for (long[] words : itemsCovers)
+      hash = checksum(hash, words);
+    final Path tmpPath = Paths.get(cachePath + "." + System.nanoTime() + ".tmp");
+    try (FileChannel channel = FileChannel.open(tmpPath, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+      ByteBuffer header = ByteBuffer.allocate((int) wordsStart(maxItem)).order(ORDER);
+      header.putLong(MAGIC).putInt(VERSION).putInt(maxItem).putInt(nbTransactions)
+        .putLong(source.length()).putLong(source.lastModified()).putLong(hash);
+      for (int support : itemsSupports)
+        header.putInt(support);
+      for (int n : nbWords)
+        header.putInt(n);
+      header.clear();
+      writeFully(channel, header);
+      ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ORDER);
+      for (long[] words : itemsCovers) {
+        for (long word : words) {
+          if (!buffer.hasRemaining()) {
+            buffer.flip();
+            writeFully(channel, buffer);
+            buffer.clear();
+          }
+          buffer.putLong(word);
+        }
+      }
+      buffer.flip();
+      writeFully(channel, buffer);
+    }
+    Files.move(tmpPath, cachePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static void writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining())
+      channel.write(buffer);
+  }
+
+  /** Position of the first word, aligned on 8 bytes */
+  private static long wordsStart(final int maxItem) {
+    return (FIXED_HEADER_SIZE + 8L * maxItem + 7) & ~7L;
+  }
+
+  private static long headerChecksum(final int[] itemsSupports, final int[] nbWords) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < itemsSupports.length; i++)
+      hash = (hash ^ (((long) itemsSupports[i] << 32) | (nbWords[i] & 0xffffffffL))) * 0x100000001b3L;
+    return hash;
+  }
+
+  private static long checksum(long hash, final long[] words) {
+    for (long word : words)
+      hash = (hash ^ word) * 0x100000001b3L;
+    return hash;
+  }
+
+
+  private static final class Loaded {
+    private final ItemsCovers itemsCovers;
+    private final int[] itemsSupports;
+    private final int nbTransactions;
+    private final long checksum; // Stored in the header of the cache
+
+    private Loaded(final ItemsCovers itemsCovers, final int[] itemsSupports, final int nbTransactions, final long checksum) {
+      this.itemsCovers = itemsCovers;
+      this.itemsSupports = itemsSupports;
+      this.nbTransactions = nbTransactions;
+      this.checksum = checksum;
+    }
+
+    /** Whether the checksum of the covers matches the one of the header. All the words are read */
+    private boolean verify() {
+      final int[] nbWords = new int[itemsCovers.getNbItems()];
+      for (int item = 0; item < nbWords.length; item++)
+        nbWords[item] = itemsCovers.getNbWords(item);
+      long hash = headerChecksum(itemsSupports, nbWords);
+      for (int item = 0; item < nbWords.length; item++)
+        for (int w = 0; w < nbWords[item]; w++)
+          hash = (hash ^ itemsCovers.getWord(item, w)) * 0x100000001b3L;
+      return hash == checksum;
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package org.mvavrill.miningDiv.mining.util;
+
+import org.mvavrill.miningDiv.mining.structures.covers.CoverCache;
+
+/**
+ * The options of the loading of a dataset (see DataSet(String, DataSetOptions)).
+ * The setters return the options, so that they can be chained. The options are read when the dataset is loaded, and changing them later has no effect on it.
+ * By default, the dataset is parsed from its file, with CoversBase, without pruning, merging or reordering, and the covers of the items are on the heap.
+ * @author Mathieu Vavrille
+ */
+public class DataSetOptions {
+
+  private int coversMode = 0;
+  private boolean useCache = false;
+  private double threshold = -1.;
+  private boolean sortBySupport = false;
+  private boolean collapseDuplicates = false;
+  private boolean reorderTransactions = false;
+  private int windowSize = -1; // -1 if the dataset is not a sliding window
+  private boolean offHeap = false;
+  private long coversCacheBudget = CoverCache.DEFAULT_BUDGET;
+
+  /** The implementation of the covers computation. 0 for CoversBase, 1 for CoversQueued, 3 for CoversContainers, 4 for CoversTrie, and CoversFull otherwise */
+  public DataSetOptions setCoversMode(final int coversMode) {
+    this.coversMode = coversMode;
+    return this;
+  }
+
+  /** Whether to load the dataset from its binary cache (see DataSetCache), the cache being (re)built if needed. The covers of the items are then read from the mapping of the cache (off the heap), unless the transactions are merged, reordered or windowed */
+  public DataSetOptions setUseCache(final boolean useCache) {
+    this.useCache = useCache;
+    return this;
+  }
+
+  /**
+   * Removes the items that cannot appear in a frequent pattern. The remaining items are renumbered from 0 without gaps, and `DataSet.getOriginalItem` gives back the item of the file.
+   * @param threshold the threshold for frequent itemsets, in percentage (see DataSet.minFreqOf). The items that are absent or less frequent are removed. If negative, no item is removed
+   * @param sortBySupport if set, the remaining items are numbered by increasing support, otherwise their order in the file is kept
+   */
+  public DataSetOptions setPruning(final double threshold, final boolean sortBySupport) {
+    this.threshold = threshold;
+    this.sortBySupport = sortBySupport;
+    return this;
+  }
+
+  /** If set, the identical transactions (after the removal of the items) are merged into a single transaction, whose weight is its number of occurrences (see DataSet.getWeights) */
+  public DataSetOptions setCollapseDuplicates(final boolean collapseDuplicates) {
+    this.collapseDuplicates = collapseDuplicates;
+    return this;
+  }
+
+  /**
+   * If set, the transactions (after the merge) are renumbered so that the covers of the frequent items are made of long runs of consecutive transactions (see DataSet.grayCodeOrder).
+   * The numbering is not kept: the transactions of the covers are only used through the items, and with collapseDuplicates they would be the merged transactions anyway, not the ones of the file
+   */
+  public DataSetOptions setReorderTransactions(final boolean reorderTransactions) {
+    this.reorderTransactions = reorderTransactions;
+    return this;
+  }
+
+  /**
+   * Loads the dataset as a sliding window over its last `windowSize` transactions. The window then moves with `DataSet.slide`.
+   * The items cannot be pruned and the transactions cannot be merged or reordered, since the frequencies change with the window.
+   * @param windowSize the maximum number of transactions in the window
+   */
+  public DataSetOptions setWindowSize(final int windowSize) {
+    if (windowSize <= 0)
+      throw new IllegalArgumentException("The size of the window must be positive");
+    this.windowSize = windowSize;
+    return this;
+  }
+
+  /** If set, the covers of the items are stored off the heap, in direct buffers (see ItemsCovers). The covers mapped from the cache are already off the heap */
+  public DataSetOptions setOffHeap(final boolean offHeap) {
+    this.offHeap = offHeap;
+    return this;
+  }
+
+  /** The memory budget (in bytes) of the memoized covers, if they are memoized in a bounded structure (see CoversFull and CoversTrie) */
+  public DataSetOptions setCoversCacheBudget(final long coversCacheBudget) {
+    this.coversCacheBudget = coversCacheBudget;
+    return this;
+  }
+
+  public int getCoversMode() {
+    return coversMode;
+  }
+
+  public boolean getUseCache() {
+    return useCache;
+  }
+
+  public double getThreshold() {
+    return threshold;
+  }
+
+  public boolean getSortBySupport() {
+    return sortBySupport;
+  }
+
+  public boolean getCollapseDuplicates() {
+    return collapseDuplicates;
+  }
+
+  public boolean getReorderTransactions() {
+    return reorderTransactions;
+  }
+
+  public int getWindowSize() {
+    return windowSize;
+  }
+
+  public boolean getOffHeap() {
+    return offHeap;
+  }
+
+  public long getCoversCacheBudget() {
+    return coversCacheBudget;
+  }
+
+  /** Checks that the options can be used together, before the dataset is loaded */
+  void check() {
+    if (windowSize > 0 && (threshold >= 0 || collapseDuplicates || reorderTransactions))
+      throw new IllegalArgumentException("The items of a sliding window cannot be pruned, and its transactions cannot be merged or reordered");
+  }
+}
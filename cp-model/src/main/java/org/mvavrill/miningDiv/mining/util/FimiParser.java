@@ -0,0 +1,338 @@
+package org.mvavrill.miningDiv.mining.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+/**
+ * A parser for the datasets in the FIMI format: one transaction per line, the items being positive integers separated by spaces.
+ * The file is memory-mapped and scanned byte per byte, and the cover of every item is directly filled as the words of a bitset, in a single pass.
+ * Empty lines, comments (starting with '#' or '%') and metadata (starting with '@') are ignored, and the parsing stops at a line "[EOF]".
+ * Big files are split at line boundaries into chunks that are parsed in parallel (fork/join), the covers of the chunks being then shifted and stitched together.
+ * The result is identical to the one of the sequential parsing.
+ * @author Mathieu Vavrille
+ */
+public class FimiParser {
+
+  private static final long MAX_MAPPING_SIZE = Integer.MAX_VALUE; // A MappedByteBuffer is indexed by an int
+  private static final byte[] EOF_MARKER = {'[', 'E', 'O', 'F', ']'};
+  private static final long MIN_CHUNK_SIZE = 8L << 20; // Files smaller than two chunks are parsed sequentially
+
+  // States of the scanner
+  private static final int LINE_START = 0;
+  private static final int TRANSACTION = 1;
+  private static final int COMMENT = 2;
+  private static final int MARKER = 3;
+  private static final int END = 4;
+
+  private long[][] itemsCovers = new long[64][];
+  private int[] itemsSupports;
+  private int maxItem = 0;
+  private int nbTransactions = 0;
+
+  // Scanner state, kept in fields so that a token can span two mappings
+  private int state = LINE_START;
+  private int currentItem = 0;
+  private boolean inItem = false;
+  private int markerLength = 0;
+  private boolean markerMatches = true;
+
+  public FimiParser(final String dataSetPath) throws IOException {
+    this(dataSetPath, defaultNbChunks(Paths.get(dataSetPath).toFile().length()));
+  }
+
+  /**
+   * @param dataSetPath the path of the dataset
+   * @param nbChunks the number of chunks the file is split into to be parsed in parallel. The parsing is sequential if it is 1
+   */
+  public FimiParser(final String dataSetPath, final int nbChunks) throws IOException {
+    try (FileChannel channel = FileChannel.open(Paths.get(dataSetPath), StandardOpenOption.READ)) {
+      if (nbChunks <= 1 || !parseInParallel(channel, nbChunks)) {
+        scan(channel, 0, channel.size());
+        endLine();
+        trimCovers();
+      }
+    }
+  }
+
+  /** Parser of a single chunk */
+  private FimiParser() {}
+
+  /** The covers of the items, item i (starting at 0) corresponding to the integer i+1 in the file. The arrays are trimmed as in BitSet.toLongArray() */
+  public long[][] getItemsCovers() {
+    return itemsCovers;
+  }
+
+  /** The number of transactions containing each item */
+  public int[] getItemsSupports() {
+    return itemsSupports;
+  }
+
+  public int getMaxItem() {
+    return maxItem;
+  }
+
+  public int getNbTransactions() {
+    return nbTransactions;
+  }
+
+  private static int defaultNbChunks(final long size) {
+    return (int) Math.min(4L * Runtime.getRuntime().availableProcessors(), size / MIN_CHUNK_SIZE);
+  }
+
+  /** Scans the bytes in [start, end) of the file, using as many mappings as needed */
+  private void scan(final FileChannel channel, final long start, final long end) throws IOException {
+    for (long windowStart = start; windowStart < end && state != END; windowStart += MAX_MAPPING_SIZE) {
+      scan(channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(MAX_MAPPING_SIZE, end - windowStart)));
+    }
+  }
+
+  private void scan(final MappedByteBuffer buffer) {
+    final int limit = buffer.limit();
+    for (int i = 0; i < limit && state != END; i++) {
+      final byte b = buffer.get(i);
+      if (b == '\n' || b == '\r') {
+        endLine();
+        continue;
+      }
+      switch (state) {
+      case LINE_START:
+        if (b == '#' || b == '%' || b == '@') {
+          state = COMMENT;
+        }
+        else if (b == '[') {
+          state = MARKER;
+          markerLength = 1;
+          markerMatches = true;
+        }
+        else {
+          state = TRANSACTION;
+          nbTransactions++;
+          readTransactionByte(b);
+        }
+        break;
+      case TRANSACTION:
+        readTransactionByte(b);
+        break;
+      case MARKER:
+        markerMatches &= markerLength < EOF_MARKER.length && EOF_MARKER[markerLength] == b;
+        markerLength++;
+        break;
+      default: // COMMENT
+        break;
+      }
+    }
+  }
+
+  private void readTransactionByte(final byte b) {
+    if (b >= '0' && b <= '9') {
+      final int digit = b - '0';
+      if (currentItem > (Integer.MAX_VALUE - digit) / 10)
+        throw new NumberFormatException("The item in transaction " + nbTransactions + " is too big");
+      currentItem = currentItem * 10 + digit;
+      inItem = true;
+    }
+    else if (b == ' ') {
+      endItem();
+    }
+    else
+      throw new NumberFormatException("Unexpected character '" + (char) b + "' in transaction " + nbTransactions);
+  }
+
+  private void endItem() {
+    if (!inItem)
+      return;
+    if (currentItem == 0)
+      throw new IllegalArgumentException("The items must be strictly positive, found 0 in transaction " + nbTransactions);
+    addToCover(currentItem - 1, nbTransactions - 1);
+    currentItem = 0;
+    inItem = false;
+  }
+
+  private void endLine() {
+    if (state == TRANSACTION)
+      endItem();
+    else if (state == MARKER) {
+      if (markerMatches && markerLength == EOF_MARKER.length) {
+        state = END;
+        return;
+      }
+      throw new NumberFormatException("Unexpected line starting with '[' after transaction " + nbTransactions);
+    }
+    if (state != END)
+      state = LINE_START;
+  }
+
+  private void addToCover(final int item, final int transaction) {
+    if (item >= itemsCovers.length)
+      itemsCovers = Arrays.copyOf(itemsCovers, Math.max(item + 1, 2 * itemsCovers.length));
+    maxItem = Math.max(maxItem, item + 1);
+    final int wordIndex = transaction >>> 6;
+    long[] words = itemsCovers[item];
+    if (words == null)
+      words = itemsCovers[item] = new long[Math.max(wordIndex + 1, 4)];
+    else if (wordIndex >= words.length)
+      words = itemsCovers[item] = Arrays.copyOf(words, Math.max(wordIndex + 1, 2 * words.length));
+    words[wordIndex] |= 1L << transaction;
+  }
+
+  /** Resizes the covers to exactly maxItem items, and every cover to its last non-zero word. Also computes the supports */
+  private void trimCovers() {
+    itemsCovers = Arrays.copyOf(itemsCovers, maxItem);
+    itemsSupports = new int[maxItem];
+    for (int item = 0; item < maxItem; item++) {
+      final long[] words = itemsCovers[item];
+      if (words == null) {
+        itemsCovers[item] = new long[0];
+        continue;
+      }
+      int length = words.length;
+      while (length > 0 && words[length - 1] == 0)
+        length--;
+      itemsCovers[item] = Arrays.copyOf(words, length);
+      for (int i = 0; i < length; i++)
+        itemsSupports[item] += Long.bitCount(words[i]);
+    }
+  }
+
+  /**
+   * Parses the file split in chunks. The chunks after the one containing "[EOF]" are ignored.
+   * @return false if a chunk could not be parsed, in which case the file should be parsed sequentially to get the same error as the sequential parser
+   */
+  private boolean parseInParallel(final FileChannel channel, final int nbChunks) throws IOException {
+    final long[] bounds = chunksBounds(channel, nbChunks);
+    final FimiParser[] chunks = new FimiParser[bounds.length - 1];
+    final boolean[] failed = new boolean[chunks.length];
+    try {
+      ForkJoinPool.commonPool().invoke(new ChunksParsing(channel, bounds, chunks, failed, 0, chunks.length));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    int nbUsedChunks = 0;
+    while (nbUsedChunks < chunks.length) {
+      if (failed[nbUsedChunks])
+        return false;
+      if (chunks[nbUsedChunks++].state == END)
+        break;
+    }
+    stitch(chunks, nbUsedChunks);
+    return true;
+  }
+
+  /** Splits the file in chunks of approximately the same size, each chunk starting at the beginning of a line */
+  private static long[] chunksBounds(final FileChannel channel, final int nbChunks) throws IOException {
+    final long size = channel.size();
+    final long[] bounds = new long[nbChunks + 1];
+    final ByteBuffer buffer = ByteBuffer.allocate(1 << 12);
+    int nbBounds = 1; // bounds[0] = 0
+    for (int k = 1; k < nbChunks; k++) {
+      long position = Math.max(size / nbChunks * k, bounds[nbBounds - 1]);
+      long bound = size;
+      while (position < size && bound == size) { // find the next '\n'
+        buffer.clear();
+        final int read = channel.read(buffer, position);
+        for (int i = 0; i < read; i++) {
+          if (buffer.get(i) == '\n') {
+            bound = position + i + 1;
+            break;
+          }
+        }
+        position += read;
+      }
+      if (bound < size && bound > bounds[nbBounds - 1])
+        bounds[nbBounds++] = bound;
+    }
+    bounds[nbBounds++] = size;
+    return Arrays.copyOf(bounds, nbBounds);
+  }
+
+  /** Builds the covers of the whole file from the covers of the first nbUsedChunks chunks, shifted by the number of transactions before each chunk */
+  private void stitch(final FimiParser[] chunks, final int nbUsedChunks) {
+    final int[] offsets = new int[nbUsedChunks];
+    for (int c = 0; c < nbUsedChunks; c++) {
+      offsets[c] = nbTransactions;
+      nbTransactions += chunks[c].nbTransactions;
+      maxItem = Math.max(maxItem, chunks[c].maxItem);
+    }
+    final int[] nbWords = new int[maxItem];
+    for (int c = 0; c < nbUsedChunks; c++) {
+      final long[][] chunkCovers = chunks[c].itemsCovers;
+      for (int item = 0; item < chunkCovers.length; item++) {
+        final long[] words = chunkCovers[item];
+        if (words.length > 0) {
+          final long lastBit = offsets[c] + 64L * words.length - 1 - Long.numberOfLeadingZeros(words[words.length - 1]);
+          nbWords[item] = Math.max(nbWords[item], (int) (lastBit >>> 6) + 1);
+        }
+      }
+    }
+    itemsCovers = new long[maxItem][];
+    itemsSupports = new int[maxItem];
+    IntStream.range(0, maxItem).parallel().forEach(item -> {
+        final long[] words = new long[nbWords[item]];
+        for (int c = 0; c < nbUsedChunks; c++) {
+          if (item >= chunks[c].maxItem)
+            continue;
+          final long[] chunkWords = chunks[c].itemsCovers[item];
+          final int firstWord = offsets[c] >>> 6;
+          final int shift = offsets[c] & 63;
+          for (int j = 0; j < chunkWords.length; j++) {
+            words[firstWord + j] |= chunkWords[j] << shift;
+            if (shift != 0 && chunkWords[j] >>> (64 - shift) != 0)
+              words[firstWord + j + 1] |= chunkWords[j] >>> (64 - shift);
+          }
+          itemsSupports[item] += chunks[c].itemsSupports[item];
+        }
+        itemsCovers[item] = words;
+      });
+  }
+
+  /** Parses the chunks in [from, to) by recursively splitting the range */
+  private static final class ChunksParsing extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final FileChannel channel;
+    private final long[] bounds;
+    private final FimiParser[] chunks;
+    private final boolean[] failed;
+    private final int from;
+    private final int to;
+
+    private ChunksParsing(final FileChannel channel, final long[] bounds, final FimiParser[] chunks, final boolean[] failed, final int from, final int to) {
+      this.channel = channel;
+      this.bounds = bounds;
+      this.chunks = chunks;
+      this.failed = failed;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > 1) {
+        final int middle = (from + to) >>> 1;
+        invokeAll(new ChunksParsing(channel, bounds, chunks, failed, from, middle),
+                  new ChunksParsing(channel, bounds, chunks, failed, middle, to));
+        return;
+      }
+      final FimiParser chunk = new FimiParser();
+      try {
+        chunk.scan(channel, bounds[from], bounds[from + 1]);
+        chunk.endLine();
+        chunk.trimCovers();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } catch (RuntimeException e) {
+        failed[from] = true;
+      }
+      chunks[from] = chunk;
+    }
+  }
+}
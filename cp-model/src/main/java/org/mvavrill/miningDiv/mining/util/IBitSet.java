@@ -40,36 +40,91 @@ public class IBitSet {
     return res;
   }
 
-  public void and(long[] andWords) {
-    for (int j = 0; j < andWords.length; j++) {
-      words[j].set(words[j].get() & andWords[j]);
+  /** Cardinality where every transaction counts for its weight */
+  public int cardinality(final TransactionWeights weights) {
+    int res = 0;
+    for (int i = 0; i < words.length; i++)
+      res += weights.count(words[i].get(), i);
+    return res;
+  }
+
+  /** Intersects the bitset with the cover of the item */
+  public void and(final ItemsCovers itemsCovers, final int item) {
+    final int length = Math.min(itemsCovers.getNbWords(item), words.length); // The words of the item after the bitset are ignored
+    for (int j = 0; j < length; j++) {
+      words[j].set(words[j].get() & itemsCovers.getWord(item, j));
     }
-    for (int j = andWords.length; j < words.length; j++) { // andWords[j] = 0, but not represented
+    for (int j = length; j < words.length; j++) { // The word of the item is 0, but not represented
       words[j].set(0);
     }
   }
 
-  public BitSet getIntersection(long[] andWords) {
-    BitSet res = getBitSet();
-    res.and(BitSet.valueOf(andWords));
+  /** Intersects the bitset with the cover of the item, and writes the removed words and their offsets in the buffers (see ICover.and). Returns the number of offsets */
+  public int and(final ItemsCovers itemsCovers, final int item, final long[] removed, final int[] offsets) {
+    int nbOffsets = 0;
+    for (int j = 0; j < words.length; j++) {
+      final long word = words[j].get();
+      final long newWord = word & itemsCovers.getWord(item, j);
+      if (newWord != word) {
+        words[j].set(newWord);
+        removed[j] = word & ~newWord;
+        offsets[nbOffsets++] = j;
+      }
+    }
+    return nbOffsets;
+  }
+
+  public int getNbWords() {
+    return words.length;
+  }
+
+  /** The words of the intersection with the cover of the item (as in BitSet.toLongArray(), with possibly trailing zero words) */
+  public long[] getIntersection(final ItemsCovers itemsCovers, final int item) {
+    final long[] res = new long[Math.min(itemsCovers.getNbWords(item), words.length)];
+    for (int j = 0; j < res.length; j++) {
+      res[j] = words[j].get() & itemsCovers.getWord(item, j);
+    }
     return res;
   }
 
   public int andCount(long[] andWords) {
     int res = 0;
-    for (int j = 0; j < andWords.length; j++) {
+    final int length = Math.min(andWords.length, words.length);
+    for (int j = 0; j < length; j++) {
       res += Long.bitCount(words[j].get() & andWords[j]);
     }
     return res;
   }
 
-  public boolean isSubsetOf(long[] setWords) {
-    for (int j = 0; j < setWords.length; j++) {
+  /** Cardinality of the intersection where every transaction counts for its weight */
+  public int andCount(long[] andWords, final TransactionWeights weights) {
+    int res = 0;
+    final int length = Math.min(andWords.length, words.length);
+    for (int j = 0; j < length; j++) {
+      res += weights.count(words[j].get() & andWords[j], j);
+    }
+    return res;
+  }
+
+  /** Cardinality of the intersection with the cover of the item, where every transaction counts for its weight */
+  public int andCount(final ItemsCovers itemsCovers, final int item, final TransactionWeights weights) {
+    int res = 0;
+    final int length = Math.min(itemsCovers.getNbWords(item), words.length);
+    for (int j = 0; j < length; j++) {
+      res += weights.count(words[j].get() & itemsCovers.getWord(item, j), j);
+    }
+    return res;
+  }
+
+  /** Checks if the bitset is included in the cover of the item */
+  public boolean isSubsetOf(final ItemsCovers itemsCovers, final int item) {
+    final int length = Math.min(itemsCovers.getNbWords(item), words.length);
+    for (int j = 0; j < length; j++) {
       long currentWord = words[j].get();
-      if ((currentWord & setWords[j]) != currentWord)
+      if ((currentWord & itemsCovers.getWord(item, j)) != currentWord)
         return false;
     }
-    for (int j = setWords.length; j < words.length; j++) { // setWords[j] = 0, but not represented
+    for (int j = length; j < words.length; j++) { // The word of the item is 0, but not represented
       if (words[j].get() != 0)
         return false;
     }
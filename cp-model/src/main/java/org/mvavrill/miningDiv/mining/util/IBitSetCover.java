@@ -0,0 +1,70 @@
+package org.mvavrill.miningDiv.mining.util;
+
+import org.mvavrill.miningDiv.mining.structures.TransactionSet;
+
+import org.chocosolver.solver.Model;
+
+import java.util.BitSet;
+
+/**
+ * The cover stored as a backtrackable bitset (see IBitSet) over all the transactions.
+ * Every operation goes through all the words of the bitset.
+ * @author Mathieu Vavrille
+ */
+public class IBitSetCover implements ICover {
+
+  private final ItemsCovers itemsCovers;
+  private final TransactionWeights weights;
+  private final IBitSet cover;
+
+  public IBitSetCover(final Model model, final DataSet dataset) {
+    this.itemsCovers = dataset.getItemsCovers();
+    this.weights = dataset.getWeights();
+    this.cover = new IBitSet(model, dataset.getTransactionsSize(), true);
+  }
+
+  @Override
+  public void and(final int item) {
+    cover.and(itemsCovers, item);
+  }
+
+  @Override
+  public int and(final int item, final long[] removed, final int[] offsets) {
+    return cover.and(itemsCovers, item, removed, offsets);
+  }
+
+  @Override
+  public int getNbWords() {
+    return cover.getNbWords();
+  }
+
+  @Override
+  public int cardinality() {
+    return cover.cardinality(weights);
+  }
+
+  @Override
+  public int andCount(final int item) {
+    return cover.andCount(itemsCovers, item, weights);
+  }
+
+  @Override
+  public int andCount(final long[] words) {
+    return cover.andCount(words, weights);
+  }
+
+  @Override
+  public boolean isSubsetOf(final int item) {
+    return cover.isSubsetOf(itemsCovers, item);
+  }
+
+  @Override
+  public TransactionSet getIntersection(final int item) {
+    return TransactionSet.wrap(cover.getIntersection(itemsCovers, item));
+  }
+
+  @Override
+  public BitSet getBitSet() {
+    return cover.getBitSet();
+  }
+}
@@ -0,0 +1,62 @@
+package org.mvavrill.miningDiv.mining.util;
+
+import org.mvavrill.miningDiv.mining.structures.TransactionSet;
+
+import org.chocosolver.solver.Model;
+
+import java.util.BitSet;
+
+/**
+ * The backtrackable cover of the current itemset, used by the backtrackable propagators.
+ * The cover starts with all the transactions, and the items are added to the itemset using `and`.
+ * All the cardinalities are weighted by the weights of the transactions of the dataset (see TransactionWeights).
+ * @author Mathieu Vavrille
+ */
+public interface ICover {
+
+  /** Intersects the cover with the cover of `item` */
+  public void and(final int item);
+
+  /**
+   * Intersects the cover with the cover of `item`, and writes the words of the transactions it removes in `removed`, at the offsets written in `offsets` (the other words of `removed` are not modified).
+   * Only the words of the cover that change are visited, so that the buffers (of at least getNbWords() cells) can be kept by the caller.
+   * @return the number of offsets written
+   */
+  public int and(final int item, final long[] removed, final int[] offsets);
+
+  /** The number of words of the cover */
+  public int getNbWords();
+
+  /** Weighted cardinality of the cover */
+  public int cardinality();
+
+  /** Weighted cardinality of the intersection of the cover and the cover of `item` */
+  public int andCount(final int item);
+
+  /** Weighted cardinality of the intersection of the cover and a set of transactions given as words (as in BitSet.toLongArray()) */
+  public int andCount(final long[] words);
+
+  /** Checks if the cover is included in the cover of `item`, i.e. if `item` is a full extension of the itemset */
+  public boolean isSubsetOf(final int item);
+
+  /** The intersection of the cover and the cover of `item` */
+  public TransactionSet getIntersection(final int item);
+
+  public BitSet getBitSet();
+
+  /**
+   * Creates a cover on the transactions of the dataset
+   * @param structure "sparse" for ISparseBitSetCover, "bitset" for IBitSetCover, "stack" for IStackBitSetCover, "diffset" for IDiffSetCover
+   */
+  public static ICover make(final Model model, final DataSet dataset, final String structure) {
+    if (structure.equals("sparse"))
+      return new ISparseBitSetCover(model, dataset);
+    if (structure.equals("bitset"))
+      return new IBitSetCover(model, dataset);
+    if (structure.equals("stack"))
+      return new IStackBitSetCover(model, dataset);
+    if (structure.equals("diffset"))
+      return new IDiffSetCover(model, dataset);
+    throw new IllegalArgumentException("Unknown cover structure: " + structure);
+  }
+}
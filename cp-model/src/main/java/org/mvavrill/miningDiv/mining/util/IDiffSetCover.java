@@ -0,0 +1,177 @@
+package org.mvavrill.miningDiv.mining.util;
+
+import org.mvavrill.miningDiv.mining.structures.TransactionSet;
+
+import org.chocosolver.memory.IStateInt;
+import org.chocosolver.solver.Model;
+
+import java.util.BitSet;
+
+/**
+ * The cover stored as diffsets, as in dEclat: every node of the search stores the transactions of its parent's cover that it removes, and its support is the support of its parent minus the weight of its diffset.
+ * The diffsets of all the nodes of the current branch are stacked in a single array, so that backtracking only restores the top of the stack.
+ * The cover of an item is given by the (sorted) transactions that do not contain it, so that every operation only goes through these transactions.
+ * On dense datasets, where the items are absent from few transactions, this is much cheaper than going through all the words of a bitset.
+ * When an item is absent from many transactions, or when many transactions were removed, it is cheaper to use the words of the cover, that are then computed once per node and kept until the cover changes.
+ * @author Mathieu Vavrille
+ */
+public class IDiffSetCover implements ICover {
+
+  private final ItemsCovers itemsCovers;
+  private final int[][] itemsAbsences; // The transactions that do not contain the item, in increasing order
+  private final TransactionWeights weights;
+  private final int nbTransactions;
+
+  private final int[] removed; // The diffsets of the current branch, one after the other. The transactions are removed from the cover
+  private final int[] positions; // positions[t] is the index of t in removed, if t was removed (see isRemoved)
+  private final IStateInt nbRemoved;
+  private final IStateInt support;
+
+  private final long[] allWords; // The words of the cover of the empty itemset
+  private final long[] coverWords; // The words of the cover. Valid only if the stack did not change since their computation (see getCoverWords)
+  private int coverWordsTop = -1;
+  private int coverWordsVersion = -1;
+  private int version = 0; // Incremented every time transactions are pushed on the stack
+
+  public IDiffSetCover(final Model model, final DataSet dataset) {
+    this.itemsCovers = dataset.getItemsCovers();
+    this.weights = dataset.getWeights();
+    this.nbTransactions = dataset.getTransactionsSize();
+    this.itemsAbsences = new int[itemsCovers.getNbItems()][];
+    for (int item = 0; item < itemsAbsences.length; item++) {
+      BitSet absences = itemsCovers.getBitSet(item);
+      absences.flip(0, nbTransactions);
+      itemsAbsences[item] = absences.stream().toArray();
+    }
+    this.removed = new int[nbTransactions];
+    this.positions = new int[nbTransactions];
+    this.nbRemoved = model.getEnvironment().makeInt(0);
+    int totalWeight = 0;
+    for (int t = 0; t < nbTransactions; t++)
+      totalWeight += weights.getWeight(t);
+    this.support = model.getEnvironment().makeInt(totalWeight);
+    BitSet all = new BitSet(nbTransactions);
+    all.set(0, nbTransactions);
+    this.allWords = all.toLongArray();
+    this.coverWords = new long[allWords.length];
+  }
+
+  /** Whether the operations with `item` should go through its absences rather than the words of the cover */
+  private boolean useAbsences(final int item) {
+    return itemsAbsences[item].length <= 2 * allWords.length;
+  }
+
+  /** The words of the cover, computed from the stack if it changed since the last call */
+  private long[] getCoverWords() {
+    final int top = nbRemoved.get();
+    if (coverWordsTop != top || coverWordsVersion != version) {
+      System.arraycopy(allWords, 0, coverWords, 0, allWords.length);
+      for (int i = 0; i < top; i++)
+        coverWords[removed[i] >>> 6] &= ~(1L << removed[i]);
+      coverWordsTop = top;
+      coverWordsVersion = version;
+    }
+    return coverWords;
+  }
+
+  /** Whether the transaction is not in the cover. The position is checked, since the stack may contain transactions of backtracked nodes after the top */
+  private boolean isRemoved(final int transaction, final int top) {
+    final int position = positions[transaction];
+    return position < top && removed[position] == transaction;
+  }
+
+  @Override
+  public void and(final int item) {
+    and(item, null, null);
+  }
+
+  /** The removed transactions are the new ones of the diffset, so that only their words are written (the absences being sorted, a word is started when its first transaction is pushed) */
+  @Override
+  public int and(final int item, final long[] removedWords, final int[] offsets) {
+    int top = nbRemoved.get();
+    int nbOffsets = 0;
+    final boolean coverWordsValid = coverWordsTop == top && coverWordsVersion == version;
+    int removedWeight = 0;
+    for (int t : itemsAbsences[item]) {
+      if (!isRemoved(t, top)) {
+        removed[top] = t;
+        positions[t] = top++;
+        removedWeight += weights.getWeight(t);
+        if (coverWordsValid)
+          coverWords[t >>> 6] &= ~(1L << t);
+        if (removedWords != null) {
+          if (nbOffsets == 0 || offsets[nbOffsets - 1] != (t >>> 6)) {
+            offsets[nbOffsets++] = t >>> 6;
+            removedWords[t >>> 6] = 0L;
+          }
+          removedWords[t >>> 6] |= 1L << t;
+        }
+      }
+    }
+    version++;
+    if (coverWordsValid) {
+      coverWordsTop = top;
+      coverWordsVersion = version;
+    }
+    nbRemoved.set(top);
+    support.set(support.get() - removedWeight);
+    return nbOffsets;
+  }
+
+  @Override
+  public int getNbWords() {
+    return allWords.length;
+  }
+
+  @Override
+  public int cardinality() {
+    return support.get();
+  }
+
+  @Override
+  public int andCount(final int item) {
+    if (!useAbsences(item))
+      return itemsCovers.andCount(item, getCoverWords(), weights);
+    final int top = nbRemoved.get();
+    int res = support.get();
+    for (int t : itemsAbsences[item])
+      if (!isRemoved(t, top))
+        res -= weights.getWeight(t);
+    return res;
+  }
+
+  @Override
+  public int andCount(final long[] words) {
+    final int top = nbRemoved.get();
+    if (top > 2 * allWords.length)
+      return weights.andCount(getCoverWords(), words);
+    int res = weights.andCount(allWords, words); // The bits of `words` after the last transaction are not counted
+    for (int i = 0; i < top; i++) {
+      final int t = removed[i];
+      if ((t >>> 6) < words.length && (words[t >>> 6] & (1L << t)) != 0)
+        res -= weights.getWeight(t);
+    }
+    return res;
+  }
+
+  @Override
+  public boolean isSubsetOf(final int item) {
+    if (!useAbsences(item))
+      return itemsCovers.includes(item, getCoverWords());
+    final int top = nbRemoved.get();
+    for (int t : itemsAbsences[item])
+      if (!isRemoved(t, top))
+        return false;
+    return true;
+  }
+
+  @Override
+  public TransactionSet getIntersection(final int item) {
+    return TransactionSet.wrap(itemsCovers.and(item, getCoverWords()));
+  }
+
+  @Override
+  public BitSet getBitSet() {
+    return BitSet.valueOf(getCoverWords());
+  }
+}
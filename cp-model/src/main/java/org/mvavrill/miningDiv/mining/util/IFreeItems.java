@@ -0,0 +1,107 @@
+package org.mvavrill.miningDiv.mining.util;
+
+import org.chocosolver.memory.IStateInt;
+import org.chocosolver.solver.Model;
+import org.chocosolver.solver.variables.BoolVar;
+
+import java.util.Arrays;
+
+/**
+ * The backtrackable partition of the items into the free items, the filtered items (instantiated to 0) and the items of the itemset (instantiated to 1).
+ * The free items are a sparse set: an item leaves it by being swapped with the last free item, so that only the number of free items has to be restored on backtrack.
+ * The filtered items and the items of the itemset are stacks, in the order they were instantiated.
+ * All the operations are proportional to the number of free items, and not to the number of items.
+ * @author Mathieu Vavrille
+ */
+public class IFreeItems {
+
+  private final int[] free; // The free items are the first nbFree items
+  private final int[] positions; // positions[item] is the index of the item in free
+  private final IStateInt nbFree;
+  private final int[] filtered; // The filtered items are the first nbFiltered items
+  private final IStateInt nbFiltered;
+  private final int[] itemset; // The items of the itemset are the first itemsetSize items
+  private final IStateInt itemsetSize;
+
+  public IFreeItems(final Model model, final int nbItems) {
+    free = new int[nbItems];
+    positions = new int[nbItems];
+    for (int item = 0; item < nbItems; item++) {
+      free[item] = item;
+      positions[item] = item;
+    }
+    filtered = new int[nbItems];
+    itemset = new int[nbItems];
+    nbFree = model.getEnvironment().makeInt(nbItems);
+    nbFiltered = model.getEnvironment().makeInt(0);
+    itemsetSize = model.getEnvironment().makeInt(0);
+  }
+
+  public int getNbFree() {
+    return nbFree.get();
+  }
+
+  /** The j-th free item, in no particular order (see fillFree) */
+  public int getFree(final int j) {
+    return free[j];
+  }
+
+  public boolean isFree(final int item) {
+    return positions[item] < nbFree.get();
+  }
+
+  public int getNbFiltered() {
+    return nbFiltered.get();
+  }
+
+  public int getFiltered(final int j) {
+    return filtered[j];
+  }
+
+  public int getItemsetSize() {
+    return itemsetSize.get();
+  }
+
+  public int getItemsetItem(final int j) {
+    return itemset[j];
+  }
+
+  /** Copies the free items, in increasing order, in the array (of length at least getNbFree), and returns their number */
+  public int fillFree(final int[] res) {
+    final int n = nbFree.get();
+    System.arraycopy(free, 0, res, 0, n);
+    Arrays.sort(res, 0, n);
+    return n;
+  }
+
+  /** Removes the item from the free items and adds it to the filtered items or to the itemset, depending on the value. Nothing is done if the item is not free */
+  public void instantiate(final int item, final int value) {
+    final int n = nbFree.get();
+    final int position = positions[item];
+    if (position >= n)
+      return;
+    final int last = free[n - 1];
+    free[position] = last;
+    positions[last] = position;
+    free[n - 1] = item;
+    positions[item] = n - 1;
+    nbFree.set(n - 1);
+    if (value == 0) {
+      filtered[nbFiltered.get()] = item;
+      nbFiltered.add(1);
+    }
+    else {
+      itemset[itemsetSize.get()] = item;
+      itemsetSize.add(1);
+    }
+  }
+
+  /** Removes the free items whose variables are instantiated, for the instantiations that were not given to `instantiate` */
+  public void update(final BoolVar[] vars) {
+    for (int j = nbFree.get() - 1; j >= 0; j--) { // The items swapped in position j were already looked at
+      final int item = free[j];
+      if (vars[item].isInstantiated())
+        instantiate(item, vars[item].getValue());
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package org.mvavrill.miningDiv.mining.util;
+
+import org.chocosolver.solver.Model;
+
+/**
+ * The backtrackable weighted supports of the projections of the cover on all the items, i.e. |cov(X) & cov(i)| for every item i, as the tid-list counts of Eclat.
+ * The supports are only updated with the transactions that leave the cover (see and), either by going through their items or by intersecting them with the covers of all the items, whichever is cheaper.
+ * Full extensions and infrequent items are then detected by comparing integers, without building the projections.
+ * @author Mathieu Vavrille
+ */
+public class IProjectedSupports {
+
+  private final DataSet dataset;
+  private final TransactionWeights weights;
+  private final IStackIntArray supports;
+  private int[][] transactionsItems = null; // The horizontal lists of the dataset (see DataSet.getTransactionsItems), taken when the supports are initialized
+
+  // The words of the transactions removed by the last call to `and`, and their offsets, written by the cover (see ICover.and). The other words are 0
+  private long[] removed = new long[0];
+  private int[] removedOffsets = new int[0];
+  private int nbRemovedOffsets = 0;
+
+  public IProjectedSupports(final Model model, final DataSet dataset) {
+    this.dataset = dataset;
+    this.weights = dataset.getWeights();
+    this.supports = new IStackIntArray(model);
+  }
+
+  /** Whether the supports are defined in the current branch, otherwise they are computed by `init` */
+  public boolean isInitialized() {
+    return supports.size() > 0;
+  }
+
+  /** Computes the supports from the cover, if they are not defined in the current branch */
+  public void init(final ICover cover) {
+    if (isInitialized())
+      return;
+    transactionsItems = dataset.getTransactionsItems();
+    final int nbItems = dataset.getItemsCovers().getNbItems();
+    final int[] values = supports.modify(nbItems);
+    for (int item = 0; item < nbItems; item++)
+      values[item] = cover.andCount(item);
+  }
+
+  /** The weighted support of the projection of the cover on the item */
+  public int get(final int item) {
+    return supports.get(item);
+  }
+
+  /**
+   * Intersects the cover with the cover of the item, and subtracts the transactions it removes from the supports if they are initialized.
+   * The removed transactions are then given by getRemovedWords and getRemovedOffsets.
+   * @return the number of non-zero words of the removed transactions
+   */
+  public int and(final ICover cover, final int item) {
+    if (removed.length < cover.getNbWords()) {
+      removed = new long[cover.getNbWords()];
+      removedOffsets = new int[cover.getNbWords()];
+    }
+    else {
+      for (int k = 0; k < nbRemovedOffsets; k++) // Only the words of the previous call are cleared
+        removed[removedOffsets[k]] = 0L;
+    }
+    nbRemovedOffsets = cover.and(item, removed, removedOffsets);
+    if (nbRemovedOffsets > 0 && isInitialized())
+      subtract(dataset.getItemsCovers(), nbRemovedOffsets);
+    return nbRemovedOffsets;
+  }
+
+  /** The removed words, that are 0 outside of the offsets given by getRemovedOffsets */
+  public long[] getRemovedWords() {
+    return removed;
+  }
+
+  public int[] getRemovedOffsets() {
+    return removedOffsets;
+  }
+
+  /** Subtracts the removed transactions from the supports, going through their items if they have fewer items in total than the number of items times the number of removed words */
+  private void subtract(final ItemsCovers itemsCovers, final int nbOffsets) {
+    final int nbItems = supports.size();
+    final int[] values = supports.modify(nbItems);
+    final int[] starts = transactionsItems[0];
+    final int[] items = transactionsItems[1];
+    long nbRemoved = 0;
+    for (int k = 0; k < nbOffsets; k++)
+      nbRemoved += Long.bitCount(removed[removedOffsets[k]]);
+    final long nbEntries = nbRemoved * items.length / Math.max(1, starts.length - 1); // Estimated with the average length of the transactions
+    if (nbEntries <= (long) nbItems * nbOffsets) {
+      for (int k = 0; k < nbOffsets; k++) {
+        final int offset = removedOffsets[k];
+        for (long word = removed[offset]; word != 0; word &= word - 1) {
+          final int transaction = (offset << 6) + Long.numberOfTrailingZeros(word);
+          final int weight = weights.getWeight(transaction);
+          for (int e = starts[transaction]; e < starts[transaction + 1]; e++)
+            values[items[e]] -= weight;
+        }
+      }
+    }
+    else {
+      for (int item = 0; item < nbItems; item++) {
+        int res = 0;
+        for (int k = 0; k < nbOffsets; k++) {
+          final int offset = removedOffsets[k];
+          res += weights.count(removed[offset] & itemsCovers.getWord(item, offset), offset);
+        }
+        values[item] -= res;
+      }
+    }
+  }
+}
@@ -0,0 +1,172 @@
+package org.mvavrill.miningDiv.mining.util;
+
+import org.chocosolver.memory.IStateInt;
+import org.chocosolver.memory.IStateLong;
+import org.chocosolver.solver.Model;
+
+import java.util.BitSet;
+
+/**
+ * A backtrackable sparse bitset, as the reversible sparse bitset of Compact-Table.
+ * The indices of the non-zero words are kept at the beginning of `index` (up to `limit`), so that the operations only go through these words.
+ * When a word becomes zero, its index is swapped with the last non-zero one and `limit` decreases: only `limit` and the words are backtrackable, since restoring `limit` makes the words after it non-zero again.
+ * The weighted cardinality is maintained by `and`, and is also backtrackable.
+ * When more than half of the words are non-zero, the queries go through all the words in order instead, which is cheaper than following the index.
+ * Initially the bitset is full of ones.
+ * @author Mathieu Vavrille
+ */
+public class ISparseBitSet {
+
+  private final IStateLong[] words;
+  private final int[] index; // A permutation of the indices of the words, the non-zero words being index[0..limit]
+  private final IStateInt limit;
+  private final IStateInt cardinality; // Weighted by weights
+  private final TransactionWeights weights;
+
+  public ISparseBitSet(final Model model, final int nbits, final TransactionWeights weights) {
+    this.weights = weights;
+    BitSet temp = new BitSet(nbits);
+    temp.set(0, nbits);
+    long[] wordsValue = temp.toLongArray();
+    words = new IStateLong[wordsValue.length];
+    index = new int[wordsValue.length];
+    int totalWeight = 0;
+    for (int i = 0; i < words.length; i++) {
+      words[i] = model.getEnvironment().makeLong(wordsValue[i]);
+      index[i] = i;
+      totalWeight += weights.count(wordsValue[i], i);
+    }
+    limit = model.getEnvironment().makeInt(words.length - 1);
+    cardinality = model.getEnvironment().makeInt(totalWeight);
+  }
+
+  /** Whether the queries should go through all the words rather than through the index */
+  private boolean isDense(final int last) {
+    return 2 * (last + 1) > words.length;
+  }
+
+  public boolean isEmpty() {
+    return limit.get() == -1;
+  }
+
+  /** Cardinality where every transaction counts for its weight */
+  public int cardinality() {
+    return cardinality.get();
+  }
+
+  /** Intersects the bitset with the cover of the item */
+  public void and(final ItemsCovers itemsCovers, final int item) {
+    and(itemsCovers, item, null, null);
+  }
+
+  /** Intersects the bitset with the cover of the item, and writes the removed words and their offsets in the buffers if they are not null (see ICover.and). Returns the number of offsets */
+  public int and(final ItemsCovers itemsCovers, final int item, final long[] removed, final int[] offsets) {
+    int last = limit.get();
+    int card = cardinality.get();
+    int nbOffsets = 0;
+    for (int i = last; i >= 0; i--) {
+      final int offset = index[i];
+      final long word = words[offset].get();
+      final long newWord = word & itemsCovers.getWord(item, offset);
+      if (newWord != word) {
+        card -= weights.count(word & ~newWord, offset);
+        words[offset].set(newWord);
+        if (removed != null) {
+          removed[offset] = word & ~newWord;
+          offsets[nbOffsets++] = offset;
+        }
+        if (newWord == 0) {
+          index[i] = index[last];
+          index[last] = offset;
+          last--;
+        }
+      }
+    }
+    limit.set(last);
+    cardinality.set(card);
+    return nbOffsets;
+  }
+
+  public int getNbWords() {
+    return words.length;
+  }
+
+  /** Cardinality of the intersection with the cover of the item, where every transaction counts for its weight */
+  public int andCount(final ItemsCovers itemsCovers, final int item) {
+    int res = 0;
+    final int last = limit.get();
+    if (isDense(last)) {
+      for (int offset = 0; offset < words.length; offset++)
+        res += weights.count(words[offset].get() & itemsCovers.getWord(item, offset), offset);
+      return res;
+    }
+    for (int i = last; i >= 0; i--) {
+      final int offset = index[i];
+      res += weights.count(words[offset].get() & itemsCovers.getWord(item, offset), offset);
+    }
+    return res;
+  }
+
+  /** Cardinality of the intersection with the words (as in BitSet.toLongArray()), where every transaction counts for its weight */
+  public int andCount(final long[] andWords) {
+    int res = 0;
+    final int last = limit.get();
+    if (isDense(last)) {
+      final int length = Math.min(andWords.length, words.length);
+      if (weights.isUnit())
+        for (int offset = 0; offset < length; offset++)
+          res += Long.bitCount(words[offset].get() & andWords[offset]);
+      else
+        for (int offset = 0; offset < length; offset++)
+          res += weights.count(words[offset].get() & andWords[offset], offset);
+      return res;
+    }
+    for (int i = last; i >= 0; i--) {
+      final int offset = index[i];
+      if (offset < andWords.length)
+        res += weights.count(words[offset].get() & andWords[offset], offset);
+    }
+    return res;
+  }
+
+  /** Checks if the bitset is included in the cover of the item */
+  public boolean isSubsetOf(final ItemsCovers itemsCovers, final int item) {
+    final int last = limit.get();
+    if (isDense(last)) {
+      for (int offset = 0; offset < words.length; offset++)
+        if ((words[offset].get() & ~itemsCovers.getWord(item, offset)) != 0)
+          return false;
+      return true;
+    }
+    for (int i = last; i >= 0; i--) {
+      final int offset = index[i];
+      if ((words[offset].get() & ~itemsCovers.getWord(item, offset)) != 0)
+        return false;
+    }
+    return true;
+  }
+
+  /** The words of the intersection with the cover of the item (as in BitSet.toLongArray(), with possibly trailing zero words) */
+  public long[] getIntersection(final ItemsCovers itemsCovers, final int item) {
+    final long[] res = new long[Math.min(itemsCovers.getNbWords(item), words.length)];
+    final int last = limit.get();
+    if (isDense(last)) {
+      for (int offset = 0; offset < res.length; offset++)
+        res[offset] = words[offset].get() & itemsCovers.getWord(item, offset);
+      return res;
+    }
+    for (int i = last; i >= 0; i--) {
+      final int offset = index[i];
+      if (offset < res.length)
+        res[offset] = words[offset].get() & itemsCovers.getWord(item, offset);
+    }
+    return res;
+  }
+
+  public BitSet getBitSet() {
+    final long[] wordsCopy = new long[words.length];
+    for (int i = limit.get(); i >= 0; i--)
+      wordsCopy[index[i]] = words[index[i]].get();
+    return BitSet.valueOf(wordsCopy);
+  }
+}
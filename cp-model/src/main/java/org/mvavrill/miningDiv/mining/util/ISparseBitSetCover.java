@@ -0,0 +1,68 @@
+package org.mvavrill.miningDiv.mining.util;
+
+import org.mvavrill.miningDiv.mining.structures.TransactionSet;
+
+import org.chocosolver.solver.Model;
+
+import java.util.BitSet;
+
+/**
+ * The cover stored as a backtrackable sparse bitset (see ISparseBitSet) over all the transactions.
+ * Every operation only goes through the non-zero words of the cover, so that the cost of a node decreases with the size of the cover, and the cardinality is maintained by `and`.
+ * @author Mathieu Vavrille
+ */
+public class ISparseBitSetCover implements ICover {
+
+  private final ItemsCovers itemsCovers;
+  private final ISparseBitSet cover;
+
+  public ISparseBitSetCover(final Model model, final DataSet dataset) {
+    this.itemsCovers = dataset.getItemsCovers();
+    this.cover = new ISparseBitSet(model, dataset.getTransactionsSize(), dataset.getWeights());
+  }
+
+  @Override
+  public void and(final int item) {
+    cover.and(itemsCovers, item);
+  }
+
+  @Override
+  public int and(final int item, final long[] removed, final int[] offsets) {
+    return cover.and(itemsCovers, item, removed, offsets);
+  }
+
+  @Override
+  public int getNbWords() {
+    return cover.getNbWords();
+  }
+
+  @Override
+  public int cardinality() {
+    return cover.cardinality();
+  }
+
+  @Override
+  public int andCount(final int item) {
+    return cover.andCount(itemsCovers, item);
+  }
+
+  @Override
+  public int andCount(final long[] words) {
+    return cover.andCount(words);
+  }
+
+  @Override
+  public boolean isSubsetOf(final int item) {
+    return cover.isSubsetOf(itemsCovers, item);
+  }
+
+  @Override
+  public TransactionSet getIntersection(final int item) {
+    return TransactionSet.wrap(cover.getIntersection(itemsCovers, item));
+  }
+
+  @Override
+  public BitSet getBitSet() {
+    return cover.getBitSet();
+  }
+}
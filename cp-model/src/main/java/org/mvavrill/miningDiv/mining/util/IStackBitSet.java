@@ -0,0 +1,138 @@
+package org.mvavrill.miningDiv.mining.util;
+
+import org.chocosolver.memory.IEnvironment;
+import org.chocosolver.memory.structure.IOperation;
+import org.chocosolver.solver.Model;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A backtrackable bitset that copies all its words on the first modification in a world, instead of trailing every word as IBitSet.
+ * The words of the previous worlds are kept on a stack, and an operation saved in the environment (see IEnvironment.save) pops the stack when the world is popped, so that backtracking only swaps the current words with the top of the stack.
+ * The arrays of the popped worlds are kept in a pool and reused by the next copies, so that the search does not allocate once the maximum depth is reached.
+ * The weighted cardinality is stored along with the words.
+ * Initially the bitset is full of ones.
+ * @author Mathieu Vavrille
+ */
+public class IStackBitSet {
+
+  private final IEnvironment environment;
+  private final TransactionWeights weights;
+  private final ArrayDeque<long[]> pool = new ArrayDeque<long[]>();
+  private final IOperation restore = this::restore;
+
+  private long[] words;
+  private int cardinality; // Weighted by weights
+  private int timeStamp = -1; // The time stamp of the environment when the words were copied, the words can be modified in place until it changes
+
+  // The stack of the previous worlds, the first `size` elements are filled
+  private long[][] savedWords = new long[16][];
+  private int[] savedCardinalities = new int[16];
+  private int[] savedTimeStamps = new int[16];
+  private int size = 0;
+
+  public IStackBitSet(final Model model, final int nbits, final TransactionWeights weights) {
+    this.environment = model.getEnvironment();
+    this.weights = weights;
+    BitSet temp = new BitSet(nbits);
+    temp.set(0, nbits);
+    words = temp.toLongArray();
+    cardinality = weights.count(words);
+  }
+
+  /**
+   * Saves the current words on the stack and replaces them with an array of the pool, if they were not already saved in the current world.
+   * @return the words to read the current value from, that the caller writes into `words`
+   */
+  private long[] copyOnWrite() {
+    final int now = environment.getTimeStamp();
+    if (timeStamp == now)
+      return words;
+    if (size == savedWords.length) {
+      savedWords = Arrays.copyOf(savedWords, 2 * size);
+      savedCardinalities = Arrays.copyOf(savedCardinalities, 2 * size);
+      savedTimeStamps = Arrays.copyOf(savedTimeStamps, 2 * size);
+    }
+    savedWords[size] = words;
+    savedCardinalities[size] = cardinality;
+    savedTimeStamps[size] = timeStamp;
+    size++;
+    final long[] previous = words;
+    words = pool.isEmpty() ? new long[previous.length] : pool.pop();
+    timeStamp = now;
+    environment.save(restore);
+    return previous;
+  }
+
+  /** Restores the words of the previous world, called by the environment when the world is popped */
+  private void restore() {
+    size--;
+    pool.push(words);
+    words = savedWords[size];
+    cardinality = savedCardinalities[size];
+    timeStamp = savedTimeStamps[size];
+    savedWords[size] = null;
+  }
+
+  public boolean isEmpty() {
+    return cardinality == 0;
+  }
+
+  /** Cardinality where every transaction counts for its weight */
+  public int cardinality() {
+    return cardinality;
+  }
+
+  /** Intersects the bitset with the cover of the item */
+  public void and(final ItemsCovers itemsCovers, final int item) {
+    itemsCovers.and(item, copyOnWrite(), words); // The copy and the intersection in a single pass
+    cardinality = weights.count(words);
+  }
+
+  /** Intersects the bitset with the cover of the item, and writes the removed words and their offsets in the buffers (see ICover.and). Returns the number of offsets */
+  public int and(final ItemsCovers itemsCovers, final int item, final long[] removed, final int[] offsets) {
+    final long[] previous = copyOnWrite();
+    int nbOffsets = 0;
+    for (int j = 0; j < words.length; j++) {
+      final long word = previous[j];
+      final long newWord = word & itemsCovers.getWord(item, j);
+      words[j] = newWord;
+      if (newWord != word) {
+        cardinality -= weights.count(word & ~newWord, j);
+        removed[j] = word & ~newWord;
+        offsets[nbOffsets++] = j;
+      }
+    }
+    return nbOffsets;
+  }
+
+  public int getNbWords() {
+    return words.length;
+  }
+
+  /** Cardinality of the intersection with the cover of the item, where every transaction counts for its weight */
+  public int andCount(final ItemsCovers itemsCovers, final int item) {
+    return itemsCovers.andCount(item, words, weights);
+  }
+
+  /** Cardinality of the intersection with the words (as in BitSet.toLongArray()), where every transaction counts for its weight */
+  public int andCount(final long[] andWords) {
+    return weights.andCount(words, andWords);
+  }
+
+  /** Checks if the bitset is included in the cover of the item */
+  public boolean isSubsetOf(final ItemsCovers itemsCovers, final int item) {
+    return itemsCovers.includes(item, words);
+  }
+
+  /** The words of the intersection with the cover of the item (as in BitSet.toLongArray(), with possibly trailing zero words) */
+  public long[] getIntersection(final ItemsCovers itemsCovers, final int item) {
+    return itemsCovers.and(item, words);
+  }
+
+  public BitSet getBitSet() {
+    return BitSet.valueOf(words);
+  }
+}
@@ -0,0 +1,68 @@
+package org.mvavrill.miningDiv.mining.util;
+
+import org.mvavrill.miningDiv.mining.structures.TransactionSet;
+
+import org.chocosolver.solver.Model;
+
+import java.util.BitSet;
+
+/**
+ * The cover stored as a backtrackable bitset copied at every world (see IStackBitSet) over all the transactions.
+ * The words are copied once per world rather than trailed one by one, which is cheaper when the cover changes in most of its words at every decision, and the cardinality is stored with them.
+ * @author Mathieu Vavrille
+ */
+public class IStackBitSetCover implements ICover {
+
+  private final ItemsCovers itemsCovers;
+  private final IStackBitSet cover;
+
+  public IStackBitSetCover(final Model model, final DataSet dataset) {
+    this.itemsCovers = dataset.getItemsCovers();
+    this.cover = new IStackBitSet(model, dataset.getTransactionsSize(), dataset.getWeights());
+  }
+
+  @Override
+  public void and(final int item) {
+    cover.and(itemsCovers, item);
+  }
+
+  @Override
+  public int and(final int item, final long[] removed, final int[] offsets) {
+    return cover.and(itemsCovers, item, removed, offsets);
+  }
+
+  @Override
+  public int getNbWords() {
+    return cover.getNbWords();
+  }
+
+  @Override
+  public int cardinality() {
+    return cover.cardinality();
+  }
+
+  @Override
+  public int andCount(final int item) {
+    return cover.andCount(itemsCovers, item);
+  }
+
+  @Override
+  public int andCount(final long[] words) {
+    return cover.andCount(words);
+  }
+
+  @Override
+  public boolean isSubsetOf(final int item) {
+    return cover.isSubsetOf(itemsCovers, item);
+  }
+
+  @Override
+  public TransactionSet getIntersection(final int item) {
+    return TransactionSet.wrap(cover.getIntersection(itemsCovers, item));
+  }
+
+  @Override
+  public BitSet getBitSet() {
+    return cover.getBitSet();
+  }
+}
@@ -0,0 +1,83 @@
+package org.mvavrill.miningDiv.mining.util;
+
+import org.chocosolver.memory.IEnvironment;
+import org.chocosolver.memory.structure.IOperation;
+import org.chocosolver.solver.Model;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * A backtrackable array of integers, that copies its values on the first modification in a world, as IStackBitSet.
+ * Only the first `size` values are defined. The size is backtrackable as well, so that the array can grow lazily.
+ * @author Mathieu Vavrille
+ */
+public class IStackIntArray {
+
+  private final IEnvironment environment;
+  private final ArrayDeque<int[]> pool = new ArrayDeque<int[]>();
+  private final IOperation restore = this::restore;
+
+  private int[] values = new int[16];
+  private int size = 0;
+  private int timeStamp = -1; // The time stamp of the environment when the values were copied, they can be modified in place until it changes
+
+  // The stack of the previous worlds, the first `depth` elements are filled
+  private int[][] savedValues = new int[16][];
+  private int[] savedSizes = new int[16];
+  private int[] savedTimeStamps = new int[16];
+  private int depth = 0;
+
+  public IStackIntArray(final Model model) {
+    this.environment = model.getEnvironment();
+  }
+
+  /** Restores the values of the previous world, called by the environment when the world is popped */
+  private void restore() {
+    depth--;
+    pool.push(values);
+    values = savedValues[depth];
+    size = savedSizes[depth];
+    timeStamp = savedTimeStamps[depth];
+    savedValues[depth] = null;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int get(final int i) {
+    return values[i];
+  }
+
+  /**
+   * Saves the values on the stack if they were not already saved in the current world, and sets the size.
+   * The values up to the previous size are kept, the ones above are undefined.
+   * @return the values to modify in place, of length at least newSize
+   */
+  public int[] modify(final int newSize) {
+    final int now = environment.getTimeStamp();
+    if (timeStamp != now) {
+      if (depth == savedValues.length) {
+        savedValues = Arrays.copyOf(savedValues, 2 * depth);
+        savedSizes = Arrays.copyOf(savedSizes, 2 * depth);
+        savedTimeStamps = Arrays.copyOf(savedTimeStamps, 2 * depth);
+      }
+      savedValues[depth] = values;
+      savedSizes[depth] = size;
+      savedTimeStamps[depth] = timeStamp;
+      depth++;
+      int[] copy = pool.isEmpty() ? null : pool.pop();
+      if (copy == null || copy.length < Math.max(newSize, size))
+        copy = new int[Math.max(Math.max(newSize, size), values.length)];
+      System.arraycopy(values, 0, copy, 0, Math.min(size, newSize));
+      values = copy;
+      timeStamp = now;
+      environment.save(restore);
+    }
+    else if (newSize > values.length)
+      values = Arrays.copyOf(values, Math.max(newSize, 2 * values.length));
+    size = newSize;
+    return values;
+  }
+}
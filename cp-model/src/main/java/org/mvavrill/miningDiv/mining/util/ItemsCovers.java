@@ -0,0 +1,275 @@
+package org.mvavrill.miningDiv.mining.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.BitSet;
+
+/**
+ * The covers of all the items (the vertical database), stored one after the other as words (as in BitSet.toLongArray()), the cover of the item i starting at offsets[i].
+ * The words are either on the heap, in a single long[], or off the heap, in direct buffers of at most 2^27 words (1GB) each, the cover of an item being always in a single buffer.
+ * Off the heap, the covers are neither scanned by the garbage collector nor counted in the maximum heap size, but the operations use plain loops instead of the word kernels (see WordKernels).
+ * The buffers off the heap can also be mapped from a file (see DataSetCache), in which case they are read-only.
+ * The covers are read through the operations below, or through read-only views. They are only modified by DataSet, when a sliding window moves.
+ * @author Mathieu Vavrille
+ */
+public final class ItemsCovers {
+  private static final WordKernels KERNELS = WordKernels.get();
+  private static final int MAX_CHUNK_WORDS = 1 << 27;
+
+  private final long[] heapWords; // null if off heap
+  private final LongBuffer[] chunks; // null if on heap
+  private final int[] chunkOf; // The chunk of the cover of every item, null if on heap
+  private final int[] offsets; // The index of the first word of every item (in its chunk if off heap)
+  private final int[] nbWords;
+
+  private ItemsCovers(final long[] heapWords, final LongBuffer[] chunks, final int[] chunkOf, final int[] offsets, final int[] nbWords) {
+    this.heapWords = heapWords;
+    this.chunks = chunks;
+    this.chunkOf = chunkOf;
+    this.offsets = offsets;
+    this.nbWords = nbWords;
+  }
+
+  /**
+   * Copies the covers into a single store.
+   * @param covers the words of the cover of every item
+   * @param offHeap whether the words are stored in direct buffers rather than on the heap
+   */
+  public static ItemsCovers of(final long[][] covers, final boolean offHeap) {
+    final int[] nbWords = new int[covers.length];
+    for (int item = 0; item < covers.length; item++)
+      nbWords[item] = covers[item].length;
+    final ItemsCovers res = allocate(nbWords, offHeap);
+    for (int item = 0; item < covers.length; item++)
+      res.write(item, covers[item]);
+    return res;
+  }
+
+  /**
+   * A store on buffers that are already filled, e.g. mapped from a file (see DataSetCache), without copying them.
+   * The cover of the item i is made of the nbWords[i] words of chunks[chunkOf[i]] starting at offsets[i].
+   */
+  static ItemsCovers wrap(final LongBuffer[] chunks, final int[] chunkOf, final int[] offsets, final int[] nbWords) {
+    return new ItemsCovers(null, chunks, chunkOf, offsets, nbWords);
+  }
+
+  /** A store with the covers of the items only, the item j of the result being items[j]. The words are shared with this store, and should not be modified */
+  ItemsCovers select(final int[] items) {
+    final int[] selectedOffsets = new int[items.length];
+    final int[] selectedNbWords = new int[items.length];
+    final int[] selectedChunkOf = chunkOf == null ? null : new int[items.length];
+    for (int j = 0; j < items.length; j++) {
+      selectedOffsets[j] = offsets[items[j]];
+      selectedNbWords[j] = nbWords[items[j]];
+      if (selectedChunkOf != null)
+        selectedChunkOf[j] = chunkOf[items[j]];
+    }
+    return new ItemsCovers(heapWords, chunks, selectedChunkOf, selectedOffsets, selectedNbWords);
+  }
+
+  /** An empty store (all the covers are empty) with the given number of words for every item */
+  private static ItemsCovers allocate(final int[] nbWords, final boolean offHeap) {
+    final int[] offsets = new int[nbWords.length];
+    if (!offHeap) {
+      long total = 0;
+      for (int item = 0; item < nbWords.length; item++) {
+        offsets[item] = (int) total;
+        total += nbWords[item];
+      }
+      if (total > Integer.MAX_VALUE - 8)
+        throw new IllegalArgumentException("The covers of the items have " + total + " words, which is too much for the heap. They should be stored off the heap");
+      return new ItemsCovers(new long[(int) total], null, null, offsets, nbWords);
+    }
+    final int[] chunkOf = new int[nbWords.length];
+    int nbChunks = 0;
+    int chunkSize = 0;
+    final int[] chunksSizes = new int[nbWords.length + 1];
+    for (int item = 0; item < nbWords.length; item++) {
+      if (chunkSize + (long) nbWords[item] > MAX_CHUNK_WORDS) {
+        chunksSizes[nbChunks++] = chunkSize;
+        chunkSize = 0;
+      }
+      chunkOf[item] = nbChunks;
+      offsets[item] = chunkSize;
+      chunkSize += nbWords[item];
+    }
+    chunksSizes[nbChunks++] = chunkSize;
+    final LongBuffer[] chunks = new LongBuffer[nbChunks];
+    for (int c = 0; c < nbChunks; c++)
+      chunks[c] = ByteBuffer.allocateDirect(8 * chunksSizes[c]).order(ByteOrder.nativeOrder()).asLongBuffer();
+    return new ItemsCovers(null, chunks, chunkOf, offsets, nbWords);
+  }
+
+  private void write(final int item, final long[] words) {
+    if (heapWords != null)
+      System.arraycopy(words, 0, heapWords, offsets[item], words.length);
+    else {
+      final LongBuffer chunk = chunks[chunkOf[item]].duplicate();
+      chunk.position(offsets[item]);
+      chunk.put(words, 0, words.length);
+    }
+  }
+
+  /** A copy of the store, on or off the heap */
+  public ItemsCovers copy(final boolean offHeap) {
+    return withItems(nbWords.length, 0, offHeap);
+  }
+
+  /** A copy of the store with `nbItems` items, the new items having empty covers of `newNbWords` words. Used by DataSet when new items appear in a sliding window */
+  ItemsCovers withItems(final int nbItems, final int newNbWords, final boolean offHeap) {
+    final int[] newNbWordsOfItems = new int[nbItems];
+    for (int item = 0; item < nbItems; item++)
+      newNbWordsOfItems[item] = item < nbWords.length ? nbWords[item] : newNbWords;
+    final ItemsCovers res = allocate(newNbWordsOfItems, offHeap);
+    for (int item = 0; item < Math.min(nbItems, nbWords.length); item++)
+      res.write(item, toLongArray(item));
+    return res;
+  }
+
+  public boolean isOffHeap() {
+    return heapWords == null;
+  }
+
+  public int getNbItems() {
+    return nbWords.length;
+  }
+
+  /** The number of words of the cover of the item, the words after these being 0 */
+  public int getNbWords(final int item) {
+    return nbWords[item];
+  }
+
+  /** The memory (in bytes) of the words of all the covers */
+  public long getNbBytes() {
+    long res = 0;
+    for (int n : nbWords)
+      res += 8L * n;
+    return res;
+  }
+
+  /** The word `w` of the cover of the item, that must be one of its words */
+  private long word(final int item, final int w) {
+    return heapWords != null ? heapWords[offsets[item] + w] : chunks[chunkOf[item]].get(offsets[item] + w);
+  }
+
+  /** The word `w` of the cover of the item, 0 if it is after its last word */
+  public long getWord(final int item, final int w) {
+    return w < nbWords[item] ? word(item, w) : 0L;
+  }
+
+  /** Whether the transaction contains the item */
+  public boolean contains(final int item, final int transaction) {
+    return (getWord(item, transaction >>> 6) & (1L << transaction)) != 0;
+  }
+
+  /** Number of transactions containing the item */
+  public int cardinality(final int item) {
+    int res = 0;
+    for (int w = 0; w < nbWords[item]; w++)
+      res += Long.bitCount(word(item, w));
+    return res;
+  }
+
+  /** Number of transactions of the words (as in BitSet.toLongArray()) that contain the item */
+  public int andCount(final int item, final long[] words) {
+    final int length = Math.min(words.length, nbWords[item]);
+    if (heapWords != null)
+      return KERNELS.andCount(words, heapWords, offsets[item], length);
+    int res = 0;
+    for (int w = 0; w < length; w++)
+      res += Long.bitCount(words[w] & word(item, w));
+    return res;
+  }
+
+  /** Sum of the weights of the transactions of the words that contain the item */
+  public int andCount(final int item, final long[] words, final TransactionWeights weights) {
+    if (weights.isUnit())
+      return andCount(item, words);
+    final int length = Math.min(words.length, nbWords[item]);
+    int res = 0;
+    for (int w = 0; w < length; w++)
+      res += weights.count(words[w] & word(item, w), w);
+    return res;
+  }
+
+  /** The words of the intersection of the words and of the cover of the item (with possibly trailing zero words) */
+  public long[] and(final int item, final long[] words) {
+    final long[] res = new long[Math.min(words.length, nbWords[item])];
+    if (heapWords != null)
+      KERNELS.and(words, heapWords, offsets[item], res, res.length);
+    else
+      for (int w = 0; w < res.length; w++)
+        res[w] = words[w] & word(item, w);
+    return res;
+  }
+
+  /** Writes the words of the intersection of the words and of the cover of the item into `res`, of the same length as the words (that may be `res` itself) */
+  public void and(final int item, final long[] words, final long[] res) {
+    final int length = Math.min(words.length, nbWords[item]);
+    if (heapWords != null)
+      KERNELS.and(words, heapWords, offsets[item], res, length);
+    else
+      for (int w = 0; w < length; w++)
+        res[w] = words[w] & word(item, w);
+    for (int w = length; w < words.length; w++) // The words of the item are 0, but not represented
+      res[w] = 0;
+  }
+
+  /** Whether all the transactions of the words contain the item */
+  public boolean includes(final int item, final long[] words) {
+    final int length = Math.min(words.length, nbWords[item]);
+    for (int w = length; w < words.length; w++) // The words of the item are 0, but not represented
+      if (words[w] != 0)
+        return false;
+    if (heapWords != null)
+      return KERNELS.isSubset(words, heapWords, offsets[item], length);
+    for (int w = 0; w < length; w++)
+      if ((words[w] & ~word(item, w)) != 0)
+        return false;
+    return true;
+  }
+
+  /** A copy of the words of the cover of the item */
+  public long[] toLongArray(final int item) {
+    final long[] res = new long[nbWords[item]];
+    if (heapWords != null)
+      System.arraycopy(heapWords, offsets[item], res, 0, res.length);
+    else {
+      final LongBuffer chunk = chunks[chunkOf[item]].duplicate();
+      chunk.position(offsets[item]);
+      chunk.get(res);
+    }
+    return res;
+  }
+
+  /** A copy of the cover of the item */
+  public BitSet getBitSet(final int item) {
+    return BitSet.valueOf(getWords(item));
+  }
+
+  /** A read-only view on the words of the cover of the item */
+  public LongBuffer getWords(final int item) {
+    final LongBuffer view = heapWords != null ? LongBuffer.wrap(heapWords) : chunks[chunkOf[item]].duplicate();
+    view.position(offsets[item]);
+    view.limit(offsets[item] + nbWords[item]);
+    return view.slice().asReadOnlyBuffer();
+  }
+
+  /** Adds the transaction, that must be in the words of the cover of the item, to the cover */
+  void set(final int item, final int transaction) {
+    setWord(item, transaction >>> 6, word(item, transaction >>> 6) | (1L << transaction));
+  }
+
+  /** Removes the transaction, that must be in the words of the cover of the item, from the cover */
+  void clear(final int item, final int transaction) {
+    setWord(item, transaction >>> 6, word(item, transaction >>> 6) & ~(1L << transaction));
+  }
+
+  private void setWord(final int item, final int w, final long value) {
+    if (heapWords != null)
+      heapWords[offsets[item] + w] = value;
+    else
+      chunks[chunkOf[item]].put(offsets[item] + w, value);
+  }
+}
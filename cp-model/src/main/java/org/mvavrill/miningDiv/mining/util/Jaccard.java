@@ -11,14 +11,31 @@ import java.util.BitSet;
  * This class contains static functions to compute the Jaccard between two sets.
  * There are functions to compute the exact Jaccard, the lower bound, or the upper bound.
  * Every function can be applied on BitSets, and is overloaded to be applied on TransactionSets and ItemSets
+ * The functions on sets of transactions can take the weights of the transactions (see TransactionWeights), the cardinalities being then the sums of the weights.
+ * The functions can also be computed from the cardinalities of the sets and of their intersection, when the sets are not available as BitSets (see ICover).
+ * The functions on TransactionSets go through these counts, so that they do not allocate.
+ * The functions on words (as in TransactionSet.toLongArray()) compute the three cardinalities in a single pass, and write them into an array of 3 ints given by the caller.
  */
 public class Jaccard {
 
   /** The exact Jaccard between two sets $J(A,B) = |A \cap B|/|A \cup B|$ */
   public static double exact(final BitSet b1, final BitSet b2) {
+    return exact(b1, b2, TransactionWeights.UNIT);
+  }
+  /** Exact Jaccard with weighted elements */
+  public static double exact(final BitSet b1, final BitSet b2, final TransactionWeights weights) {
     BitSet intersection = (BitSet) b1.clone();
     intersection.and(b2);
-    return intersection.cardinality() / ((double) b1.cardinality() + b2.cardinality() - intersection.cardinality());
+    return exact(weights.count(b1), weights.count(b2), weights.count(intersection));
+  }
+  /** Exact Jaccard from the cardinalities of A, B and $A \cap B$ */
+  public static double exact(final int size1, final int size2, final int size12) {
+    return size12 / ((double) size1 + size2 - size12);
+  }
+  /** Exact Jaccard working on words, the cardinalities of A, B and $A \cap B$ being written into counts */
+  public static double exact(final long[] w1, final long[] w2, final TransactionWeights weights, final int[] counts) {
+    weights.countAll(w1, w2, counts);
+    return exact(counts[0], counts[1], counts[2]);
   }
   /** Exact Jaccard working on ItemSets */
   public static double exact(final ItemSet i1, final ItemSet i2) {
@@ -26,7 +43,11 @@ public class Jaccard {
   }
   /** Exact Jaccard working on TransactionSets */
   public static double exact(final TransactionSet t1, final TransactionSet t2) {
-    return exact(t1.getTransactions(), t2.getTransactions());
+    return exact(t1.cardinality(), t2.cardinality(), t1.andCount(t2));
+  }
+  /** Exact Jaccard working on weighted TransactionSets */
+  public static double exact(final TransactionSet t1, final TransactionSet t2, final TransactionWeights weights) {
+    return exact(t1.cardinality(weights), t2.cardinality(weights), t1.andCount(t2, weights));
   }
 
   /** A lower bound of the Jaccard, $J_{lb}(A,B) = max(0,\theta - |A\B|)/|A \cup B|
@@ -35,10 +56,24 @@ public class Jaccard {
    * $\forall C$ superset of $A$, then $J_{lb}(C,B) \ge J_{lb}(A,B)$
    */
   public static double lb(final BitSet b1, final BitSet b2, final int theta) {
+    return lb(b1, b2, theta, TransactionWeights.UNIT);
+  }
+  /** Lower bound with weighted elements */
+  public static double lb(final BitSet b1, final BitSet b2, final int theta, final TransactionWeights weights) {
     BitSet covP1 = (BitSet) b1.clone();
     covP1.andNot(b2); // proper cover of 1 under 2
-    int covP1Card = covP1.cardinality();
-    return Math.max(0,theta - covP1Card) / ((double) b2.cardinality() + covP1Card);
+    int covP1Card = weights.count(covP1);
+    return Math.max(0,theta - covP1Card) / ((double) weights.count(b2) + covP1Card);
+  }
+  /** Lower bound from the cardinalities of A, B and $A \cap B$ */
+  public static double lb(final int size1, final int size2, final int size12, final int theta) {
+    int sizeP1 = size1-size12;
+    return Math.max(0,theta - sizeP1) / ((double) size2 + sizeP1);
+  }
+  /** Lower bound working on words, the cardinalities of A, B and $A \cap B$ being written into counts */
+  public static double lb(final long[] w1, final long[] w2, final int theta, final TransactionWeights weights, final int[] counts) {
+    weights.countAll(w1, w2, counts);
+    return lb(counts[0], counts[1], counts[2], theta);
   }
   /** Lower bound working on ItemSets */
   public static double lb(final ItemSet i1, final ItemSet i2, final int theta) {
@@ -46,7 +81,11 @@ public class Jaccard {
   }
   /** Lower bound working on TransactionSets */
   public static double lb(final TransactionSet t1, final TransactionSet t2, final int theta) {
-    return lb(t1.getTransactions(), t2.getTransactions(), theta);
+    return lb(t1.cardinality(), t2.cardinality(), t1.andCount(t2), theta);
+  }
+  /** Lower bound working on weighted TransactionSets */
+  public static double lb(final TransactionSet t1, final TransactionSet t2, final int theta, final TransactionWeights weights) {
+    return lb(t1.cardinality(weights), t2.cardinality(weights), t1.andCount(t2, weights), theta);
   }
 
   /** An upper bound of the Jaccard, $J_{ub}(A,B) = |A \cap B|/(|A|+max(theta-|A \cap B|, 0)
@@ -55,9 +94,23 @@ public class Jaccard {
    * $\forall C$ superset of $A$, then $J_{ub}(C,B) \le J_{ub}(A,B)$
    */
   public static double ub(final BitSet b1, final BitSet b2, final int theta) {
+    return ub(b1, b2, theta, TransactionWeights.UNIT);
+  }
+  /** Upper bound with weighted elements */
+  public static double ub(final BitSet b1, final BitSet b2, final int theta, final TransactionWeights weights) {
     BitSet cov1and2 = (BitSet) b1.clone();
     cov1and2.and(b2); // intersection of covers
-    return cov1and2.cardinality() / ((double) b1.cardinality() + Math.max(theta-cov1and2.cardinality(),0));
+    int cov1and2Card = weights.count(cov1and2);
+    return cov1and2Card / ((double) weights.count(b1) + Math.max(theta-cov1and2Card,0));
+  }
+  /** Upper bound from the cardinalities of A and $A \cap B$ */
+  public static double ub(final int size1, final int size12, final int theta) {
+    return size12 / ((double) size1 + Math.max(theta-size12,0));
+  }
+  /** Upper bound working on words, the cardinalities of A, B and $A \cap B$ being written into counts */
+  public static double ub(final long[] w1, final long[] w2, final int theta, final TransactionWeights weights, final int[] counts) {
+    weights.countAll(w1, w2, counts);
+    return ub(counts[0], counts[2], theta);
   }
   /** Upper bound working on ItemSets */
   public static double ub(final ItemSet i1, final ItemSet i2, final int theta) {
@@ -65,27 +118,49 @@ public class Jaccard {
   }
   /** Upper bound working on TransactionSets */
   public static double ub(final TransactionSet t1, final TransactionSet t2, final int theta) {
-    return ub(t1.getTransactions(), t2.getTransactions(), theta);
+    return ub(t1.cardinality(), t1.andCount(t2), theta);
+  }
+  /** Upper bound working on weighted TransactionSets */
+  public static double ub(final TransactionSet t1, final TransactionSet t2, final int theta, final TransactionWeights weights) {
+    return ub(t1.cardinality(weights), t1.andCount(t2, weights), theta);
   }
 
   /** Return both the lb and the ub */
   public static Pair<Double,Double> lbAndUb(final BitSet b1, final BitSet b2, final int theta) {
+    return lbAndUb(b1, b2, theta, TransactionWeights.UNIT);
+  }
+  /** Return both the lb and the ub, with weighted elements */
+  public static Pair<Double,Double> lbAndUb(final BitSet b1, final BitSet b2, final int theta, final TransactionWeights weights) {
     BitSet cov1and2 = (BitSet) b1.clone();
     cov1and2.and(b2); // proper cover of 1 under 2
-    int size1 = b1.cardinality();
-    int size2 = b2.cardinality();
-    int size12 = cov1and2.cardinality();
+    return lbAndUb(weights.count(b1), weights.count(b2), weights.count(cov1and2), theta);
+    //return new Pair<Double,Double>(lb(b1,b2,theta), ub(b1,b2,theta));
+  }
+  /** Return both the lb and the ub, from the cardinalities of A, B and $A \cap B$ */
+  public static Pair<Double,Double> lbAndUb(final int size1, final int size2, final int size12, final int theta) {
     int sizeP1 = size1-size12;
-    int sizeP2 = size2-size12;
     return new Pair<Double,Double>(Math.max(0,theta-sizeP1)/((double) size2+sizeP1), size12/((double) size1+Math.max(theta-size12,0)));
-    //return new Pair<Double,Double>(lb(b1,b2,theta), ub(b1,b2,theta));
   }
-  /** Upper bound working on ItemSets */
+  /** Writes the lb into bounds[0] and the ub into bounds[1], from the cardinalities of A, B and $A \cap B$. Unlike the functions returning a Pair, it does not allocate */
+  public static void lbAndUb(final int size1, final int size2, final int size12, final int theta, final double[] bounds) {
+    bounds[0] = lb(size1, size2, size12, theta);
+    bounds[1] = ub(size1, size12, theta);
+  }
+  /** Writes the lb into bounds[0] and the ub into bounds[1], working on words, the cardinalities of A, B and $A \cap B$ being written into counts */
+  public static void lbAndUb(final long[] w1, final long[] w2, final int theta, final TransactionWeights weights, final int[] counts, final double[] bounds) {
+    weights.countAll(w1, w2, counts);
+    lbAndUb(counts[0], counts[1], counts[2], theta, bounds);
+  }
+  /** Both bounds working on ItemSets */
   public static Pair<Double,Double> lbAndUb(final ItemSet i1, final ItemSet i2, final int theta) {
     return lbAndUb(i1.getBitSet(), i2.getBitSet(), theta);
   }
-  /** Upper bound working on TransactionSets */
+  /** Both bounds working on TransactionSets */
   public static Pair<Double,Double> lbAndUb(final TransactionSet t1, final TransactionSet t2, final int theta) {
-    return lbAndUb(t1.getTransactions(), t2.getTransactions(), theta);
+    return lbAndUb(t1.cardinality(), t2.cardinality(), t1.andCount(t2), theta);
+  }
+  /** Both bounds working on weighted TransactionSets */
+  public static Pair<Double,Double> lbAndUb(final TransactionSet t1, final TransactionSet t2, final int theta, final TransactionWeights weights) {
+    return lbAndUb(t1.cardinality(weights), t2.cardinality(weights), t1.andCount(t2, weights), theta);
   }
 }
@@ -0,0 +1,88 @@
+package org.mvavrill.miningDiv.mining.util;
+
+/**
+ * The word kernels (see WordKernels) with plain loops, used when the vectorized ones are not available.
+ * @author Mathieu Vavrille
+ */
+public class ScalarWordKernels implements WordKernels {
+
+  @Override
+  public int count(final long[] a, final int length) {
+    int res = 0;
+    for (int w = 0; w < length; w++)
+      res += Long.bitCount(a[w]);
+    return res;
+  }
+
+  @Override
+  public int andCount(final long[] a, final long[] b, final int length) {
+    int res = 0;
+    for (int w = 0; w < length; w++)
+      res += Long.bitCount(a[w] & b[w]);
+    return res;
+  }
+
+  @Override
+  public int andCount(final long[] a, final long[] b, final long[] c, final int length) {
+    int res = 0;
+    for (int w = 0; w < length; w++)
+      res += Long.bitCount(a[w] & b[w] & c[w]);
+    return res;
+  }
+
+  @Override
+  public int andCount(final long[] a, final long[] b, final int bFrom, final int length) {
+    int res = 0;
+    for (int w = 0; w < length; w++)
+      res += Long.bitCount(a[w] & b[bFrom + w]);
+    return res;
+  }
+
+  @Override
+  public void and(final long[] a, final long[] b, final int bFrom, final long[] dst, final int length) {
+    for (int w = 0; w < length; w++)
+      dst[w] = a[w] & b[bFrom + w];
+  }
+
+  @Override
+  public boolean isSubset(final long[] a, final long[] b, final int bFrom, final int length) {
+    for (int w = 0; w < length; w++)
+      if ((a[w] & ~b[bFrom + w]) != 0)
+        return false;
+    return true;
+  }
+
+  @Override
+  public void countAll(final long[] a, final long[] b, final int length, final int[] counts) {
+    int countA = 0;
+    int countB = 0;
+    int countAB = 0;
+    for (int w = 0; w < length; w++) {
+      countA += Long.bitCount(a[w]);
+      countB += Long.bitCount(b[w]);
+      countAB += Long.bitCount(a[w] & b[w]);
+    }
+    counts[0] = countA;
+    counts[1] = countB;
+    counts[2] = countAB;
+  }
+
+  @Override
+  public void and(final long[] a, final long[] b, final long[] dst, final int length) {
+    for (int w = 0; w < length; w++)
+      dst[w] = a[w] & b[w];
+  }
+
+  @Override
+  public boolean isSubset(final long[] a, final long[] b, final int length) {
+    for (int w = 0; w < length; w++)
+      if ((a[w] & ~b[w]) != 0)
+        return false;
+    return true;
+  }
+
+  @Override
+  public String getName() {
+    return "scalar";
+  }
+}
@@ -0,0 +1,121 @@
+package org.mvavrill.miningDiv.mining.util;
+
+import java.util.BitSet;
+
+/**
+ * The multiplicities of the transactions of a dataset, used when identical transactions are merged into a single one.
+ * The cardinality of a set of transactions is then the sum of their weights.
+ * The weights are stored as bit planes: the word `planes[k][w]` contains the k-th bit of the weights of the transactions 64w to 64w+63,
+ * so that the weighted cardinality of a word is $\sum_k 2^k popcount(word \& planes[k][w])$.
+ * @author Mathieu Vavrille
+ */
+public class TransactionWeights {
+
+  /** The weights when all the transactions have weight 1. The counts are then plain popcounts */
+  public static final TransactionWeights UNIT = new TransactionWeights();
+  private static final WordKernels KERNELS = WordKernels.get();
+
+  private final long[][] planes; // null for UNIT
+  private final int[] weights;
+  private final int totalWeight;
+
+  private TransactionWeights() {
+    this.planes = null;
+    this.weights = null;
+    this.totalWeight = -1;
+  }
+
+  /** @param weights the weight (strictly positive) of every transaction */
+  public TransactionWeights(final int[] weights) {
+    this.weights = weights;
+    int maxWeight = 0;
+    int total = 0;
+    for (int weight : weights) {
+      maxWeight = Math.max(maxWeight, weight);
+      total += weight;
+    }
+    this.totalWeight = total;
+    final int nbWords = (weights.length + 63) >>> 6;
+    planes = new long[32 - Integer.numberOfLeadingZeros(maxWeight)][nbWords];
+    for (int t = 0; t < weights.length; t++) {
+      for (int k = 0; k < planes.length; k++) {
+        if ((weights[t] & (1 << k)) != 0)
+          planes[k][t >>> 6] |= 1L << t;
+      }
+    }
+  }
+
+  public boolean isUnit() {
+    return planes == null;
+  }
+
+  public int getWeight(final int transaction) {
+    return planes == null ? 1 : weights[transaction];
+  }
+
+  /** The sum of all the weights, i.e. the number of transactions before merging. Only defined if not UNIT */
+  public int getTotalWeight() {
+    if (planes == null)
+      throw new IllegalStateException("The total weight of the unit weights is the number of transactions");
+    return totalWeight;
+  }
+
+  /** Weighted cardinality of the word at index `wordIndex` of a set of transactions */
+  public int count(final long word, final int wordIndex) {
+    if (planes == null)
+      return Long.bitCount(word);
+    int res = 0;
+    for (int k = 0; k < planes.length; k++)
+      res += Long.bitCount(word & planes[k][wordIndex]) << k;
+    return res;
+  }
+
+  /** Weighted cardinality of a set of transactions */
+  public int count(final long[] words) {
+    if (planes == null)
+      return KERNELS.count(words, words.length);
+    final int length = Math.min(words.length, (weights.length + 63) >>> 6);
+    int res = 0;
+    for (int k = 0; k < planes.length; k++)
+      res += KERNELS.andCount(words, planes[k], length) << k;
+    return res;
+  }
+
+  /** Weighted cardinality of the intersection of two sets of transactions */
+  public int andCount(final long[] words1, final long[] words2) {
+    final int length = Math.min(words1.length, words2.length);
+    if (planes == null)
+      return KERNELS.andCount(words1, words2, length);
+    final int planesLength = Math.min(length, (weights.length + 63) >>> 6);
+    int res = 0;
+    for (int k = 0; k < planes.length; k++)
+      res += KERNELS.andCount(words1, words2, planes[k], planesLength) << k;
+    return res;
+  }
+
+  /**
+   * Writes the weighted cardinalities of two sets of transactions and of their intersection into counts[0], counts[1] and counts[2].
+   * With the unit weights, the three are computed in a single pass over the words.
+   */
+  public void countAll(final long[] words1, final long[] words2, final int[] counts) {
+    if (planes != null) {
+      counts[0] = count(words1);
+      counts[1] = count(words2);
+      counts[2] = andCount(words1, words2);
+      return;
+    }
+    final int length = Math.min(words1.length, words2.length);
+    KERNELS.countAll(words1, words2, length, counts);
+    for (int w = length; w < words1.length; w++)
+      counts[0] += Long.bitCount(words1[w]);
+    for (int w = length; w < words2.length; w++)
+      counts[1] += Long.bitCount(words2[w]);
+  }
+
+  /** Weighted cardinality of a set of transactions */
+  public int count(final BitSet transactions) {
+    if (planes == null)
+      return transactions.cardinality();
+    return count(transactions.toLongArray());
+  }
+}
@@ -0,0 +1,44 @@
+package org.mvavrill.miningDiv.mining.util;
+
+import java.util.BitSet;
+
+/**
+ * The result of a move of a sliding window (see DataSet.slide).
+ * The changed slots are the transactions that were appended, whether they took the slot of an expired transaction or a free one.
+ * @author Mathieu Vavrille
+ */
+public class WindowUpdate {
+  private final BitSet changedSlots;
+  private final int nbAppended;
+  private final int nbExpired;
+  private final long updateTime;
+
+  public WindowUpdate(final BitSet changedSlots, final int nbAppended, final int nbExpired, final long updateTime) {
+    this.changedSlots = changedSlots;
+    this.nbAppended = nbAppended;
+    this.nbExpired = nbExpired;
+    this.updateTime = updateTime;
+  }
+
+  public BitSet getChangedSlots() {
+    return (BitSet) changedSlots.clone();
+  }
+
+  public int getNbAppended() {
+    return nbAppended;
+  }
+
+  public int getNbExpired() {
+    return nbExpired;
+  }
+
+  /** The time (in nanoseconds) to update the covers of the dataset */
+  public long getUpdateTime() {
+    return updateTime;
+  }
+
+  @Override
+  public String toString() {
+    return "+" + nbAppended + " -" + nbExpired + " transactions";
+  }
+}
@@ -0,0 +1,64 @@
+package org.mvavrill.miningDiv.mining.util;
+
+/**
+ * The operations on the words of sets of transactions (as in BitSet.toLongArray()) that all the covers computations come down to.
+ * Every operation works on the first `length` words of its arrays, that must all have at least `length` words.
+ * The operations with an offset `bFrom` read the words of b from bFrom, so that b can be the store of the covers of all the items (see ItemsCovers).
+ * The implementation is chosen once, when the class is loaded (see get()): the vectorized one (VectorWordKernels, using jdk.incubator.vector) if it is in the build
+ * and if the JVM was started with `--add-modules jdk.incubator.vector`, the scalar one otherwise.
+ * The scalar implementation can be forced with `-DminingDiv.kernels=scalar`.
+ * @author Mathieu Vavrille
+ */
+public interface WordKernels {
+
+  /** Number of bits of a[0..length) */
+  public int count(final long[] a, final int length);
+
+  /** Number of bits of a[0..length) & b[0..length) */
+  public int andCount(final long[] a, final long[] b, final int length);
+
+  /** Number of bits of a[0..length) & b[0..length) & c[0..length) */
+  public int andCount(final long[] a, final long[] b, final long[] c, final int length);
+
+  /** Number of bits of a[0..length) & b[bFrom..bFrom+length) */
+  public int andCount(final long[] a, final long[] b, final int bFrom, final int length);
+
+  /** Writes a[0..length) & b[bFrom..bFrom+length) into dst[0..length) */
+  public void and(final long[] a, final long[] b, final int bFrom, final long[] dst, final int length);
+
+  /** Checks if a[0..length) is included in b[bFrom..bFrom+length) */
+  public boolean isSubset(final long[] a, final long[] b, final int bFrom, final int length);
+
+  /** Writes the numbers of bits of a[0..length), of b[0..length) and of their intersection into counts[0], counts[1] and counts[2], in a single pass */
+  public void countAll(final long[] a, final long[] b, final int length, final int[] counts);
+
+  /** Writes a[0..length) & b[0..length) into dst[0..length) */
+  public void and(final long[] a, final long[] b, final long[] dst, final int length);
+
+  /** Checks if a[0..length) is included in b[0..length) */
+  public boolean isSubset(final long[] a, final long[] b, final int length);
+
+  /** The name of the implementation */
+  public String getName();
+
+  /** The kernels used by the covers */
+  public static WordKernels get() {
+    return Holder.KERNELS;
+  }
+
+  final class Holder {
+    private static final WordKernels KERNELS = load();
+
+    private Holder() {}
+
+    private static WordKernels load() {
+      if ("scalar".equals(System.getProperty("miningDiv.kernels")))
+        return new ScalarWordKernels();
+      try { // The class is only in the builds with the vector profile, and needs the incubator module at runtime
+        return (WordKernels) Class.forName("org.mvavrill.miningDiv.mining.util.VectorWordKernels").getDeclaredConstructor().newInstance();
+      } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+        return new ScalarWordKernels();
+      }
+    }
+  }
+}
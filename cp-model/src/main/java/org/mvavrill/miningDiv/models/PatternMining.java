@@ -5,7 +5,10 @@ import org.mvavrill.miningDiv.mining.models.closedpatterns.ClosedPatternsBacktra
 import org.mvavrill.miningDiv.mining.models.closeddiversity.ClosedDiversity;
 import org.mvavrill.miningDiv.mining.models.closeddiversity.ClosedDiversityBacktrack;
 import org.mvavrill.miningDiv.mining.util.DataSet;
+import org.mvavrill.miningDiv.mining.util.ICover;
 import org.mvavrill.miningDiv.mining.structures.History;
+import org.mvavrill.miningDiv.mining.structures.HistoryLSH;
+import org.mvavrill.miningDiv.mining.structures.ItemsetCover;
 import org.mvavrill.miningDiv.mining.models.*;
 
 import org.chocosolver.solver.Model;
@@ -23,6 +26,7 @@ import org.chocosolver.solver.variables.BoolVar;
 import org.chocosolver.solver.variables.IntVar;
 
 import java.io.IOException;
+import java.util.BitSet;
 import java.util.Random;
 
 /**
@@ -37,11 +41,16 @@ public class PatternMining extends ModelGenerator {
   private final int minFreq; // The minimum frequency for patterns
   private final boolean useBacktrackStructure; // Whether or not to use the backtrackable BitSets
   private final boolean doWeakConsistencyClosedPattern; // Whether or not do do the weak consistency of closedPattern (do not enforce rule 3)
+  private String coverStructure = "sparse"; // The structure of the cover in the backtrackable propagators, see ICover.make
 
   // Closed Diversity
   private final double jMax; // The maximum Jaccard distance between solutions
   private final boolean checkRealJaccard; // Whether or not to check the real Jaccard distance on solutions
   private final boolean checkUB;
+  private int lshBands = 0; // The parameters of the LSH index of the history, not used if lshBands is 0 (see setHistoryLSH)
+  private int lshRows;
+  private int lshBits;
+  private HistoryLSH historyLSH = null;
 
   // Strategy based
   private final String searchStrategy; // The search strategy to use. Can be 'inputOrder', 'oriented', 'random', 'randomOne' (selects a random variable and instantiate it to 1
@@ -49,6 +58,7 @@ public class PatternMining extends ModelGenerator {
   private final Random random; // Random number generator. Used in the strategies 'random', 'randomOne', and 'oriented' (if random==null, then the oriented strategy will be deterministic
   
   private History currentHistory = null; // The current history. Erased at model generation, it can be accessed through getHistory().
+  private History initialHistory = null; // Itemsets put at the start of the history at model generation, see setInitialHistory
   
   public static PatternMining baseModel(final DataSet dataset, final int minFreq) {
     return PatternMining.baseModel(dataset, minFreq, true, true);
@@ -91,18 +101,64 @@ public class PatternMining extends ModelGenerator {
     this.random = random;
   }
   
+  /**
+   * Sets the structure of the cover of the current itemset in the backtrackable propagators.
+   * "sparse" (default) stores the full cover and only goes through its non-zero words, "bitset" goes through all the words and trails them one by one, "stack" copies all the words once per world, "diffset" stores the differences with the parent nodes, which is faster on dense datasets
+   */
+  public PatternMining setCoverStructure(final String coverStructure) {
+    this.coverStructure = coverStructure;
+    return this;
+  }
+
+  /**
+   * Uses a locality sensitive hashing index of the covers of the history in the closed diversity propagator, so that the nodes that are not leaves are only checked against the itemsets of the history with a similar cover (see HistoryLSH).
+   * The leaves are still checked against all the history, so that the solutions are diverse, but the search may explore more nodes, and find the solutions in another order.
+   * @param nbBands the number of bands of the signatures, 0 to check all the history at every node (default)
+   */
+  public PatternMining setHistoryLSH(final int nbBands, final int nbRows, final int nbBits) {
+    this.lshBands = nbBands;
+    this.lshRows = nbRows;
+    this.lshBits = nbBits;
+    return this;
+  }
+
+  /** The LSH index of the history of the last model generated, null if it does not use one. It gives the number of candidates (see HistoryLSH.getStatistics) */
+  public HistoryLSH getHistoryLSH() {
+    return historyLSH;
+  }
+
+  /**
+   * Sets the itemsets the history starts with. The search will not find them again, and (for closed diversity) only looks for itemsets that are diverse from them.
+   * It allows to restart a search from the itemsets that are still valid after the dataset changed (see History.extractStillValid).
+   */
+  public PatternMining setInitialHistory(final History initialHistory) {
+    this.initialHistory = initialHistory;
+    return this;
+  }
+
   @Override
   public ModelAndVars generateModelAndVars() {
     final Model model = createModel("ClosedPattern");
     final BoolVar[] vars = model.boolVarArray("item", dataset.getNbrVar());
     model.sum(vars, ">=", 1).post();
     currentHistory = new History(model, dataset, vars);
+    if (initialHistory != null) {
+      for (int i = 0; i < initialHistory.size(); i++) {
+        ItemsetCover initialItemset = initialHistory.get(i);
+        currentHistory.add(initialItemset);
+        BitSet items = initialItemset.getItemSet().getBitSet();
+        BoolVar[] literals = new BoolVar[vars.length]; // At least one variable differs from the itemset
+        for (int item = 0; item < vars.length; item++)
+          literals[item] = items.get(item) ? vars[item].not() : vars[item];
+        model.addClausesBoolOrArrayEqualTrue(literals);
+      }
+    }
     // Main constraint
     FreeItemsExtensions itemsExtensions;
     Constraint closed;
     if (jMax < 0) { // Base closed pattern
       if (useBacktrackStructure) {
-        itemsExtensions = new ClosedPatternsBacktrack(dataset, minFreq, vars, doWeakConsistencyClosedPattern);
+        itemsExtensions = new ClosedPatternsBacktrack(dataset, minFreq, vars, doWeakConsistencyClosedPattern, ICover.make(model, dataset, coverStructure));
         closed = new Constraint("Closed Patterns Backtrack", (ClosedPatternsBacktrack) itemsExtensions);
       }
       else {
@@ -112,7 +168,10 @@ public class PatternMining extends ModelGenerator {
     }
     else { // closed diversity
       if (useBacktrackStructure) {
-        itemsExtensions = new ClosedDiversityBacktrack(dataset, currentHistory, minFreq, jMax, vars, doWeakConsistencyClosedPattern, checkRealJaccard, checkUB);
+        itemsExtensions = new ClosedDiversityBacktrack(dataset, currentHistory, minFreq, jMax, vars, doWeakConsistencyClosedPattern, checkRealJaccard, checkUB, ICover.make(model, dataset, coverStructure));
+        historyLSH = lshBands > 0 ? new HistoryLSH(lshBands, lshRows, lshBits) : null;
+        if (historyLSH != null)
+          ((ClosedDiversityBacktrack) itemsExtensions).setHistoryLSH(historyLSH);
         closed = new Constraint("Closed Diversity Backtrack", (ClosedDiversityBacktrack) itemsExtensions);
       }
       else {
@@ -126,7 +185,7 @@ public class PatternMining extends ModelGenerator {
     if (searchStrategy.equals("inputOrder"))
       solver.setSearch(Search.inputOrderUBSearch(vars));//Search.intVarSearch(new ReverseOrder<>(model), new IntDomainMax(), vars));
     else if (searchStrategy.equals("minCov"))
-      solver.setSearch(Search.intVarSearch(new MinCovVarSelector<IntVar>(itemsExtensions), new IntDomainMax(), vars));
+      solver.setSearch(Search.intVarSearch(new MinCovVarSelector<IntVar>(itemsExtensions, dataset.getWeights()), new IntDomainMax(), vars));
     else {
       solver.setRestartOnSolutions();
       solver.setNoGoodRecordingFromRestarts();
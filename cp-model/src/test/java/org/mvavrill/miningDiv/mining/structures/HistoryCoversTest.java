@@ -0,0 +1,146 @@
+package org.mvavrill.miningDiv.mining.structures;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import org.mvavrill.miningDiv.mining.util.Jaccard;
+import org.mvavrill.miningDiv.mining.util.TransactionWeights;
+
+import java.util.BitSet;
+import java.util.Random;
+
+public class HistoryCoversTest {
+
+  private static final int NB_TRANSACTIONS = 300;
+  private static final double[] J_MAXS = {0., 0.2, 0.5, 0.8};
+
+  /** A random cover, of density between 0 and 0.5 so that the cardinalities are spread */
+  private static TransactionSet randomCover(final Random random) {
+    final double density = 0.5 * random.nextDouble();
+    final BitSet cover = new BitSet(NB_TRANSACTIONS);
+    for (int t = 0; t < NB_TRANSACTIONS; t++)
+      if (random.nextDouble() < density)
+        cover.set(t);
+    return new TransactionSet(cover);
+  }
+
+  /** The cover with a few transactions flipped, so that its Jaccard with the cover is high */
+  private static TransactionSet perturbedCover(final Random random, final TransactionSet cover) {
+    final BitSet res = BitSet.valueOf(cover.toLongArray());
+    for (int k = random.nextInt(4); k > 0; k--)
+      res.flip(random.nextInt(NB_TRANSACTIONS));
+    return new TransactionSet(res);
+  }
+
+  /** A cover to check against the history: a random one, or one close to an element of the history */
+  private static TransactionSet randomQuery(final Random random, final History history) {
+    return history.size() == 0 || random.nextBoolean() ? randomCover(random) : perturbedCover(random, history.get(random.nextInt(history.size())).getCover());
+  }
+
+  private static void addRandomElements(final Random random, final History history, final int nbElements) {
+    for (int k = 0; k < nbElements; k++)
+      history.add(new ItemsetCover(new ItemSet(new BitSet()), randomQuery(random, history)));
+  }
+
+  /** The Jaccard, or its lower bound, of X and the element i, computed from the covers */
+  private static double plainJaccard(final TransactionSet coverX, final History history, final int i, final boolean exact, final int theta) {
+    final TransactionSet coverH = history.get(i).getCover();
+    return exact ? Jaccard.exact(coverX, coverH) : Jaccard.lb(coverX, coverH, theta);
+  }
+
+  /** Whether the plain loop over the elements from `from` finds a violation */
+  private static boolean plainViolation(final TransactionSet coverX, final History history, final boolean exact, final int theta, final double jMax, final int from) {
+    for (int i = from; i < history.size(); i++)
+      if (HistoryCovers.violates(plainJaccard(coverX, history, i, exact, theta), jMax))
+        return true;
+    return false;
+  }
+
+  /** The element found violates jMax, and one is found whenever the plain loop finds one */
+  private static void assertSameViolation(final String message, final int found, final TransactionSet coverX, final History history, final boolean exact, final int theta, final double jMax, final int from) {
+    assertEquals(message, plainViolation(coverX, history, exact, theta, jMax, from), found != -1);
+    if (found != -1) {
+      assertTrue(message, found >= from);
+      assertTrue(message, HistoryCovers.violates(plainJaccard(coverX, history, found, exact, theta), jMax));
+    }
+  }
+
+  /** The cardinality intervals (mayViolateLB and nbMayViolateLB) never exclude a violating element, and the searches of a violation agree with a plain loop calling Jaccard */
+  @Test
+  public void testViolationsAgainstPlainLoop() {
+    final Random random = new Random(47);
+    final History history = new History();
+    final HistoryCovers historyCovers = new HistoryCovers(history, TransactionWeights.UNIT);
+    for (int round = 0; round < 10; round++) {
+      addRandomElements(random, history, 30); // The history grows between the queries
+      for (int query = 0; query < 50; query++) {
+        final TransactionSet coverX = randomQuery(random, history);
+        final int sizeX = coverX.cardinality();
+        final int theta = random.nextInt(Math.max(1, sizeX));
+        final int from = random.nextInt(4) == 0 ? random.nextInt(history.size()) : 0;
+        for (double jMax : J_MAXS) {
+          final String message = "round " + round + ", query " + query + ", jMax " + jMax;
+          int nbViolating = 0;
+          for (int i = 0; i < history.size(); i++) {
+            if (HistoryCovers.violates(plainJaccard(coverX, history, i, false, theta), jMax)) {
+              assertTrue(message + ", element " + i, historyCovers.mayViolateLB(sizeX, i, theta, jMax));
+              nbViolating++;
+            }
+          }
+          assertTrue(message, historyCovers.nbMayViolateLB(sizeX, theta, jMax) >= nbViolating);
+          assertSameViolation(message, historyCovers.findLBViolation(coverX, theta, jMax, from), coverX, history, false, theta, jMax, from);
+          assertSameViolation(message, historyCovers.findLBViolation(sizeX, i -> coverX.andCount(historyCovers.getWords(i)), theta, jMax, from), coverX, history, false, theta, jMax, from);
+          assertSameViolation(message, historyCovers.findExactViolation(coverX, jMax, from), coverX, history, true, 0, jMax, from);
+          assertSameViolation(message, historyCovers.findExactViolation(sizeX, i -> coverX.andCount(historyCovers.getWords(i)), jMax, from), coverX, history, true, 0, jMax, from);
+        }
+        double maxJaccard = 0.;
+        int argMax = -1;
+        for (int i = from; i < history.size(); i++) {
+          final double jaccard = plainJaccard(coverX, history, i, true, 0);
+          if (argMax == -1 || jaccard > maxJaccard) {
+            maxJaccard = jaccard;
+            argMax = i;
+          }
+        }
+        assertEquals(maxJaccard, historyCovers.maxBound(coverX, true, 0, from), 1e-12);
+        assertEquals(argMax, historyCovers.argMaxBound(coverX, true, 0, from));
+      }
+    }
+  }
+
+  /**
+   * With many bands of a single row, the candidates of the LSH index keep every element that violates a high jMax, and the search in the candidates agrees with a plain loop.
+   * The index is filled with the history it was added to, and then follows its growth.
+   */
+  @Test
+  public void testCandidatesKeepViolations() {
+    final Random random = new Random(53);
+    final History history = new History();
+    final HistoryCovers historyCovers = new HistoryCovers(history, TransactionWeights.UNIT);
+    addRandomElements(random, history, 50);
+    final HistoryLSH lsh = new HistoryLSH(16, 1, 32);
+    historyCovers.addIndex(lsh);
+    final double jMax = 0.8;
+    for (int round = 0; round < 5; round++) {
+      addRandomElements(random, history, 30);
+      for (int query = 0; query < 50; query++) {
+        final TransactionSet coverX = randomQuery(random, history);
+        final int sizeX = coverX.cardinality();
+        final int theta = sizeX;
+        final String message = "round " + round + ", query " + query;
+        historyCovers.size(); // The index has all the history
+        assertEquals(message, history.size(), lsh.size());
+        lsh.selectCandidates(coverX.getWords());
+        for (int i = 0; i < history.size(); i++) {
+          if (history.get(i).getCover().equals(coverX))
+            assertTrue(message + ", identical element " + i, lsh.isCandidate(i));
+          if (HistoryCovers.violates(plainJaccard(coverX, history, i, false, theta), jMax))
+            assertTrue(message + ", violating element " + i, lsh.isCandidate(i));
+        }
+        assertSameViolation(message, historyCovers.findLBViolationInCandidates(sizeX, i -> coverX.andCount(historyCovers.getWords(i)), theta, jMax, 0, lsh::isCandidate), coverX, history, false, theta, jMax, 0);
+      }
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package org.mvavrill.miningDiv.mining.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+public class DataSetCacheTest {
+
+  private static void assertSameDataSet(final DataSet expected, final DataSet actual) {
+    assertEquals(expected.getNbrVar(), actual.getNbrVar());
+    assertEquals(expected.getNbTransactions(), actual.getNbTransactions());
+    assertEquals(expected.getMaxItem(), actual.getMaxItem());
+    for (int item = 0; item < expected.getNbrVar(); item++) {
+      assertEquals(expected.getOriginalItem(item), actual.getOriginalItem(item));
+      assertEquals(expected.getSupport(item), actual.getSupport(item));
+      assertArrayEquals("item " + item, expected.getItemsCovers().toLongArray(item), actual.getItemsCovers().toLongArray(item));
+    }
+  }
+
+  @Test
+  public void testCoversAreServedFromTheMapping() throws IOException {
+    final String path = TestDataSets.write(TestDataSets.random(new Random(1), 700, 40, 0.3));
+    final DataSetCache first = new DataSetCache(path);
+    assertTrue(first.wasRebuilt());
+    final DataSetCache second = new DataSetCache(path);
+    assertFalse(second.wasRebuilt());
+    assertTrue(first.getItemsCovers().isOffHeap());
+    assertTrue(second.getItemsCovers().isOffHeap());
+    assertSameDataSet(new DataSet(path, new DataSetOptions()), new DataSet(path, new DataSetOptions().setUseCache(true)));
+  }
+
+  @Test
+  public void testPrunedItemsShareTheMapping() throws IOException {
+    final String path = TestDataSets.write(TestDataSets.random(new Random(2), 500, 60, 0.2));
+    final DataSet cached = new DataSet(path, new DataSetOptions().setUseCache(true).setPruning(19., true));
+    assertTrue(cached.getItemsCovers().isOffHeap());
+    assertSameDataSet(new DataSet(path, new DataSetOptions().setPruning(19., true)), cached);
+  }
+
+  @Test
+  public void testMergedTransactionsAreRebuiltOnTheHeap() throws IOException {
+    final String path = TestDataSets.write(TestDataSets.random(new Random(3), 500, 12, 0.5));
+    final DataSet cached = new DataSet(path, new DataSetOptions().setUseCache(true).setPruning(10., false).setCollapseDuplicates(true).setReorderTransactions(true));
+    assertFalse(cached.getItemsCovers().isOffHeap());
+    assertSameDataSet(new DataSet(path, new DataSetOptions().setPruning(10., false).setCollapseDuplicates(true).setReorderTransactions(true)), cached);
+  }
+
+  @Test
+  public void testStaleCacheIsRebuilt() throws IOException {
+    final String path = TestDataSets.write("1 2\n2 3\n");
+    new DataSetCache(path);
+    Files.write(Paths.get(path), "1 2 3\n2 3\n3\n".getBytes(StandardCharsets.US_ASCII));
+    final DataSetCache cache = new DataSetCache(path);
+    assertTrue(cache.wasRebuilt());
+    assertEquals(3, cache.getNbTransactions());
+    assertArrayEquals(new int[] {1, 2, 3}, cache.getItemsSupports());
+  }
+
+  /** A corrupted cover is not detected when the cache is opened, since only the header is read, but with `verify` */
+  @Test
+  public void testCorruptedCacheIsRebuiltWhenVerified() throws IOException {
+    final String path = TestDataSets.write(TestDataSets.random(new Random(4), 300, 10, 0.5));
+    new DataSetCache(path);
+    final File cacheFile = new File(path + DataSetCache.EXTENSION);
+    try (RandomAccessFile file = new RandomAccessFile(cacheFile, "rw")) { // flip a bit of the last word
+      file.seek(file.length() - 1);
+      final int b = file.read();
+      file.seek(file.length() - 1);
+      file.write(b ^ 1);
+    }
+    assertFalse(new DataSetCache(path).wasRebuilt());
+    assertTrue(new DataSetCache(path, true).wasRebuilt());
+    assertFalse(new DataSetCache(path, true).wasRebuilt());
+    assertSameDataSet(new DataSet(path, new DataSetOptions()), new DataSet(path, new DataSetOptions().setUseCache(true)));
+  }
+}
@@ -0,0 +1,210 @@
+package org.mvavrill.miningDiv.mining.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+public class FimiParserTest {
+
+  /** The covers of the items as parsed by the BufferedReader loader that FimiParser replaced, with the number of transactions as last element */
+  private static List<BitSet> readerCovers(final String path) throws IOException {
+    final List<BitSet> covers = new ArrayList<BitSet>();
+    int nbTransactions = 0;
+    try (BufferedReader br = new BufferedReader(new FileReader(path))) {
+      String line;
+      while ((line = br.readLine()) != null) {
+        if (line.equals("[EOF]"))
+          break;
+        if (line.isEmpty() || line.charAt(0) == '#' || line.charAt(0) == '%' || line.charAt(0) == '@')
+          continue;
+        final StringTokenizer tokens = new StringTokenizer(line, " ");
+        while (tokens.hasMoreTokens()) {
+          final int item = Integer.parseInt(tokens.nextToken()) - 1;
+          while (covers.size() <= item)
+            covers.add(new BitSet());
+          covers.get(item).set(nbTransactions);
+        }
+        nbTransactions++;
+      }
+    }
+    final BitSet count = new BitSet();
+    count.set(0, nbTransactions);
+    covers.add(count);
+    return covers;
+  }
+
+  private static void assertSameAsReader(final String path, final FimiParser parser) throws IOException {
+    final List<BitSet> expected = readerCovers(path);
+    final int maxItem = expected.size() - 1;
+    assertEquals(expected.get(maxItem).cardinality(), parser.getNbTransactions());
+    assertEquals(maxItem, parser.getMaxItem());
+    assertEquals(maxItem, parser.getItemsCovers().length);
+    for (int item = 0; item < maxItem; item++) {
+      assertArrayEquals("item " + (item + 1), expected.get(item).toLongArray(), parser.getItemsCovers()[item]);
+      assertEquals(expected.get(item).cardinality(), parser.getItemsSupports()[item]);
+    }
+  }
+
+  private static void assertSameAsSequential(final String path, final int nbChunks) throws IOException {
+    final FimiParser sequential = new FimiParser(path, 1);
+    final FimiParser parallel = new FimiParser(path, nbChunks);
+    assertEquals("nbChunks " + nbChunks, sequential.getNbTransactions(), parallel.getNbTransactions());
+    assertEquals("nbChunks " + nbChunks, sequential.getMaxItem(), parallel.getMaxItem());
+    assertEquals("nbChunks " + nbChunks, sequential.getItemsCovers().length, parallel.getItemsCovers().length);
+    for (int item = 0; item < sequential.getMaxItem(); item++)
+      assertArrayEquals("nbChunks " + nbChunks + ", item " + (item + 1), sequential.getItemsCovers()[item], parallel.getItemsCovers()[item]);
+    assertArrayEquals("nbChunks " + nbChunks, sequential.getItemsSupports(), parallel.getItemsSupports());
+  }
+
+  /** A random dataset with comments, metadata, empty lines, several spaces between the items, and "\n" or "\r\n" line endings */
+  static String noisyDataSet(final Random random, final int nbLines, final int nbItems) {
+    final StringBuilder res = new StringBuilder();
+    for (int l = 0; l < nbLines; l++) {
+      final int kind = random.nextInt(10);
+      if (kind == 0)
+        res.append("# comment ").append(random.nextInt(100));
+      else if (kind == 1)
+        res.append("% 12 comment");
+      else if (kind == 2)
+        res.append("@attribute ").append(random.nextInt(100));
+      else if (kind == 3 && random.nextBoolean())
+        res.append(random.nextBoolean() ? "" : " ");
+      else {
+        for (int item = 1; item <= nbItems; item++)
+          if (random.nextInt(3) == 0)
+            res.append(item).append(random.nextInt(4) == 0 ? "  " : " ");
+        if (res.length() > 0 && res.charAt(res.length() - 1) == ' ' && random.nextBoolean())
+          res.setLength(res.length() - 1); // no trailing space
+      }
+      res.append(random.nextBoolean() ? "\n" : "\r\n");
+    }
+    return res.toString();
+  }
+
+  @Test
+  public void testSameAsReader() throws IOException {
+    final Random random = new Random(11);
+    for (int k = 0; k < 20; k++) {
+      final String path = TestDataSets.write(TestDataSets.random(random, 1 + random.nextInt(300), 1 + random.nextInt(80), random.nextDouble()));
+      assertSameAsReader(path, new FimiParser(path, 1));
+    }
+  }
+
+  @Test
+  public void testCommentsAndLineEndingsSameAsReader() throws IOException {
+    final Random random = new Random(12);
+    for (int k = 0; k < 20; k++) {
+      final String path = TestDataSets.write(noisyDataSet(random, 1 + random.nextInt(200), 1 + random.nextInt(70)));
+      assertSameAsReader(path, new FimiParser(path, 1));
+    }
+  }
+
+  @Test
+  public void testEndOfFileMarker() throws IOException {
+    final String path = TestDataSets.write("1 3\r\n# 5\r\n2 3\r\n[EOF]\r\n7 8\nnot a transaction\n");
+    final FimiParser parser = new FimiParser(path, 1);
+    assertSameAsReader(path, parser);
+    assertEquals(2, parser.getNbTransactions());
+    assertEquals(3, parser.getMaxItem());
+  }
+
+  @Test
+  public void testLastLineWithoutNewline() throws IOException {
+    final String path = TestDataSets.write("1 2\n\n 4  2 \n3");
+    final FimiParser parser = new FimiParser(path, 1);
+    assertSameAsReader(path, parser);
+    assertArrayEquals(new int[] {1, 2, 1, 1}, parser.getItemsSupports());
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testInvalidCharacter() throws IOException {
+    new FimiParser(TestDataSets.write("1 2\n3 x\n"), 1);
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testInvalidMarker() throws IOException {
+    new FimiParser(TestDataSets.write("1 2\n[EOF] 3\n"), 1);
+  }
+
+  @Test
+  public void testParallelSameAsSequential() throws IOException {
+    final Random random = new Random(13);
+    for (int k = 0; k < 5; k++) {
+      final String path = TestDataSets.write(noisyDataSet(random, 200 + random.nextInt(600), 1 + random.nextInt(40)));
+      for (int nbChunks = 2; nbChunks <= 50; nbChunks++)
+        assertSameAsSequential(path, nbChunks);
+    }
+  }
+
+  /** With as many chunks as bytes, every line boundary, "\r\n" and comment ends up at the border of a chunk */
+  @Test
+  public void testParallelAllChunkBoundaries() throws IOException {
+    final Random random = new Random(14);
+    for (int k = 0; k < 5; k++) {
+      final String content = noisyDataSet(random, 10 + random.nextInt(30), 1 + random.nextInt(10)) + "[EOF]\r\n1 2\nx\n";
+      final String path = TestDataSets.write(content);
+      for (int nbChunks = 2; nbChunks <= content.length() + 1; nbChunks++)
+        assertSameAsSequential(path, nbChunks);
+      assertSameAsReader(path, new FimiParser(path, content.length()));
+    }
+  }
+
+  /** The middle of the file is exactly a '\n', or exactly the start of a line */
+  @Test
+  public void testParallelSplitOnNewline() throws IOException {
+    final StringBuilder body = new StringBuilder();
+    for (int t = 0; t < 100; t++)
+      body.append(t % 7 + 1).append(' ').append(t % 5 + 8).append(t % 2 == 0 ? "\n" : "\r\n");
+    boolean onNewline = false;
+    boolean onLineStart = false;
+    for (int pad = 0; pad < 16; pad++) {
+      final StringBuilder content = new StringBuilder("#");
+      for (int i = 0; i < pad; i++)
+        content.append(' ');
+      content.append('\n').append(body);
+      final int middle = content.length() / 2;
+      onNewline |= content.charAt(middle) == '\n';
+      onLineStart |= content.charAt(middle - 1) == '\n';
+      final String path = TestDataSets.write(content.toString());
+      assertSameAsSequential(path, 2);
+      assertSameAsReader(path, new FimiParser(path, 2));
+    }
+    assertTrue(onNewline);
+    assertTrue(onLineStart);
+  }
+
+  @Test
+  public void testParallelIgnoresChunksAfterMarker() throws IOException {
+    final StringBuilder content = new StringBuilder();
+    for (int t = 0; t < 50; t++)
+      content.append("1 ").append(t % 3 + 2).append('\n');
+    content.append("[EOF]\n");
+    for (int t = 0; t < 50; t++)
+      content.append("not a transaction\n");
+    final String path = TestDataSets.write(content.toString());
+    for (int nbChunks = 2; nbChunks <= 20; nbChunks++) {
+      final FimiParser parser = new FimiParser(path, nbChunks);
+      assertEquals(50, parser.getNbTransactions());
+      assertEquals(4, parser.getMaxItem());
+    }
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testParallelInvalidCharacter() throws IOException {
+    final StringBuilder content = new StringBuilder();
+    for (int t = 0; t < 50; t++)
+      content.append(t % 4 == 3 && t > 40 ? "3 x" : "1 2").append('\n');
+    new FimiParser(TestDataSets.write(content.toString()), 10);
+  }
+}
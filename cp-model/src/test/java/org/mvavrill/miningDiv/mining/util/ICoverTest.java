@@ -0,0 +1,255 @@
+package org.mvavrill.miningDiv.mining.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import org.chocosolver.solver.Model;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+public class ICoverTest {
+
+  private static final int NB_STEPS = 400;
+
+  /** Items from very dense to very sparse, so that both the absences and the words of the diffsets are used */
+  static DataSet randomDataSet(final Random random, final int nbTransactions, final int nbItems, final boolean collapseDuplicates) throws IOException {
+    final double[] choices = {0.995, 0.98, 0.9, 0.6, 0.3, 0.05};
+    final double[] densities = new double[nbItems];
+    for (int i = 0; i < nbItems; i++)
+      densities[i] = choices[random.nextInt(choices.length)];
+    return new DataSet(TestDataSets.write(TestDataSets.random(random, nbTransactions, densities)), new DataSetOptions().setCollapseDuplicates(collapseDuplicates));
+  }
+
+  static int weightedCardinality(final BitSet transactions, final TransactionWeights weights) {
+    int res = 0;
+    for (int t = transactions.nextSetBit(0); t >= 0; t = transactions.nextSetBit(t + 1))
+      res += weights.getWeight(t);
+    return res;
+  }
+
+  /** Checks the words and offsets written by `and` against the words of the cover before and after the intersection. The other words must keep their value */
+  private static void assertRemoved(final BitSet before, final BitSet after, final long[] removed, final int[] offsets, final int nbOffsets, final long untouched) {
+    final BitSet expected = (BitSet) before.clone();
+    expected.andNot(after);
+    final long[] expectedWords = Arrays.copyOf(expected.toLongArray(), removed.length);
+    final boolean[] written = new boolean[removed.length];
+    for (int k = 0; k < nbOffsets; k++) {
+      assertFalse("offset written twice", written[offsets[k]]);
+      written[offsets[k]] = true;
+    }
+    for (int j = 0; j < removed.length; j++) {
+      if (written[j])
+        assertEquals("word " + j, expectedWords[j], removed[j]);
+      else {
+        assertEquals("word " + j, 0L, expectedWords[j]);
+        assertEquals("word " + j, untouched, removed[j]);
+      }
+    }
+  }
+
+  /** The cover, compared with a BitSet recomputed from the covers of the items */
+  private static final class CoverSearch implements TestDataSets.Reversible<BitSet> {
+    private final DataSet dataset;
+    private final ICover cover;
+    private final Random queries = new Random(0); // The random sets of transactions given to andCount
+
+    CoverSearch(final DataSet dataset, final ICover cover) {
+      this.dataset = dataset;
+      this.cover = cover;
+    }
+
+    /** Intersects the cover with a random item, with or without the removed words */
+    @Override
+    public BitSet modify(final Random random, final BitSet expected) {
+      final int item = random.nextInt(dataset.getNbrVar());
+      final BitSet res = (BitSet) expected.clone();
+      res.and(dataset.getItemsCovers().getBitSet(item));
+      if (random.nextBoolean())
+        cover.and(item);
+      else {
+        final long[] removed = new long[cover.getNbWords()];
+        final int[] offsets = new int[cover.getNbWords()];
+        final long untouched = random.nextLong();
+        Arrays.fill(removed, untouched);
+        final int nbOffsets = cover.and(item, removed, offsets);
+        assertRemoved(expected, res, removed, offsets, nbOffsets, untouched);
+      }
+      return res;
+    }
+
+    /** Compares all the queries of the cover with the ones of the expected transactions */
+    @Override
+    public void check(final BitSet expected) {
+      final TransactionWeights weights = dataset.getWeights();
+      assertEquals(weightedCardinality(expected, weights), cover.cardinality());
+      assertEquals(expected, cover.getBitSet());
+      for (int item = 0; item < dataset.getNbrVar(); item++) {
+        final BitSet intersection = (BitSet) expected.clone();
+        intersection.and(dataset.getItemsCovers().getBitSet(item));
+        assertEquals("item " + item, weightedCardinality(intersection, weights), cover.andCount(item));
+        assertEquals("item " + item, intersection.equals(expected), cover.isSubsetOf(item));
+        assertEquals("item " + item, intersection, BitSet.valueOf(cover.getIntersection(item).getWords()));
+      }
+      final long[] words = new long[queries.nextInt(cover.getNbWords() + 2)];
+      for (int j = 0; j < words.length; j++)
+        words[j] = queries.nextLong();
+      final BitSet intersection = BitSet.valueOf(words);
+      intersection.and(expected);
+      assertEquals(weightedCardinality(intersection, weights), cover.andCount(words));
+    }
+  }
+
+  /** Randomly pushes worlds, intersects the cover with items and pops worlds (see TestDataSets.checkRandomSearch) */
+  static void checkRandomSearch(final String structure, final DataSet dataset, final Random random) {
+    final Model model = new Model();
+    final BitSet all = new BitSet();
+    all.set(0, dataset.getTransactionsSize());
+    TestDataSets.checkRandomSearch(model.getEnvironment(), new CoverSearch(dataset, ICover.make(model, dataset, structure)), all, random, NB_STEPS);
+  }
+
+  /** All the transactions are removed and the worlds are popped back to the full cover */
+  static void checkEmptyCover(final String structure, final DataSet dataset) {
+    final Model model = new Model();
+    final ICover cover = ICover.make(model, dataset, structure);
+    final int total = cover.cardinality();
+    for (int item = 0; item < dataset.getNbrVar(); item++) {
+      model.getEnvironment().worldPush();
+      cover.and(item);
+    }
+    assertEquals(0, cover.cardinality());
+    assertTrue(cover.getBitSet().isEmpty());
+    for (int item = 0; item < dataset.getNbrVar(); item++)
+      model.getEnvironment().worldPop();
+    assertEquals(total, cover.cardinality());
+  }
+
+  @Test
+  public void testDiffSetCover() throws IOException {
+    final Random random = new Random(21);
+    for (int k = 0; k < 4; k++)
+      checkRandomSearch("diffset", randomDataSet(random, 100 + random.nextInt(1500), 5 + random.nextInt(30), false), random);
+  }
+
+  @Test
+  public void testWeightedDiffSetCover() throws IOException {
+    final Random random = new Random(22);
+    for (int k = 0; k < 4; k++)
+      checkRandomSearch("diffset", randomDataSet(random, 300 + random.nextInt(1500), 4 + random.nextInt(6), true), random);
+  }
+
+  @Test
+  public void testEmptyDiffSetCover() throws IOException {
+    final String path = TestDataSets.write("1 2\n2 3\n1 3\n");
+    checkEmptyCover("diffset", new DataSet(path, new DataSetOptions()));
+  }
+
+  @Test
+  public void testSparseBitSetCover() throws IOException {
+    final Random random = new Random(23);
+    for (int k = 0; k < 4; k++)
+      checkRandomSearch("sparse", randomDataSet(random, 100 + random.nextInt(1500), 5 + random.nextInt(30), false), random);
+  }
+
+  @Test
+  public void testWeightedSparseBitSetCover() throws IOException {
+    final Random random = new Random(24);
+    for (int k = 0; k < 4; k++)
+      checkRandomSearch("sparse", randomDataSet(random, 300 + random.nextInt(1500), 4 + random.nextInt(6), true), random);
+  }
+
+  @Test
+  public void testEmptySparseBitSetCover() throws IOException {
+    final String path = TestDataSets.write("1 2\n2 3\n1 3\n");
+    checkEmptyCover("sparse", new DataSet(path, new DataSetOptions()));
+  }
+
+  /** The non-zero words of the index are restored with the limit */
+  @Test
+  public void testSparseBitSetIndex() throws IOException {
+    final StringBuilder content = new StringBuilder();
+    for (int t = 0; t < 640; t++)
+      content.append(t < 64 ? "1 2\n" : t < 128 ? "2\n" : "3\n");
+    final DataSet dataset = new DataSet(TestDataSets.write(content.toString()), new DataSetOptions());
+    final Model model = new Model();
+    final ISparseBitSet bitset = new ISparseBitSet(model, dataset.getTransactionsSize(), dataset.getWeights());
+    model.getEnvironment().worldPush();
+    bitset.and(dataset.getItemsCovers(), 1);
+    assertEquals(128, bitset.cardinality());
+    assertEquals(dataset.getItemsCovers().getBitSet(1), bitset.getBitSet());
+    model.getEnvironment().worldPush();
+    bitset.and(dataset.getItemsCovers(), 2);
+    assertTrue(bitset.isEmpty());
+    assertEquals(0, bitset.andCount(dataset.getItemsCovers(), 1));
+    assertTrue(bitset.isSubsetOf(dataset.getItemsCovers(), 2));
+    model.getEnvironment().worldPop();
+    assertFalse(bitset.isEmpty());
+    assertEquals(64, bitset.andCount(dataset.getItemsCovers(), 0));
+    assertFalse(bitset.isSubsetOf(dataset.getItemsCovers(), 0));
+    model.getEnvironment().worldPop();
+    assertEquals(640, bitset.cardinality());
+    assertEquals(512, bitset.andCount(dataset.getItemsCovers(), 2));
+  }
+
+  @Test
+  public void testStackBitSetCover() throws IOException {
+    final Random random = new Random(25);
+    for (int k = 0; k < 4; k++)
+      checkRandomSearch("stack", randomDataSet(random, 100 + random.nextInt(1500), 5 + random.nextInt(30), false), random);
+  }
+
+  @Test
+  public void testWeightedStackBitSetCover() throws IOException {
+    final Random random = new Random(26);
+    for (int k = 0; k < 4; k++)
+      checkRandomSearch("stack", randomDataSet(random, 300 + random.nextInt(1500), 4 + random.nextInt(6), true), random);
+  }
+
+  @Test
+  public void testEmptyStackBitSetCover() throws IOException {
+    final String path = TestDataSets.write("1 2\n2 3\n1 3\n");
+    checkEmptyCover("stack", new DataSet(path, new DataSetOptions()));
+  }
+
+  /** The words are copied once per world, deeper than the initial capacity of the stack, and the arrays of the pool are reused after the worlds are popped */
+  @Test
+  public void testStackBitSetDeepSearch() throws IOException {
+    final Random random = new Random(27);
+    final double[] densities = new double[20];
+    Arrays.fill(densities, 0.97);
+    final DataSet dataset = new DataSet(TestDataSets.write(TestDataSets.random(random, 2000, densities)), new DataSetOptions());
+    final ItemsCovers itemsCovers = dataset.getItemsCovers();
+    final Model model = new Model();
+    final IStackBitSet bitset = new IStackBitSet(model, dataset.getTransactionsSize(), dataset.getWeights());
+    for (int round = 0; round < 3; round++) {
+      final ArrayDeque<BitSet> worlds = new ArrayDeque<BitSet>();
+      final BitSet expected = new BitSet();
+      expected.set(0, dataset.getTransactionsSize());
+      for (int depth = 0; depth < 40; depth++) {
+        model.getEnvironment().worldPush();
+        worlds.push((BitSet) expected.clone());
+        if (depth % 3 == 0)
+          continue; // No modification in this world
+        final int item = random.nextInt(itemsCovers.getNbItems());
+        bitset.and(itemsCovers, item);
+        bitset.and(itemsCovers, (item + 1) % itemsCovers.getNbItems()); // A second intersection in the same world
+        expected.and(itemsCovers.getBitSet(item));
+        expected.and(itemsCovers.getBitSet((item + 1) % itemsCovers.getNbItems()));
+        assertEquals(expected, bitset.getBitSet());
+        assertEquals(expected.cardinality(), bitset.cardinality());
+      }
+      while (!worlds.isEmpty()) {
+        model.getEnvironment().worldPop();
+        final BitSet previous = worlds.pop();
+        assertEquals(previous, bitset.getBitSet());
+        assertEquals(previous.cardinality(), bitset.cardinality());
+      }
+    }
+  }
+}
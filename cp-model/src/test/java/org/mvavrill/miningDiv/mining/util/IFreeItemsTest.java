@@ -0,0 +1,135 @@
+package org.mvavrill.miningDiv.mining.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import org.chocosolver.solver.Cause;
+import org.chocosolver.solver.Model;
+import org.chocosolver.solver.exception.ContradictionException;
+import org.chocosolver.solver.variables.BoolVar;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class IFreeItemsTest {
+
+  /** The items whose value is `value` in `values` (-1 for the free items), in increasing order */
+  private static int[] itemsWithValue(final int[] values, final int value) {
+    int n = 0;
+    final int[] res = new int[values.length];
+    for (int item = 0; item < values.length; item++)
+      if (values[item] == value)
+        res[n++] = item;
+    return Arrays.copyOf(res, n);
+  }
+
+  private static void assertSameItems(final int[] values, final IFreeItems items) {
+    final int[] free = itemsWithValue(values, -1);
+    assertEquals(free.length, items.getNbFree());
+    final int[] filled = new int[values.length];
+    assertEquals(free.length, items.fillFree(filled));
+    assertArrayEquals(free, Arrays.copyOf(filled, free.length));
+    final int[] freeByIndex = new int[free.length];
+    for (int j = 0; j < free.length; j++)
+      freeByIndex[j] = items.getFree(j);
+    Arrays.sort(freeByIndex);
+    assertArrayEquals(free, freeByIndex);
+    for (int item = 0; item < values.length; item++)
+      assertEquals("item " + item, values[item] == -1, items.isFree(item));
+    final int[] filtered = new int[items.getNbFiltered()];
+    for (int j = 0; j < filtered.length; j++)
+      filtered[j] = items.getFiltered(j);
+    Arrays.sort(filtered);
+    assertArrayEquals(itemsWithValue(values, 0), filtered);
+    final int[] itemset = new int[items.getItemsetSize()];
+    for (int j = 0; j < itemset.length; j++)
+      itemset[j] = items.getItemsetItem(j);
+    Arrays.sort(itemset);
+    assertArrayEquals(itemsWithValue(values, 1), itemset);
+  }
+
+  /** The items, compared with an array giving the value of every item (-1 for the free items) */
+  private static final class ItemsSearch implements TestDataSets.Reversible<int[]> {
+    private final BoolVar[] vars;
+    private final IFreeItems items;
+
+    ItemsSearch(final Model model, final int nbItems) {
+      this.vars = model.boolVarArray("x", nbItems);
+      this.items = new IFreeItems(model, nbItems);
+    }
+
+    /** Instantiates an item (possibly not free, in which case nothing changes), or several variables given to update */
+    @Override
+    public int[] modify(final Random random, final int[] expected) {
+      final int[] res = expected.clone();
+      try {
+        if (random.nextBoolean()) {
+          final int item = random.nextInt(res.length);
+          final int value = random.nextInt(2);
+          if (res[item] == -1) {
+            vars[item].instantiateTo(value, Cause.Null);
+            res[item] = value;
+          }
+          items.instantiate(item, value);
+        }
+        else {
+          for (int n = random.nextInt(4); n > 0; n--) {
+            final int item = random.nextInt(res.length);
+            if (res[item] == -1) {
+              res[item] = random.nextInt(2);
+              vars[item].instantiateTo(res[item], Cause.Null);
+            }
+          }
+          items.update(vars);
+        }
+      } catch (ContradictionException e) {
+        throw new AssertionError(e);
+      }
+      return res;
+    }
+
+    @Override
+    public void check(final int[] expected) {
+      assertSameItems(expected, items);
+    }
+  }
+
+  @Test
+  public void testRandomSearch() {
+    final Random random = new Random(51);
+    for (int k = 0; k < 20; k++) {
+      final int nbItems = 1 + random.nextInt(60);
+      final Model model = new Model();
+      final int[] values = new int[nbItems];
+      Arrays.fill(values, -1);
+      TestDataSets.checkRandomSearch(model.getEnvironment(), new ItemsSearch(model, nbItems), values, random, 300);
+    }
+  }
+
+  /** The filtered items and the items of the itemset are kept in the order they were instantiated */
+  @Test
+  public void testInstantiationOrder() {
+    final Model model = new Model();
+    final IFreeItems items = new IFreeItems(model, 6);
+    items.instantiate(4, 1);
+    items.instantiate(1, 0);
+    model.getEnvironment().worldPush();
+    items.instantiate(0, 1);
+    items.instantiate(5, 0);
+    items.instantiate(4, 0); // Already in the itemset
+    assertEquals(2, items.getNbFree());
+    assertEquals(4, items.getItemsetItem(0));
+    assertEquals(0, items.getItemsetItem(1));
+    assertEquals(1, items.getFiltered(0));
+    assertEquals(5, items.getFiltered(1));
+    assertEquals(2, items.getNbFiltered());
+    model.getEnvironment().worldPop();
+    assertEquals(4, items.getNbFree());
+    assertEquals(1, items.getItemsetSize());
+    assertEquals(1, items.getNbFiltered());
+    items.instantiate(2, 0);
+    assertEquals(2, items.getFiltered(1));
+  }
+}
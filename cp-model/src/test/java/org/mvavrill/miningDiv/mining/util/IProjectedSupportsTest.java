@@ -0,0 +1,101 @@
+package org.mvavrill.miningDiv.mining.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import org.chocosolver.solver.Model;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+public class IProjectedSupportsTest {
+
+  /** The transactions of the cover, and whether the supports are initialized in the branch */
+  private static final class Expected {
+    final BitSet cover;
+    final boolean initialized;
+
+    Expected(final BitSet cover, final boolean initialized) {
+      this.cover = cover;
+      this.initialized = initialized;
+    }
+  }
+
+  /**
+   * The supports, initialized in some worlds, compared with the ones recomputed from a BitSet of the cover.
+   * The removed words are compared with the transactions that left the cover.
+   */
+  private static final class SupportsSearch implements TestDataSets.Reversible<Expected> {
+    private final DataSet dataset;
+    private final ICover cover;
+    private final IProjectedSupports supports;
+
+    SupportsSearch(final Model model, final DataSet dataset, final String structure) {
+      this.dataset = dataset;
+      this.cover = ICover.make(model, dataset, structure);
+      this.supports = new IProjectedSupports(model, dataset);
+    }
+
+    @Override
+    public Expected modify(final Random random, final Expected expected) {
+      if (random.nextInt(3) == 0) {
+        supports.init(cover);
+        return new Expected(expected.cover, true);
+      }
+      final int item = random.nextInt(dataset.getNbrVar());
+      final BitSet res = (BitSet) expected.cover.clone();
+      res.and(dataset.getItemsCovers().getBitSet(item));
+      final BitSet removed = (BitSet) expected.cover.clone();
+      removed.andNot(res);
+      final long[] removedWords = Arrays.copyOf(removed.toLongArray(), cover.getNbWords());
+      final int nbOffsets = supports.and(cover, item);
+      assertEquals(Arrays.stream(removedWords).filter(word -> word != 0).count(), nbOffsets);
+      assertArrayEquals(removedWords, Arrays.copyOf(supports.getRemovedWords(), cover.getNbWords()));
+      for (int k = 0; k < nbOffsets; k++)
+        assertTrue(removedWords[supports.getRemovedOffsets()[k]] != 0);
+      return new Expected(res, expected.initialized);
+    }
+
+    @Override
+    public void check(final Expected expected) {
+      assertEquals(expected.initialized, supports.isInitialized());
+      assertEquals(expected.cover, cover.getBitSet());
+      if (expected.initialized) {
+        for (int item = 0; item < dataset.getNbrVar(); item++) {
+          final BitSet intersection = (BitSet) expected.cover.clone();
+          intersection.and(dataset.getItemsCovers().getBitSet(item));
+          assertEquals("item " + item, ICoverTest.weightedCardinality(intersection, dataset.getWeights()), supports.get(item));
+        }
+      }
+    }
+  }
+
+  /** For every cover structure, randomly pushes worlds, initializes the supports, intersects the cover with items and pops worlds (see TestDataSets.checkRandomSearch) */
+  private static void checkRandomSearches(final Random random, final boolean collapseDuplicates) throws IOException {
+    for (String structure : new String[] {"sparse", "bitset", "stack", "diffset"}) {
+      for (int k = 0; k < 3; k++) {
+        final DataSet dataset = collapseDuplicates ? ICoverTest.randomDataSet(random, 300 + random.nextInt(1500), 4 + random.nextInt(6), true)
+          : ICoverTest.randomDataSet(random, 100 + random.nextInt(1500), 5 + random.nextInt(40), false);
+        final Model model = new Model();
+        final BitSet all = new BitSet();
+        all.set(0, dataset.getTransactionsSize());
+        TestDataSets.checkRandomSearch(model.getEnvironment(), new SupportsSearch(model, dataset, structure), new Expected(all, false), random, 300);
+      }
+    }
+  }
+
+  @Test
+  public void testProjectedSupports() throws IOException {
+    checkRandomSearches(new Random(41), false);
+  }
+
+  @Test
+  public void testWeightedProjectedSupports() throws IOException {
+    checkRandomSearches(new Random(42), true);
+  }
+}
@@ -0,0 +1,74 @@
+package org.mvavrill.miningDiv.mining.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import org.chocosolver.solver.Model;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class IStackIntArrayTest {
+
+  /** The array, compared with a plain array. It is resized and modified several times per world, growing above its capacity */
+  private static final class ArraySearch implements TestDataSets.Reversible<int[]> {
+    private final IStackIntArray array;
+
+    ArraySearch(final IStackIntArray array) {
+      this.array = array;
+    }
+
+    @Override
+    public int[] modify(final Random random, final int[] expected) {
+      final int newSize = random.nextInt(4) == 0 ? random.nextInt(100) : expected.length;
+      final int[] values = array.modify(newSize);
+      final int[] res = Arrays.copyOf(expected, newSize);
+      for (int i = expected.length; i < newSize; i++) { // The values above the previous size are undefined
+        values[i] = random.nextInt();
+        res[i] = values[i];
+      }
+      for (int k = random.nextInt(5); k > 0 && newSize > 0; k--) {
+        final int i = random.nextInt(newSize);
+        values[i] = random.nextInt();
+        res[i] = values[i];
+      }
+      return res;
+    }
+
+    @Override
+    public void check(final int[] expected) {
+      assertEquals(expected.length, array.size());
+      for (int i = 0; i < expected.length; i++)
+        assertEquals("value " + i, expected[i], array.get(i));
+    }
+  }
+
+  @Test
+  public void testRandomSearch() {
+    final Model model = new Model();
+    TestDataSets.checkRandomSearch(model.getEnvironment(), new ArraySearch(new IStackIntArray(model)), new int[0], new Random(31), 3000);
+  }
+
+  /** The values of the previous worlds are kept when the array is modified in every world, deeper than the initial capacity of the stack */
+  @Test
+  public void testDeepSearch() {
+    final Model model = new Model();
+    final IStackIntArray array = new IStackIntArray(model);
+    for (int round = 0; round < 2; round++) {
+      for (int depth = 1; depth <= 50; depth++) {
+        model.getEnvironment().worldPush();
+        final int[] values = array.modify(depth);
+        values[depth - 1] = depth;
+        for (int i = 0; i < depth; i++)
+          values[i] += round;
+      }
+      for (int depth = 50; depth >= 1; depth--) {
+        assertEquals(depth, array.size());
+        assertEquals(depth + round, array.get(depth - 1));
+        model.getEnvironment().worldPop();
+      }
+      assertEquals(0, array.size());
+    }
+  }
+}
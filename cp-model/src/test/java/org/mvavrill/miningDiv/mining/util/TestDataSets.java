@@ -0,0 +1,94 @@
+package org.mvavrill.miningDiv.mining.util;
+
+import org.chocosolver.memory.IEnvironment;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Random;
+
+/**
+ * Random datasets in the FIMI format, written in temporary files, and a random search checking the backtrackable structures, for the tests.
+ * @author Mathieu Vavrille
+ */
+final class TestDataSets {
+
+  private TestDataSets() {}
+
+  /** Writes the content in a new temporary file, deleted when the JVM exits with its cache (see DataSetCache), and returns its path */
+  static String write(final String content) throws IOException {
+    final Path dir = Files.createTempDirectory("miningDiv");
+    dir.toFile().deleteOnExit();
+    final Path path = dir.resolve("dataset.dat");
+    Files.write(path, content.getBytes(StandardCharsets.US_ASCII));
+    path.toFile().deleteOnExit();
+    Paths.get(path + DataSetCache.EXTENSION).toFile().deleteOnExit();
+    return path.toString();
+  }
+
+  /** A random dataset, every item (from 1 to nbItems) being in every transaction with the given probability. The items of a line are in increasing order */
+  static String random(final Random random, final int nbTransactions, final int nbItems, final double density) {
+    final StringBuilder res = new StringBuilder();
+    for (int t = 0; t < nbTransactions; t++) {
+      for (int item = 1; item <= nbItems; item++)
+        if (random.nextDouble() < density)
+          res.append(item).append(' ');
+      res.append('\n');
+    }
+    return res.toString();
+  }
+
+  /** A random dataset, the item i + 1 being in every transaction with probability densities[i]. The items of a line are in increasing order */
+  static String random(final Random random, final int nbTransactions, final double[] densities) {
+    final StringBuilder res = new StringBuilder();
+    for (int t = 0; t < nbTransactions; t++) {
+      for (int item = 1; item <= densities.length; item++)
+        if (random.nextDouble() < densities[item - 1])
+          res.append(item).append(' ');
+      res.append('\n');
+    }
+    return res.toString();
+  }
+
+  /**
+   * A backtrackable structure, checked against a plain value of type S recomputed by the test.
+   * The value must not be modified in place, since the values of the pushed worlds are kept (see checkRandomSearch).
+   */
+  interface Reversible<S> {
+    /** Applies a random modification to the structure, and returns the expected value after it */
+    S modify(final Random random, final S expected);
+    /** Checks that the structure corresponds to the expected value */
+    void check(final S expected);
+  }
+
+  /**
+   * Randomly pushes worlds, modifies the structure and pops worlds, and checks the structure after every step and after every pop when all the worlds are popped at the end.
+   * The expected values of the pushed worlds are kept on a stack, and restored when the worlds are popped.
+   */
+  static <S> void checkRandomSearch(final IEnvironment environment, final Reversible<S> structure, final S initial, final Random random, final int nbSteps) {
+    final ArrayDeque<S> worlds = new ArrayDeque<S>();
+    S expected = initial;
+    structure.check(expected);
+    for (int step = 0; step < nbSteps; step++) {
+      final int action = random.nextInt(5);
+      if (action <= 1) {
+        environment.worldPush();
+        worlds.push(expected);
+      }
+      else if (action == 2 && !worlds.isEmpty()) {
+        environment.worldPop();
+        expected = worlds.pop();
+      }
+      else
+        expected = structure.modify(random, expected);
+      structure.check(expected);
+    }
+    while (!worlds.isEmpty()) {
+      environment.worldPop();
+      structure.check(worlds.pop());
+    }
+  }
+}